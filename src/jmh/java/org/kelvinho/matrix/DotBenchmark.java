@@ -0,0 +1,89 @@
+package org.kelvinho.matrix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// compares the packed, register-tiled kernel behind dot() against the i-j-k loop over get() that it replaced, and against
+// Strassen-Winograd on top of it (which only differs from gemm above Strassen.cutoff()). The transposed variants read the
+// operands through stride swapped views, the physical transpose is there to compare against. The layer pair is a dense
+// layer's forward pass, as three passes and with the bias and activation fused into the product's epilogue
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DotBenchmark {
+    @Param({"64", "128", "256", "512", "1024", "2048", "4096"})
+    private int size;
+
+    private AccurateMatrix a;
+    private AccurateMatrix b;
+    private AccurateMatrix bias;
+    private Epilogue layer;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        a = new AccurateMatrix(size, size, (i, j) -> random.nextDouble());
+        b = new AccurateMatrix(size, size, (i, j) -> random.nextDouble());
+        bias = new AccurateMatrix(1, size, (i, j) -> random.nextDouble());
+        layer = new Epilogue().bias(bias).sigmoid();
+    }
+
+    @Benchmark
+    public Matrix gemm() {
+        return a.dot(b);
+    }
+
+    @Benchmark
+    public Matrix strassen() {
+        return Strassen.multiply(a, b);
+    }
+
+    @Benchmark
+    public Matrix layer() {
+        return a.dot(b).broadcastAdd(bias).sigmoid();
+    }
+
+    @Benchmark
+    public Matrix fusedLayer() {
+        return a.gemm(b, layer);
+    }
+
+    @Benchmark
+    public Matrix transposeDot() {
+        return a.transposeDot(b);
+    }
+
+    @Benchmark
+    public Matrix dotTranspose() {
+        return a.dotTranspose(b);
+    }
+
+    @Benchmark
+    public Matrix transposeCopy() {
+        return a.transposeCopy();
+    }
+
+    @Benchmark
+    public Matrix naive() {
+        Matrix answer = new AccurateMatrix(size, size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                double sum = 0.0;
+                for (int k = 0; k < size; k++) {
+                    sum += a.get(i, k) * b.get(k, j);
+                }
+                answer.mutableSet(i, j, sum);
+            }
+        }
+        return answer;
+    }
+}
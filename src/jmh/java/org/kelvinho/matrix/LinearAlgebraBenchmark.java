@@ -0,0 +1,61 @@
+package org.kelvinho.matrix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// echelon form, rank and null space over the same shapes as MatrixBenchmark, inverse on the square matrix of the same size.
+// These only exist on AccurateMatrix. modified() drops the cached rank, null space and factorization before every call
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LinearAlgebraBenchmark {
+    @Param({"square", "tall", "wide"})
+    private String shape;
+
+    @Param({"32", "128", "512"})
+    private int size;
+
+    private AccurateMatrix matrix;
+    private AccurateMatrix square;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        int rows = MatrixBenchmark.rowsOf(shape, size);
+        matrix = (AccurateMatrix) MatrixBenchmark.random("accurate", rows, size * size / rows, random);
+        square = (AccurateMatrix) MatrixBenchmark.random("accurate", size, size, random);
+    }
+
+    @Benchmark
+    public Matrix reducedRowEchelonForm() {
+        matrix.modified();
+        return matrix.reducedRowEchelonForm();
+    }
+
+    @Benchmark
+    public int rank() {
+        matrix.modified();
+        return matrix.rank();
+    }
+
+    @Benchmark
+    public Matrix nullSpace() {
+        matrix.modified();
+        return matrix.nullSpace();
+    }
+
+    @Benchmark
+    public Matrix inverse() {
+        square.modified();
+        return square.inverse();
+    }
+}
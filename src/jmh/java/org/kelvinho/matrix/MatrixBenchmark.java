@@ -0,0 +1,88 @@
+package org.kelvinho.matrix;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// the element-wise and product operations on both dense types. Every shape has size * size elements: square is size x size,
+// tall is 4 size x size / 4 and wide is size / 4 x 4 size, and dot() multiplies by a (columns x size) matrix so every shape does
+// the same size^3 multiply-adds. modified() drops the cached sum and transpose so each invocation does the work again
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MatrixBenchmark {
+    @Param({"accurate", "normal"})
+    private String type;
+
+    @Param({"square", "tall", "wide"})
+    private String shape;
+
+    @Param({"64", "256", "1024"})
+    private int size;
+
+    private Matrix a;
+    private Matrix b;
+    private Matrix right;
+
+    static int rowsOf(String shape, int size) {
+        switch (shape) {
+            case "tall":
+                return size * 4;
+            case "wide":
+                return size / 4;
+            default:
+                return size;
+        }
+    }
+
+    static Matrix random(String type, int rows, int columns, Random random) {
+        return type.equals("normal")
+                ? new NormalMatrix(rows, columns, (i, j) -> random.nextGaussian())
+                : new AccurateMatrix(rows, columns, (i, j) -> random.nextGaussian());
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        int rows = rowsOf(shape, size);
+        int columns = size * size / rows;
+        a = random(type, rows, columns, random);
+        b = random(type, rows, columns, random);
+        right = random(type, columns, size, random);
+    }
+
+    @Benchmark
+    public Matrix dot() {
+        return a.dot(right);
+    }
+
+    @Benchmark
+    public Matrix transpose() {
+        a.modified();
+        return a.transpose();
+    }
+
+    @Benchmark
+    public Matrix operateUnary() {
+        return a.sigmoid();
+    }
+
+    @Benchmark
+    public Matrix operateBinary() {
+        return a.mul(b);
+    }
+
+    @Benchmark
+    public double sum() {
+        a.modified();
+        return a.sum();
+    }
+}
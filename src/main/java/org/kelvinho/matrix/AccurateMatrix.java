@@ -2,23 +2,35 @@ package org.kelvinho.matrix;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Arrays;
 import java.util.Objects;
-import java.util.function.BiFunction;
-import java.util.function.Function;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
 
 @SuppressWarnings({"unused", "WeakerAccess"})
 public class AccurateMatrix extends Matrix implements Cloneable { // immutable
-    private double[][] values;
-    private Integer rank = null;
-    private AccurateMatrix nullSpace = null;
+    // row-major, element (i, j) lives at values[offset + i * rowStride + j * columnStride]; views share values with their source
+    final double[] values;
+    final int offset;
+    final int rowStride;
+    final int columnStride;
+    private static final DerivedCache.Key<AccurateMatrix> REDUCED_ROW_ECHELON_FORM = new DerivedCache.Key<>("reducedRowEchelonForm");
+    private static final DerivedCache.Key<Integer> RANK = new DerivedCache.Key<>("rank");
+    private static final DerivedCache.Key<AccurateMatrix> NULL_SPACE = new DerivedCache.Key<>("nullSpace");
+    private static final DerivedCache.Key<LUDecomposition> LU = new DerivedCache.Key<>("lu");
+    private static final DerivedCache.Key<Decomposition> DECOMPOSITION = new DerivedCache.Key<>("decomposition");
+    private static final DerivedCache.Key<AccurateMatrix> INVERSE = new DerivedCache.Key<>("inverse");
 
-    public AccurateMatrix(int numberOfRows, int numberOfColumns, @Nonnull BiFunction<Integer, Integer, Double> generator) {
+    public AccurateMatrix(int numberOfRows, int numberOfColumns, @Nonnull IntIntToDoubleFunction generator) {
         rows = numberOfRows;
         columns = numberOfColumns;
-        values = new double[rows][columns];
+        values = new double[arraySize(rows, columns)];
+        offset = 0;
+        rowStride = columns;
+        columnStride = 1;
         for (int i = 0; i < rows; i++) {
             for (int j = 0; j < columns; j++) {
-                mutableSet(i, j, generator.apply(i, j));
+                values[i * columns + j] = generator.apply(i, j);
             }
         }
     }
@@ -35,24 +47,379 @@ public class AccurateMatrix extends Matrix implements Cloneable { // immutable
         if (values.length == 0) {
             throw new RuntimeException("The number of rows is 0. Please use new NormalMatrix(int numberOfRows, int numberOfColumns) instead.");
         }
-        this.values = Environment.clone(values);
+        this.values = Environment.flatten(values);
         rows = values.length;
         columns = values[0].length;
+        offset = 0;
+        rowStride = columns;
+        columnStride = 1;
+    }
+
+    AccurateMatrix(@Nonnull double[] values, int offset, int numberOfRows, int numberOfColumns, int rowStride, int columnStride) {
+        this.values = values;
+        this.offset = offset;
+        this.rowStride = rowStride;
+        this.columnStride = columnStride;
+        rows = numberOfRows;
+        columns = numberOfColumns;
+    }
+
+    @Nonnull
+    public static Builder builder(int numberOfColumns) {
+        return new Builder(numberOfColumns, 16);
+    }
+
+    // expectedRows is only the initial capacity, more rows can still be added
+    @Nonnull
+    public static Builder builder(int numberOfColumns, int expectedRows) {
+        return new Builder(numberOfColumns, expectedRows);
     }
 
     protected AccurateMatrix template(int rows, int columns) {
-        return new AccurateMatrix(rows, columns, 0.0);
+        return new AccurateMatrix(BufferPool.doubles(arraySize(rows, columns)), 0, rows, columns, columns, 1);
+    }
+
+    // rows * columns, checked to fit in one array rather than overflowing into a negative or too small length
+    static int arraySize(int numberOfRows, int numberOfColumns) {
+        long size = (long) numberOfRows * numberOfColumns;
+        if (numberOfRows < 0 || numberOfColumns < 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A dense (" + numberOfRows + ", " + numberOfColumns
+                    + ") matrix doesn't fit in an array, use an OffHeapMatrix or a MappedMatrix");
+        }
+        return (int) size;
     }
 
     @Override
     public double get(int i, int j) {
-        return values[i][j];
+        return values[index(i, j)];
+    }
+
+    private int index(int i, int j) {
+        if (i < 0 || i >= rows || j < 0 || j >= columns) {
+            throw new IndexOutOfBoundsException("(" + i + ", " + j + ") is outside of (" + rows + ", " + columns + ")");
+        }
+        return offset + i * rowStride + j * columnStride;
+    }
+
+    // one pass over the arrays, without going through get(), rounding every element to float
+    @Nonnull
+    public NormalMatrix toNormal() {
+        float[] answer = new float[rows * columns];
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                for (int j = 0, index = offset + i * rowStride; j < columns; j++, index += columnStride) {
+                    answer[i * columns + j] = (float) values[index];
+                }
+            }
+        });
+        return new NormalMatrix(answer, 0, rows, columns, columns, 1);
+    }
+
+    @Override
+    void readRow(int i, int column, @Nonnull double[] target, int targetOffset, int length) {
+        int index = offset + i * rowStride + column * columnStride;
+        if (columnStride == 1) {
+            System.arraycopy(values, index, target, targetOffset, length);
+        } else {
+            for (int w = 0; w < length; w++, index += columnStride) {
+                target[targetOffset + w] = values[index];
+            }
+        }
+    }
+
+    @Override
+    void writeRow(int i, int column, @Nonnull double[] source, int sourceOffset, int length) {
+        int index = offset + i * rowStride + column * columnStride;
+        if (columnStride == 1) {
+            System.arraycopy(source, sourceOffset, values, index, length);
+        } else {
+            for (int w = 0; w < length; w++, index += columnStride) {
+                values[index] = source[sourceOffset + w];
+            }
+        }
+    }
+
+    // views, these share the backing array, so mutableSet() on either side shows up on the other
+
+    public AccurateMatrix subMatrix(int row, int column, int numberOfRows, int numberOfColumns) {
+        if (row < 0 || column < 0 || numberOfRows < 0 || numberOfColumns < 0 || row + numberOfRows > rows || column + numberOfColumns > columns) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new AccurateMatrix(values, offset + row * rowStride + column * columnStride, numberOfRows, numberOfColumns, rowStride, columnStride)
+                .viewOf(this);
+    }
+
+    public AccurateMatrix row(int i) {
+        return subMatrix(i, 0, 1, columns);
+    }
+
+    public AccurateMatrix column(int j) {
+        return subMatrix(0, j, rows, 1);
+    }
+
+    @Override
+    public AccurateMatrix transpose() {
+        return new AccurateMatrix(values, offset, columns, rows, columnStride, rowStride).viewOf(this);
+    }
+
+    // a contiguous copy, filled in cache-oblivious blocks
+    @Override
+    public AccurateMatrix transposeCopy() {
+        AccurateMatrix answer = template(columns, rows);
+        double[] target = answer.values;
+        Transpose.blocks(rows, columns, (rowFrom, rowTo, columnFrom, columnTo) -> {
+            for (int i = rowFrom; i < rowTo; i++) {
+                int index = offset + i * rowStride + columnFrom * columnStride;
+                for (int j = columnFrom; j < columnTo; j++, index += columnStride) {
+                    target[j * rows + i] = values[index];
+                }
+            }
+        });
+        return answer;
+    }
+
+    // the transposes are stride swapped views, so Gemm's packing reads each operand in place in whichever order it's laid out
+    @Override
+    public Matrix dot(@Nonnull Matrix matrix, boolean transposeThis, boolean transposeMatrix) {
+        if (matrix instanceof LazyMatrix) {
+            return dot(((LazyMatrix) matrix).evaluate(), transposeThis, transposeMatrix);
+        }
+        if (!(matrix instanceof AccurateMatrix) && !(matrix instanceof NormalMatrix)) {
+            return super.dot(matrix, transposeThis, transposeMatrix);
+        }
+        Matrix right = transposeMatrix ? matrix.transpose() : matrix;
+        if (transposeThis && right instanceof AccurateMatrix && right.columns == 1 && rows == right.rows && rowContiguous()) {
+            return transposeDotVector((AccurateMatrix) right);
+        }
+        return (transposeThis ? transpose() : this).dot(right);
+    }
+
+    // this^T . x as a sum of this's rows scaled by x, so this is still read row by row. The columns of the answer are split
+    // between the threads
+    @Nonnull
+    private AccurateMatrix transposeDotVector(@Nonnull AccurateMatrix x) {
+        AccurateMatrix answer = template(columns, 1);
+        Parallelism.forRows(columns, rows, (from, to) -> {
+            for (int k = 0; k < rows; k++) {
+                double scale = x.values[x.offset + k * x.rowStride];
+                int index = offset + k * rowStride;
+                for (int j = from; j < to; j++) {
+                    answer.values[j] += scale * values[index + j];
+                }
+            }
+        });
+        return answer;
+    }
+
+    @Override
+    public Matrix gemm(@Nonnull Matrix matrix, @Nonnull Epilogue epilogue, @Nonnull Matrix out) {
+        if (matrix instanceof LazyMatrix) {
+            return gemm(((LazyMatrix) matrix).evaluate(), epilogue, out);
+        }
+        if (matrix instanceof NormalMatrix && columns == matrix.rows) {
+            return gemm(((NormalMatrix) matrix).toAccurate(), epilogue, out);
+        }
+        if (!(matrix instanceof AccurateMatrix) || !(out instanceof AccurateMatrix)) {
+            return super.gemm(matrix, epilogue, out);
+        }
+        checkGemm(matrix, epilogue, out);
+        AccurateMatrix target = (AccurateMatrix) out;
+        if (target.overlaps(this) || target.overlaps((AccurateMatrix) matrix)) {
+            // the kernels write out while they still read the operands, so an aliased out gets the answer through a copy
+            AccurateMatrix answer = epilogue.beta == 0.0 ? template(out.rows, out.columns) : (AccurateMatrix) out.clone();
+            Gemm.multiply(this, (AccurateMatrix) matrix, answer, epilogue);
+            target.copyFrom(answer);
+        } else {
+            Gemm.multiply(this, (AccurateMatrix) matrix, target, epilogue);
+        }
+        out.modified();
+        return out;
+    }
+
+    // whether the two share an element of the backing array, judged by the span of indices each one covers, so views that
+    // only interleave count as overlapping too
+    private boolean overlaps(@Nonnull AccurateMatrix matrix) {
+        if (values != matrix.values || rows == 0 || columns == 0 || matrix.rows == 0 || matrix.columns == 0) {
+            return false;
+        }
+        return offset <= matrix.lastIndex() && matrix.offset <= lastIndex();
+    }
+
+    private int lastIndex() {
+        return offset + (rows - 1) * rowStride + (columns - 1) * columnStride;
+    }
+
+    // from a contiguous matrix of the same size
+    private void copyFrom(@Nonnull AccurateMatrix matrix) {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0, index = offset + i * rowStride; j < columns; j++, index += columnStride) {
+                values[index] = matrix.values[i * columns + j];
+            }
+        }
+    }
+
+    // contiguous along rows (column stride 1), which is what the kernels need
+    private boolean rowContiguous() {
+        return columnStride == 1;
+    }
+
+    @Override
+    protected double sum(int from, int to) {
+        if (!rowContiguous()) {
+            return super.sum(from, to);
+        }
+        double partial = 0.0;
+        for (int i = from; i < to; i++) {
+            partial += Kernels.INSTANCE.sum(values, offset + i * rowStride, columns);
+        }
+        return partial;
+    }
+
+    @Override
+    public Matrix operate(@Nonnull DoubleUnaryOperator function, @Nonnull Matrix out) {
+        Kernels.Activation activation = Kernels.activation(function);
+        if (activation == null || !(out instanceof AccurateMatrix) || !rowContiguous() || !((AccurateMatrix) out).rowContiguous()) {
+            return super.operate(function, out);
+        }
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        AccurateMatrix c = (AccurateMatrix) out;
+        Activations.Accuracy accuracy = Activations.accuracy();
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Kernels.INSTANCE.activate(activation, accuracy, values, offset + i * rowStride, c.values, c.offset + i * c.rowStride, columns);
+            }
+        });
+        out.modified();
+        return out;
+    }
+
+    @Override
+    public Matrix softmax(@Nonnull Matrix out) {
+        if (!(out instanceof AccurateMatrix) || !rowContiguous() || !((AccurateMatrix) out).rowContiguous() || !sameDimension(out)) {
+            return super.softmax(out);
+        }
+        AccurateMatrix c = (AccurateMatrix) out;
+        Activations.Accuracy accuracy = Activations.accuracy();
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Kernels.INSTANCE.softmax(accuracy, values, offset + i * rowStride, c.values, c.offset + i * c.rowStride, columns);
+            }
+        });
+        out.modified();
+        return out;
+    }
+
+    @Override
+    public Matrix sigmoid(@Nonnull Matrix out, @Nonnull Matrix derivative) {
+        if (!(out instanceof AccurateMatrix) || !(derivative instanceof AccurateMatrix) || !rowContiguous() || !((AccurateMatrix) out).rowContiguous()
+                || !((AccurateMatrix) derivative).rowContiguous() || !sameDimension(out) || !sameDimension(derivative)) {
+            return super.sigmoid(out, derivative);
+        }
+        AccurateMatrix c = (AccurateMatrix) out, d = (AccurateMatrix) derivative;
+        Activations.Accuracy accuracy = Activations.accuracy();
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Kernels.INSTANCE.sigmoid(accuracy, values, offset + i * rowStride, c.values, c.offset + i * c.rowStride,
+                        d.values, d.offset + i * d.rowStride, columns);
+            }
+        });
+        out.modified();
+        derivative.modified();
+        return out;
+    }
+
+    @Override
+    public Matrix operate(@Nonnull Matrix matrix, @Nonnull DoubleBinaryOperator function, @Nonnull Matrix out) {
+        Kernels.Operation operation = Kernels.operation(function);
+        if (operation == null || !(matrix instanceof AccurateMatrix) || !(out instanceof AccurateMatrix) || !rowContiguous()
+                || !((AccurateMatrix) matrix).rowContiguous() || !((AccurateMatrix) out).rowContiguous()) {
+            return super.operate(matrix, function, out);
+        }
+        if (!sameDimension(matrix)) {
+            throw new MismatchDimensionException(this, matrix);
+        }
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        AccurateMatrix b = (AccurateMatrix) matrix;
+        AccurateMatrix c = (AccurateMatrix) out;
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Kernels.INSTANCE.apply(operation, values, offset + i * rowStride, b.values, b.offset + i * b.rowStride,
+                        c.values, c.offset + i * c.rowStride, columns);
+            }
+        });
+        out.modified();
+        return out;
+    }
+
+    @Override
+    public Matrix fma(@Nonnull Matrix b, @Nonnull Matrix c, @Nonnull Matrix out) {
+        if (!(b instanceof AccurateMatrix) || !(c instanceof AccurateMatrix) || !(out instanceof AccurateMatrix) || !rowContiguous()
+                || !((AccurateMatrix) b).rowContiguous() || !((AccurateMatrix) c).rowContiguous() || !((AccurateMatrix) out).rowContiguous()) {
+            return super.fma(b, c, out);
+        }
+        if (!sameDimension(b)) {
+            throw new MismatchDimensionException(this, b);
+        }
+        if (!sameDimension(c)) {
+            throw new MismatchDimensionException(this, c);
+        }
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        AccurateMatrix x = (AccurateMatrix) b;
+        AccurateMatrix y = (AccurateMatrix) c;
+        AccurateMatrix z = (AccurateMatrix) out;
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Kernels.INSTANCE.fma(values, offset + i * rowStride, x.values, x.offset + i * x.rowStride,
+                        y.values, y.offset + i * y.rowStride, z.values, z.offset + i * z.rowStride, columns);
+            }
+        });
+        out.modified();
+        return out;
+    }
+
+    @Override
+    public Matrix dot(@Nonnull Matrix matrix) {
+        if (matrix instanceof LazyMatrix) {
+            return dot(((LazyMatrix) matrix).evaluate());
+        }
+        if (matrix instanceof SparseMatrix) {
+            return ((SparseMatrix) matrix).leftDot(this);
+        }
+        if (matrix instanceof NormalMatrix && columns == matrix.rows) {
+            return dot(((NormalMatrix) matrix).toAccurate());
+        }
+        if (!(matrix instanceof AccurateMatrix)) {
+            return super.dot(matrix);
+        }
+        if (columns != matrix.rows) {
+            throw new MismatchDimensionException(this, matrix);
+        }
+        AccurateMatrix right = (AccurateMatrix) matrix;
+        AccurateMatrix answer = template(rows, matrix.columns);
+        if (right.columns == 1 && right.rowStride == 1 && rowContiguous()) {
+            // matrix-vector, each answer is one contiguous dot product
+            Parallelism.forRows(rows, columns, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    answer.values[i] = Kernels.INSTANCE.dot(values, offset + i * rowStride, right.values, right.offset, columns);
+                }
+            });
+            return answer;
+        }
+        Gemm.multiply(this, right, answer);
+        return answer;
     }
 
     @Override
     @SuppressWarnings("SameParameterValue")
     public void mutableSet(int i, int j, double value) {
-        values[i][j] = value;
+        values[index(i, j)] = value;
+        changed();
     }
 
     private void addRowToRow(int rowWithValuesToAdd, double multiple, int rowToAddTo) { // rowToAddTo += rowWithValuesToAdd * multiple
@@ -61,12 +428,12 @@ public class AccurateMatrix extends Matrix implements Cloneable { // immutable
         }
     }
 
-    private void changeRow(int rowToChange, @Nonnull Function<Double, Double> function) {
+    private void changeRow(int rowToChange, @Nonnull DoubleUnaryOperator function) {
         if (rowToChange < 0 || rowToChange >= rows) {
             throw new IndexOutOfBoundsException();
         }
         for (int i = 0; i < columns; i++) {
-            mutableSet(rowToChange, i, function.apply(get(rowToChange, i)));
+            mutableSet(rowToChange, i, function.applyAsDouble(get(rowToChange, i)));
         }
     }
 
@@ -83,20 +450,26 @@ public class AccurateMatrix extends Matrix implements Cloneable { // immutable
         if (columns == 0 || rows == 0) {
             return this;
         }
+        return derived(REDUCED_ROW_ECHELON_FORM, this::computeReducedRowEchelonForm);
+    }
+
+    private AccurateMatrix computeReducedRowEchelonForm() {
         AccurateMatrix answer = (AccurateMatrix) clone();
         int pivotLocation = 0;
         {
             int row = 0;
             do {
+                // partial pivoting, the largest candidate keeps the multipliers below 1
                 int nonZeroRowFound = -1;
+                double largest = 0.0;
                 for (int i = row; i < rows; i++) {
-                    if (!Environment.doubleLooselyEquals(answer.get(i, pivotLocation), 0.0)) {
-                        // found it
+                    double candidate = Math.abs(answer.get(i, pivotLocation));
+                    if (candidate > largest) {
                         nonZeroRowFound = i;
-                        break;
+                        largest = candidate;
                     }
                 }
-                if (nonZeroRowFound >= 0) {
+                if (nonZeroRowFound >= 0 && !Environment.doubleLooselyEquals(largest, 0.0)) {
                     if (nonZeroRowFound != row) {
                         answer.switchRow(nonZeroRowFound, row);
                     }
@@ -132,8 +505,7 @@ public class AccurateMatrix extends Matrix implements Cloneable { // immutable
         return answer;
     }
 
-    private int[] pivotLocations() { // array with #rows length, each index containing the column position of the pivot
-        AccurateMatrix RREF = reducedRowEchelonForm();
+    private int[] pivotLocations(@Nonnull AccurateMatrix RREF) { // array with #rows length, each index containing the column position of the pivot
         int[] answer = new int[rows];
         for (int i = 0; i < rows; i++) {
             answer[i] = -1;
@@ -148,27 +520,25 @@ public class AccurateMatrix extends Matrix implements Cloneable { // immutable
     }
 
     public int rank() {
-        if (rank != null) {
-            return rank;
-        } else {
-            int[] pivotLocations = pivotLocations();
-            for (int i = 0; i < pivotLocations.length; i++) {
-                if (pivotLocations[i] == -1) {
-                    return i;
-                }
+        return derived(RANK, () -> {
+            int[] pivotLocations = pivotLocations(reducedRowEchelonForm());
+            int rank = 0;
+            while (rank < pivotLocations.length && pivotLocations[rank] != -1) {
+                rank++;
             }
-            return (rank = pivotLocations.length);
-        }
+            return rank;
+        });
     }
 
     public AccurateMatrix nullSpace() {
-        if (nullSpace != null) {
-            return nullSpace;
-        } else {
+        return derived(NULL_SPACE, () -> {
             AccurateMatrix RREF = reducedRowEchelonForm();
-            int rank = rank();
-            int[] pivotLocations = pivotLocations();
-            nullSpace = new AccurateMatrix(columns, columns - rank);
+            int[] pivotLocations = pivotLocations(RREF);
+            int rank = 0;
+            while (rank < pivotLocations.length && pivotLocations[rank] != -1) {
+                rank++;
+            }
+            AccurateMatrix nullSpace = new AccurateMatrix(columns, columns - rank);
             int currentColumnOfNullSpace = 0;
             for (int i = 0; i < (rank == 0 ? 1 : rank); i++) { // loop through each pivots
                 // these are starting and ending indices of dependent vectors, so go through each of those vectors and build up one of the null space's columns
@@ -184,39 +554,62 @@ public class AccurateMatrix extends Matrix implements Cloneable { // immutable
                 }
             }
             return nullSpace;
-        }
+        });
     }
 
-    @Nullable
-    public AccurateMatrix inverse() {
-        if (rows != columns) {
-            throw new MatrixNotInvertibleException("Not a square matrix");
+    // factored once and reused by solve(), determinant() and inverse()
+    public LUDecomposition lu() {
+        return derived(LU, () -> new LUDecomposition(this));
+    }
+
+    // the cheapest factorization that fits: Cholesky for symmetric positive definite, LU for other square matrices and
+    // Householder QR (least squares) for tall ones
+    public Decomposition decompose() {
+        if (rows < columns) {
+            throw new MatrixNotInvertibleException("Underdetermined system, there are more columns than rows");
         }
-        // creating the matrix with 2 sides, on the left is the original matrix, on the right is the identity matrix
-        AccurateMatrix answer = new AccurateMatrix(rows, rows * 2);
-        // copying the first part (original matrix) over
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns; j++) {
-                answer.mutableSet(i, j, get(i, j));
+        return derived(DECOMPOSITION, () -> {
+            if (rows > columns) {
+                return new QRDecomposition(this);
+            }
+            if (isSymmetric()) {
+                CholeskyDecomposition cholesky = new CholeskyDecomposition(this);
+                if (cholesky.isPositiveDefinite()) {
+                    return cholesky;
+                }
             }
+            return lu();
+        });
+    }
+
+    public AccurateMatrix solve(@Nonnull Matrix b) {
+        return decompose().solve(b);
+    }
+
+    public boolean isSymmetric() {
+        if (rows != columns) {
+            return false;
         }
-        // copying the second part (identity matrix) over
         for (int i = 0; i < rows; i++) {
-            answer.mutableSet(i, columns + i, 1);
-        }
-        answer = answer.reducedRowEchelonForm();
-        for (int w = 0; w < rows; w++) {
-            if (!Environment.doubleLooselyEquals(answer.get(rows - 1, w), 0.0)) {
-                AccurateMatrix croppedAnswer = new AccurateMatrix(rows, columns);
-                for (int i = 0; i < rows; i++) {
-                    for (int j = 0; j < columns; j++) {
-                        croppedAnswer.mutableSet(i, j, answer.get(i, j + columns));
-                    }
+            for (int j = 0; j < i; j++) {
+                if (!Environment.doubleLooselyEquals(get(i, j), get(j, i))) {
+                    return false;
                 }
-                return croppedAnswer;
             }
         }
-        return null;
+        return true;
+    }
+
+    public double determinant() {
+        return lu().determinant();
+    }
+
+    @Nullable
+    public AccurateMatrix inverse() {
+        if (rows != columns) {
+            throw new MatrixNotInvertibleException("Not a square matrix");
+        }
+        return derived(INVERSE, () -> lu().inverse());
     }
 
     @Nonnull
@@ -243,4 +636,109 @@ public class AccurateMatrix extends Matrix implements Cloneable { // immutable
             return false;
         }
     }
+
+    // builds a matrix a row at a time, straight into the array the matrix ends up using, so rows coming from a stream or
+    // from RowBatches never have to be gathered into a double[][] first. The array grows by half like an ArrayList's and build()
+    // trims it once, which it doesn't have to when the expected number of rows was right
+    public static final class Builder {
+        private final int columns;
+        private double[] values;
+        private int rows = 0;
+        private boolean built = false;
+
+        private Builder(int numberOfColumns, int expectedRows) {
+            if (numberOfColumns < 0 || expectedRows < 0) {
+                throw new IllegalArgumentException("Negative dimension (" + expectedRows + ", " + numberOfColumns + ")");
+            }
+            columns = numberOfColumns;
+            values = new double[checkedSize(expectedRows)];
+        }
+
+        public int numberOfRows() {
+            return rows;
+        }
+
+        public int numberOfColumns() {
+            return columns;
+        }
+
+        @Nonnull
+        public Builder addRow(@Nonnull double[] row) {
+            if (row.length != columns) {
+                throw new IllegalArgumentException("Expected a row of " + columns + " columns, got " + row.length);
+            }
+            return addRow(row, 0);
+        }
+
+        // copies row[offset, offset + numberOfColumns())
+        @Nonnull
+        public Builder addRow(@Nonnull double[] row, int offset) {
+            if (offset < 0 || offset + columns > row.length) {
+                throw new IndexOutOfBoundsException("Row of " + columns + " from " + offset + " is outside of an array of " + row.length);
+            }
+            reserve(1);
+            System.arraycopy(row, offset, values, rows * columns, columns);
+            rows++;
+            return this;
+        }
+
+        // appends every row of matrix, read straight into place
+        @Nonnull
+        public Builder addRows(@Nonnull Matrix matrix) {
+            if (matrix.columns != columns) {
+                throw new IllegalArgumentException("Expected rows of " + columns + " columns, got " + matrix.columns);
+            }
+            if (matrix instanceof LazyMatrix) {
+                matrix = ((LazyMatrix) matrix).evaluate();
+            }
+            reserve(matrix.rows);
+            for (int i = 0; i < matrix.rows; i++) {
+                matrix.readRow(i, 0, values, (rows + i) * columns, columns);
+            }
+            rows += matrix.rows;
+            return this;
+        }
+
+        // appends every remaining batch
+        @Nonnull
+        public Builder addRows(@Nonnull RowBatches batches) {
+            while (batches.hasNext()) {
+                addRows(batches.next());
+            }
+            return this;
+        }
+
+        // the builder can't be used afterwards, the matrix owns the array
+        @Nonnull
+        public AccurateMatrix build() {
+            checkOpen();
+            built = true;
+            double[] array = values.length == rows * columns ? values : Arrays.copyOf(values, rows * columns);
+            values = new double[0];
+            return new AccurateMatrix(array, 0, rows, columns, columns, 1);
+        }
+
+        private void reserve(int extraRows) {
+            checkOpen();
+            int needed = checkedSize((long) rows + extraRows);
+            if (needed > values.length) {
+                long grown = (long) values.length + (values.length >> 1);
+                values = Arrays.copyOf(values, (int) Math.min(Math.max(grown - grown % Math.max(1, columns), needed), Integer.MAX_VALUE));
+            }
+        }
+
+        private int checkedSize(long numberOfRows) {
+            long size = numberOfRows * columns;
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("A (" + numberOfRows + ", " + columns + ") matrix doesn't fit in an array");
+            }
+            return (int) size;
+        }
+
+        private void checkOpen() {
+            if (built) {
+                throw new IllegalStateException("The matrix has already been built");
+            }
+        }
+    }
 }
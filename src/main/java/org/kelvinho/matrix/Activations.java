@@ -0,0 +1,109 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+
+// exp, sigmoid and tanh without a call into Math.exp per element. exp(x) is reduced to 2^k * exp(r) with |r| <= ln2 / 2 (ln2 split
+// in two so r is exact), exp(r) comes from a fixed polynomial and 2^k is built straight into the exponent bits, so a loop over
+// them is nothing but multiplies, adds and bit moves that the kernels can vectorize. The accuracy is a global setting, picked up
+// by sigmoid(), tanh(), exp(), softmax() and logSumExp() on every matrix type. Relative errors are for results in the normal
+// range, subnormal results lose the bits they don't have
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class Activations {
+    public enum Accuracy {
+        EXACT, // java.lang.Math
+        ACCURATE, // within a few ulps, below 1e-15 relative
+        FAST // about float precision, below 2e-7 relative
+    }
+
+    private static final double LOG2_E = 1.4426950408889634;
+    private static final double LN2_HI = 6.93147180369123816490e-01; // trailing zeros, so k * LN2_HI is exact
+    private static final double LN2_LO = 1.90821492927058770002e-10;
+    private static final double MIN = -746.0; // exp rounds to 0 below this
+    private static final double MAX = 710.0; // and overflows above
+    private static volatile Accuracy accuracy = Accuracy.ACCURATE;
+
+    private Activations() {
+    }
+
+    public static void setAccuracy(@Nonnull Accuracy accuracy) {
+        Activations.accuracy = accuracy;
+    }
+
+    @Nonnull
+    public static Accuracy accuracy() {
+        return accuracy;
+    }
+
+    public static double exp(double x) {
+        return exp(x, accuracy);
+    }
+
+    public static double exp(double x, @Nonnull Accuracy accuracy) {
+        if (accuracy == Accuracy.EXACT) {
+            return Math.exp(x);
+        }
+        x = Math.min(Math.max(x, MIN), MAX); // NaN stays NaN
+        double k = Math.rint(x * LOG2_E);
+        double r = (x - k * LN2_HI) - k * LN2_LO;
+        double q = accuracy == Accuracy.FAST ? fast(r) : accurate(r);
+        return scale(1.0 + q, (int) k);
+    }
+
+    // exp(x) - 1 for x <= 0, without the cancellation near 0 that exp(x) - 1 has
+    static double expm1(double x, @Nonnull Accuracy accuracy) {
+        if (accuracy == Accuracy.EXACT) {
+            return Math.expm1(x);
+        }
+        x = Math.max(x, MIN);
+        double k = Math.rint(x * LOG2_E);
+        double r = (x - k * LN2_HI) - k * LN2_LO;
+        double q = accuracy == Accuracy.FAST ? fast(r) : accurate(r);
+        double power = scale(1.0, (int) k);
+        return power * q + (power - 1.0);
+    }
+
+    public static double sigmoid(double x) {
+        return sigmoid(x, accuracy);
+    }
+
+    // exp only ever sees -|x|, so neither side overflows
+    public static double sigmoid(double x, @Nonnull Accuracy accuracy) {
+        double e = exp(-Math.abs(x), accuracy);
+        double s = 1.0 / (1.0 + e);
+        return x >= 0 ? s : e * s;
+    }
+
+    public static double tanh(double x) {
+        return tanh(x, accuracy);
+    }
+
+    // tanh(|x|) = -expm1(-2|x|) / (2 + expm1(-2|x|))
+    public static double tanh(double x, @Nonnull Accuracy accuracy) {
+        if (accuracy == Accuracy.EXACT) {
+            return Math.tanh(x);
+        }
+        double m = expm1(-2.0 * Math.abs(x), accuracy);
+        return Math.copySign(-m / (2.0 + m), x);
+    }
+
+    // exp(r) - 1 for |r| <= ln2 / 2, Taylor to degree 12, the first dropped term is below 2e-16
+    private static double accurate(double r) {
+        return r * (1.0 + r * (1.0 / 2 + r * (1.0 / 6 + r * (1.0 / 24 + r * (1.0 / 120 + r * (1.0 / 720 + r * (1.0 / 5040
+                + r * (1.0 / 40320 + r * (1.0 / 362880 + r * (1.0 / 3628800 + r * (1.0 / 39916800 + r * (1.0 / 479001600))))))))))));
+    }
+
+    // to degree 6, the first dropped term is below 1.2e-7
+    private static double fast(double r) {
+        return r * (1.0 + r * (1.0 / 2 + r * (1.0 / 6 + r * (1.0 / 24 + r * (1.0 / 120 + r * (1.0 / 720))))));
+    }
+
+    // value * 2^k in two steps, so 2^k itself never has to be representable and results over/underflow like Math.exp's
+    private static double scale(double value, int k) {
+        int half = k >> 1;
+        return value * twoTo(half) * twoTo(k - half);
+    }
+
+    private static double twoTo(int k) {
+        return Double.longBitsToDouble((long) (k + 1023) << 52);
+    }
+}
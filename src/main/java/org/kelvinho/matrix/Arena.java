@@ -0,0 +1,166 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// owns the direct memory behind OffHeapMatrix instances. The memory of a closed matrix is kept, by size, and handed out again
+// zeroed, so the temporaries that template() creates in a loop stop allocating after the first iteration. close() closes every
+// matrix still open and frees all of it at once, which keeps large matrices away from the garbage collector entirely
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class Arena implements AutoCloseable {
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(1 << 16);
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    private final Map<Integer, ArrayDeque<ByteBuffer>> free = new HashMap<>();
+    private final Set<OffHeapMatrix> open = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long reservedBytes = 0;
+    private boolean closed = false;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // java 8 has no invokeCleaner, dropped buffers are then freed whenever the garbage collector notices them
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    @Nonnull
+    public OffHeapMatrix allocate(int numberOfRows, int numberOfColumns) {
+        return allocate(numberOfRows, numberOfColumns, ElementType.DOUBLE);
+    }
+
+    // zero filled, the memory itself is only taken a band at a time as the matrix is touched
+    @Nonnull
+    public synchronized OffHeapMatrix allocate(int numberOfRows, int numberOfColumns, @Nonnull ElementType type) {
+        if (closed) {
+            throw new IllegalStateException("The arena is closed");
+        }
+        if (numberOfRows < 0 || numberOfColumns < 0) {
+            throw new IllegalArgumentException("Bad dimension (" + numberOfRows + ", " + numberOfColumns + ")");
+        }
+        OffHeapMatrix matrix = new OffHeapMatrix(this, numberOfRows, numberOfColumns, type);
+        open.add(matrix);
+        return matrix;
+    }
+
+    // doubles, or floats for a NormalMatrix
+    @Nonnull
+    public OffHeapMatrix copy(@Nonnull Matrix matrix) {
+        OffHeapMatrix answer = allocate(matrix.numberOfRows(), matrix.numberOfColumns(), ElementType.of(matrix));
+        double[] row = new double[matrix.numberOfColumns()];
+        for (int i = 0; i < matrix.numberOfRows(); i++) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = matrix.get(i, j);
+            }
+            answer.writeRow(i, 0, row, 0, row.length);
+        }
+        return answer;
+    }
+
+    // direct memory held by this arena, both in use and pooled
+    public synchronized long reservedBytes() {
+        return reservedBytes;
+    }
+
+    public synchronized long pooledBytes() {
+        long answer = 0;
+        for (ArrayDeque<ByteBuffer> buffers : free.values()) {
+            for (ByteBuffer buffer : buffers) {
+                answer += buffer.capacity();
+            }
+        }
+        return answer;
+    }
+
+    // frees the pooled memory, matrices still open are untouched
+    public synchronized void trim() {
+        for (ArrayDeque<ByteBuffer> buffers : free.values()) {
+            for (ByteBuffer buffer : buffers) {
+                free(buffer);
+            }
+        }
+        free.clear();
+    }
+
+    @Nonnull
+    synchronized ByteBuffer acquire(int bytes) {
+        if (closed) {
+            throw new IllegalStateException("The arena is closed");
+        }
+        ArrayDeque<ByteBuffer> buffers = free.get(bytes);
+        ByteBuffer buffer = buffers == null ? null : buffers.poll();
+        if (buffer == null) {
+            reservedBytes += bytes;
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        // a fresh direct buffer is zeroed by the JVM, a recycled one has to be cleared here
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            ByteBuffer zeros = ZEROS.duplicate();
+            zeros.limit(Math.min(zeros.capacity(), buffer.remaining()));
+            buffer.put(zeros);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    synchronized void recycle(@Nonnull ByteBuffer buffer) {
+        if (closed) {
+            free(buffer);
+        } else {
+            free.computeIfAbsent(buffer.capacity(), capacity -> new ArrayDeque<>()).push(buffer);
+        }
+    }
+
+    synchronized void closed(@Nonnull OffHeapMatrix matrix) {
+        open.remove(matrix);
+    }
+
+    private void free(@Nonnull ByteBuffer buffer) {
+        reservedBytes -= buffer.capacity();
+        if (INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException e) {
+                // left to the garbage collector
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        List<OffHeapMatrix> matrices;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            matrices = new ArrayList<>(open);
+        }
+        for (OffHeapMatrix matrix : matrices) {
+            matrix.close();
+        }
+        synchronized (this) {
+            trim();
+            closed = true;
+        }
+    }
+}
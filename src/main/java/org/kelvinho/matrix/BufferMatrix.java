@@ -0,0 +1,266 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import java.nio.Buffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// row-major doubles or floats outside of the heap, kept in bands of whole rows that are each backed by one NIO buffer (a single
+// buffer can't go past 2GB). Subclasses decide where a band lives, band() creates it the first time it's touched.
+// dot() and transpose() work tile by tile: a tile of each side is copied on heap, multiplied with Gemm and written out, so
+// neither the operands nor the answer ever has to fit in the heap
+@SuppressWarnings({"unused", "WeakerAccess"})
+public abstract class BufferMatrix extends Matrix {
+    static final long BAND_BYTES = 1 << 28;
+    static final int TILE = 512;
+    final ElementType type;
+    final int rowsPerBand;
+    private final AtomicReferenceArray<Buffer> bands; // DoubleBuffer or FloatBuffer, depending on type
+
+    BufferMatrix(int numberOfRows, int numberOfColumns, @Nonnull ElementType type) {
+        if ((long) numberOfColumns * type.bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A single row of " + numberOfColumns + " columns doesn't fit in one buffer");
+        }
+        this.type = type;
+        rows = numberOfRows;
+        columns = numberOfColumns;
+        rowsPerBand = (int) Math.max(1, Math.min(rows, BAND_BYTES / Math.max(1, (long) columns * type.bytes)));
+        bands = new AtomicReferenceArray<>(rows == 0 ? 0 : (rows + rowsPerBand - 1) / rowsPerBand);
+    }
+
+    // a DoubleBuffer or FloatBuffer (matching type) holding rows [firstRow, firstRow + numberOfRows)
+    @Nonnull
+    abstract Buffer createBand(int firstRow, int numberOfRows);
+
+    @Nonnull
+    public ElementType elementType() {
+        return type;
+    }
+
+    int numberOfBands() {
+        return bands.length();
+    }
+
+    @Nonnull
+    Buffer band(int band) {
+        Buffer buffer = bands.get(band);
+        if (buffer == null) {
+            int firstRow = band * rowsPerBand;
+            buffer = createBand(firstRow, Math.min(rowsPerBand, rows - firstRow));
+            // two threads may create the same band, the loser's buffer is dropped
+            if (!bands.compareAndSet(band, null, buffer)) {
+                buffer = bands.get(band);
+            }
+        }
+        return buffer;
+    }
+
+    // forgets the band, returning whatever buffer it had
+    Buffer detachBand(int band) {
+        return bands.getAndSet(band, null);
+    }
+
+    private void checkIndex(int i, int j) {
+        if (i < 0 || i >= rows || j < 0 || j >= columns) {
+            throw new IndexOutOfBoundsException("(" + i + ", " + j + ") is outside of (" + rows + ", " + columns + ")");
+        }
+    }
+
+    @Override
+    public double get(int i, int j) {
+        checkIndex(i, j);
+        Buffer buffer = band(i / rowsPerBand);
+        int index = (i % rowsPerBand) * columns + j;
+        return type == ElementType.DOUBLE ? ((DoubleBuffer) buffer).get(index) : ((FloatBuffer) buffer).get(index);
+    }
+
+    @Override
+    public void mutableSet(int i, int j, double value) {
+        checkIndex(i, j);
+        Buffer buffer = band(i / rowsPerBand);
+        int index = (i % rowsPerBand) * columns + j;
+        if (type == ElementType.DOUBLE) {
+            ((DoubleBuffer) buffer).put(index, value);
+        } else {
+            ((FloatBuffer) buffer).put(index, (float) value);
+        }
+        changed();
+    }
+
+    @Override
+    void readRow(int i, int column, @Nonnull double[] target, int targetOffset, int length) {
+        int start = (i % rowsPerBand) * columns + column;
+        if (type == ElementType.DOUBLE) {
+            DoubleBuffer buffer = ((DoubleBuffer) band(i / rowsPerBand)).duplicate();
+            buffer.position(start);
+            buffer.get(target, targetOffset, length);
+        } else {
+            FloatBuffer buffer = (FloatBuffer) band(i / rowsPerBand);
+            for (int w = 0; w < length; w++) {
+                target[targetOffset + w] = buffer.get(start + w);
+            }
+        }
+    }
+
+    @Override
+    void writeRow(int i, int column, @Nonnull double[] source, int sourceOffset, int length) {
+        int start = (i % rowsPerBand) * columns + column;
+        if (type == ElementType.DOUBLE) {
+            DoubleBuffer buffer = ((DoubleBuffer) band(i / rowsPerBand)).duplicate();
+            buffer.position(start);
+            buffer.put(source, sourceOffset, length);
+        } else {
+            FloatBuffer buffer = (FloatBuffer) band(i / rowsPerBand);
+            for (int w = 0; w < length; w++) {
+                buffer.put(start + w, (float) source[sourceOffset + w]);
+            }
+        }
+    }
+
+    @Override
+    protected double sum(int from, int to) {
+        double[] row = new double[columns];
+        double partial = 0.0;
+        for (int i = from; i < to; i++) {
+            readRow(i, 0, row, 0, columns);
+            partial += Kernels.INSTANCE.sum(row, 0, columns);
+        }
+        return partial;
+    }
+
+    // the answer comes from template(), so it stays off heap as well (unless it's small, see MappedMatrix) and has to be closed
+    // when it's a MappedMatrix. Answers are only written through writeRow(), so any matrix can take them
+    @Override
+    public Matrix dot(@Nonnull Matrix matrix) {
+        if (columns != matrix.rows) {
+            throw new MismatchDimensionException(this, matrix);
+        }
+        return dot(matrix, template(rows, matrix.columns));
+    }
+
+    // tile by tile as well, a transposed operand is loaded tile by tile from the mirrored position and read through a view
+    @Override
+    public Matrix dot(@Nonnull Matrix matrix, boolean transposeThis, boolean transposeMatrix) {
+        if ((transposeThis ? rows : columns) != (transposeMatrix ? matrix.columns : matrix.rows)) {
+            throw new MismatchDimensionException(this, matrix);
+        }
+        Matrix answer = template(transposeThis ? columns : rows, transposeMatrix ? matrix.rows : matrix.columns);
+        return dot(matrix, transposeThis, transposeMatrix, answer);
+    }
+
+    <T extends Matrix> T dot(@Nonnull Matrix matrix, @Nonnull T answer) {
+        return dot(matrix, false, false, answer);
+    }
+
+    <T extends Matrix> T dot(@Nonnull Matrix matrix, boolean transposeThis, boolean transposeMatrix, @Nonnull T answer) {
+        int m = answer.rows;
+        int n = answer.columns;
+        int depth = transposeThis ? rows : columns;
+        AccurateMatrix left = new AccurateMatrix(TILE, TILE);
+        AccurateMatrix right = new AccurateMatrix(TILE, TILE);
+        AccurateMatrix product = new AccurateMatrix(TILE, TILE);
+        for (int i0 = 0; i0 < m; i0 += TILE) {
+            int tileRows = Math.min(TILE, m - i0);
+            for (int j0 = 0; j0 < n; j0 += TILE) {
+                int tileColumns = Math.min(TILE, n - j0);
+                AccurateMatrix c = product.subMatrix(0, 0, tileRows, tileColumns);
+                Arrays.fill(product.values, 0.0);
+                for (int k0 = 0; k0 < depth; k0 += TILE) {
+                    int tileDepth = Math.min(TILE, depth - k0);
+                    AccurateMatrix a = transposeThis
+                            ? load(this, k0, i0, tileDepth, tileRows, left).transpose() : load(this, i0, k0, tileRows, tileDepth, left);
+                    AccurateMatrix b = transposeMatrix
+                            ? load(matrix, j0, k0, tileColumns, tileDepth, right).transpose() : load(matrix, k0, j0, tileDepth, tileColumns, right);
+                    Gemm.multiply(a, b, c);
+                }
+                for (int i = 0; i < tileRows; i++) {
+                    answer.writeRow(i0 + i, j0, product.values, i * TILE, tileColumns);
+                }
+            }
+        }
+        answer.modified();
+        return answer;
+    }
+
+    // a tile of source as an on heap matrix, heap matrices are used in place and everything else is copied into buffer
+    @Nonnull
+    private static AccurateMatrix load(@Nonnull Matrix source, int row, int column, int numberOfRows, int numberOfColumns, @Nonnull AccurateMatrix buffer) {
+        if (source instanceof AccurateMatrix) {
+            return ((AccurateMatrix) source).subMatrix(row, column, numberOfRows, numberOfColumns);
+        }
+        if (source instanceof BufferMatrix) {
+            for (int i = 0; i < numberOfRows; i++) {
+                ((BufferMatrix) source).readRow(row + i, column, buffer.values, i * TILE, numberOfColumns);
+            }
+        } else {
+            for (int i = 0; i < numberOfRows; i++) {
+                for (int j = 0; j < numberOfColumns; j++) {
+                    buffer.values[i * TILE + j] = source.get(row + i, column + j);
+                }
+            }
+        }
+        return buffer.subMatrix(0, 0, numberOfRows, numberOfColumns);
+    }
+
+    // a copy from template(), like dot()
+    @Override
+    public Matrix transpose() {
+        return transpose(template(columns, rows));
+    }
+
+    // transpose() already makes a new copy each time
+    @Override
+    public Matrix transposeCopy() {
+        return transpose();
+    }
+
+    <T extends Matrix> T transpose(@Nonnull T answer) {
+        double[] tile = new double[TILE * TILE];
+        double[] transposed = new double[TILE * TILE];
+        for (int i0 = 0; i0 < rows; i0 += TILE) {
+            int tileRows = Math.min(TILE, rows - i0);
+            for (int j0 = 0; j0 < columns; j0 += TILE) {
+                int tileColumns = Math.min(TILE, columns - j0);
+                for (int i = 0; i < tileRows; i++) {
+                    readRow(i0 + i, j0, tile, i * TILE, tileColumns);
+                }
+                for (int i = 0; i < tileRows; i++) {
+                    for (int j = 0; j < tileColumns; j++) {
+                        transposed[j * TILE + i] = tile[i * TILE + j];
+                    }
+                }
+                for (int j = 0; j < tileColumns; j++) {
+                    answer.writeRow(j0 + j, i0, transposed, j * TILE, tileRows);
+                }
+            }
+        }
+        answer.modified();
+        return answer;
+    }
+
+    @Override
+    public boolean equals(@Nonnull Object object) {
+        if (object instanceof BufferMatrix) {
+            BufferMatrix matrix = (BufferMatrix) object;
+            if (!sameDimension(matrix)) {
+                return false;
+            }
+            double[] row = new double[columns];
+            double[] other = new double[columns];
+            for (int i = 0; i < rows; i++) {
+                readRow(i, 0, row, 0, columns);
+                matrix.readRow(i, 0, other, 0, columns);
+                for (int j = 0; j < columns; j++) {
+                    if (!Environment.doubleLooselyEquals(row[j], other[j])) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+}
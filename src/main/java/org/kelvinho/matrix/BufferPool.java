@@ -0,0 +1,298 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// opt-in recycling of the arrays behind the dense matrices that template() creates, for loops that allocate the same shapes
+// over and over. Arrays are bucketed by exact length (repeating shapes hit exactly and no view ever sees a longer array than it
+// expects) and handed out zero filled. A released array goes to a small per thread cache first, then to a shared one capped at
+// maxRetainedBytes, beyond which it's dropped for the collector. Arrays come back either through release(matrix) or by closing a
+// scope(), which returns everything template() allocated on that thread since it was opened except what was keep()'d.
+// A released matrix must not be used again, nor any view of it.
+// retainedBytes() counts the per thread caches too, so it drifts upwards if threads holding cached arrays exit
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class BufferPool {
+    private static final int MIN_LENGTH = 256; // smaller arrays are cheaper to allocate than to pool
+    private static final int LOCAL_PER_LENGTH = 2;
+    private static final Buckets DOUBLES = new Buckets(Double.BYTES);
+    private static final Buckets FLOATS = new Buckets(Float.BYTES);
+    private static final ThreadLocal<Scope> scopes = new ThreadLocal<>();
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final AtomicLong retainedBytes = new AtomicLong();
+    private static volatile boolean enabled = false;
+    private static volatile long maxRetainedBytes = 1L << 28;
+
+    private BufferPool() {
+    }
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    // stops pooling and drops the shared cache, scopes still work while they are open
+    public static void disable() {
+        enabled = false;
+        clear();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setMaxRetainedBytes(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("Negative limit " + bytes);
+        }
+        maxRetainedBytes = bytes;
+    }
+
+    public static long maxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    public static long hits() {
+        return hits.sum();
+    }
+
+    public static long misses() {
+        return misses.sum();
+    }
+
+    public static long retainedBytes() {
+        return retainedBytes.get();
+    }
+
+    public static void resetStatistics() {
+        hits.reset();
+        misses.reset();
+    }
+
+    // drops the shared cache and this thread's cache
+    public static void clear() {
+        DOUBLES.clear();
+        FLOATS.clear();
+    }
+
+    // template() allocations on this thread come from the pool and go back to it on close()
+    @Nonnull
+    public static Scope scope() {
+        Scope scope = new Scope(scopes.get());
+        scopes.set(scope);
+        return scope;
+    }
+
+    // hands the array behind the matrix back, true if it was taken. Only a row-major AccurateMatrix / NormalMatrix spanning its
+    // whole array can be released
+    public static boolean release(@Nonnull Matrix matrix) {
+        Object array = arrayOf(matrix);
+        if (array == null || !(enabled || scopes.get() != null)) {
+            return false;
+        }
+        // a scope would hand it back a second time
+        for (Scope scope = scopes.get(); scope != null; scope = scope.parent) {
+            scope.forget(array);
+        }
+        give(array);
+        return true;
+    }
+
+    @Nonnull
+    static double[] doubles(int length) {
+        if (!pooling(length)) {
+            return new double[length];
+        }
+        double[] array = (double[]) DOUBLES.poll(length);
+        if (array == null) {
+            misses.increment();
+            array = new double[length];
+        } else {
+            hits.increment();
+            Arrays.fill(array, 0.0);
+        }
+        return track(array);
+    }
+
+    @Nonnull
+    static float[] floats(int length) {
+        if (!pooling(length)) {
+            return new float[length];
+        }
+        float[] array = (float[]) FLOATS.poll(length);
+        if (array == null) {
+            misses.increment();
+            array = new float[length];
+        } else {
+            hits.increment();
+            Arrays.fill(array, 0.0f);
+        }
+        return track(array);
+    }
+
+    // runs supplier with this thread's scopes set aside, so nothing it allocates is handed back when they close. For values that
+    // outlive any scope, like the ones a DerivedCache keeps
+    static <T> T unscoped(@Nonnull Supplier<T> supplier) {
+        Scope scope = scopes.get();
+        if (scope == null) {
+            return supplier.get();
+        }
+        scopes.remove();
+        try {
+            return supplier.get();
+        } finally {
+            scopes.set(scope);
+        }
+    }
+
+    private static boolean pooling(int length) {
+        return length >= MIN_LENGTH && (enabled || scopes.get() != null);
+    }
+
+    @Nonnull
+    private static <T> T track(@Nonnull T array) {
+        Scope scope = scopes.get();
+        if (scope != null) {
+            scope.arrays.add(array);
+        }
+        return array;
+    }
+
+    private static void give(@Nonnull Object array) {
+        if (array instanceof double[]) {
+            DOUBLES.offer(array, ((double[]) array).length);
+        } else {
+            FLOATS.offer(array, ((float[]) array).length);
+        }
+    }
+
+    @Nullable
+    private static Object arrayOf(@Nonnull Matrix matrix) {
+        if (matrix instanceof AccurateMatrix) {
+            AccurateMatrix dense = (AccurateMatrix) matrix;
+            if (dense.offset == 0 && dense.columnStride == 1 && dense.rowStride == dense.columns
+                    && dense.values.length == dense.rows * dense.columns && dense.values.length >= MIN_LENGTH) {
+                return dense.values;
+            }
+        } else if (matrix instanceof NormalMatrix) {
+            NormalMatrix dense = (NormalMatrix) matrix;
+            if (dense.offset == 0 && dense.columnStride == 1 && dense.rowStride == dense.columns
+                    && dense.values.length == dense.rows * dense.columns && dense.values.length >= MIN_LENGTH) {
+                return dense.values;
+            }
+        }
+        return null;
+    }
+
+    private static class Buckets {
+        private final int bytes;
+        private final ThreadLocal<Map<Integer, ArrayDeque<Object>>> local = ThreadLocal.withInitial(HashMap::new);
+        private final ConcurrentHashMap<Integer, ConcurrentLinkedDeque<Object>> shared = new ConcurrentHashMap<>();
+
+        Buckets(int bytes) {
+            this.bytes = bytes;
+        }
+
+        @Nullable
+        Object poll(int length) {
+            ArrayDeque<Object> mine = local.get().get(length);
+            Object array = mine == null ? null : mine.poll();
+            if (array == null) {
+                ConcurrentLinkedDeque<Object> theirs = shared.get(length);
+                array = theirs == null ? null : theirs.poll();
+            }
+            if (array != null) {
+                retainedBytes.addAndGet(-(long) length * bytes);
+            }
+            return array;
+        }
+
+        void offer(@Nonnull Object array, int length) {
+            long size = (long) length * bytes;
+            ArrayDeque<Object> mine = local.get().computeIfAbsent(length, key -> new ArrayDeque<>());
+            if (mine.size() < LOCAL_PER_LENGTH) {
+                mine.push(array);
+                retainedBytes.addAndGet(size);
+            } else if (retainedBytes.addAndGet(size) <= maxRetainedBytes) {
+                shared.computeIfAbsent(length, key -> new ConcurrentLinkedDeque<>()).push(array);
+            } else {
+                retainedBytes.addAndGet(-size);
+            }
+        }
+
+        void clear() {
+            for (ArrayDeque<Object> arrays : local.get().values()) {
+                for (Object array : arrays) {
+                    retainedBytes.addAndGet(-(long) Array.getLength(array) * bytes);
+                }
+            }
+            local.get().clear();
+            for (ConcurrentLinkedDeque<Object> arrays : shared.values()) {
+                for (Object array; (array = arrays.poll()) != null; ) {
+                    retainedBytes.addAndGet(-(long) Array.getLength(array) * bytes);
+                }
+            }
+        }
+    }
+
+    // scopes nest per thread and must be closed in reverse order, a kept matrix moves to the enclosing scope if there is one
+    public static final class Scope implements AutoCloseable {
+        private final Scope parent;
+        private final ArrayList<Object> arrays = new ArrayList<>();
+        private boolean closed = false;
+
+        private Scope(@Nullable Scope parent) {
+            this.parent = parent;
+        }
+
+        @Nonnull
+        public <T extends Matrix> T keep(@Nonnull T matrix) {
+            Object array = arrayOf(matrix);
+            if (array != null && forget(array) && parent != null) {
+                parent.arrays.add(array);
+            }
+            return matrix;
+        }
+
+        private boolean forget(@Nonnull Object array) {
+            for (int i = arrays.size() - 1; i >= 0; i--) {
+                if (arrays.get(i) == array) {
+                    arrays.set(i, arrays.get(arrays.size() - 1));
+                    arrays.remove(arrays.size() - 1);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            if (scopes.get() != this) {
+                throw new IllegalStateException("Scopes must be closed on their own thread, innermost first");
+            }
+            closed = true;
+            if (parent == null) {
+                scopes.remove();
+            } else {
+                scopes.set(parent);
+            }
+            for (Object array : arrays) {
+                give(array);
+            }
+            arrays.clear();
+        }
+    }
+}
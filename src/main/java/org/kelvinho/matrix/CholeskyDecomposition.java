@@ -0,0 +1,144 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+
+// A = L L^T for symmetric positive definite A, blocked right-looking: the diagonal block is factored unblocked, the panel below
+// it is solved against L11^T and the lower triangle of the trailing matrix gets a Gemm update per block row, reading L21^T
+// through a transposed view and skipping the blocks above the diagonal. Only the lower triangle of A is read or updated, so it
+// takes half the flops of LU, and no pivoting
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class CholeskyDecomposition implements Decomposition {
+    private static final int NB = 64;
+    private final int n;
+    private final double[] l;
+    private final boolean positiveDefinite;
+
+    public CholeskyDecomposition(@Nonnull Matrix matrix) {
+        if (matrix.numberOfRows() != matrix.numberOfColumns()) {
+            throw new MatrixNotInvertibleException("Not a square matrix");
+        }
+        n = matrix.numberOfRows();
+        l = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                l[i * n + j] = matrix.get(i, j);
+            }
+        }
+        AccurateMatrix view = new AccurateMatrix(l, 0, n, n, n, 1);
+        boolean definite = true;
+        for (int k0 = 0; k0 < n && definite; k0 += NB) {
+            int k1 = Math.min(n, k0 + NB);
+            // L11
+            for (int j = k0; j < k1 && definite; j++) {
+                double diagonal = l[j * n + j];
+                for (int k = k0; k < j; k++) {
+                    diagonal -= l[j * n + k] * l[j * n + k];
+                }
+                if (!(diagonal > 0.0)) {
+                    definite = false;
+                    break;
+                }
+                diagonal = Math.sqrt(diagonal);
+                l[j * n + j] = diagonal;
+                for (int i = j + 1; i < k1; i++) {
+                    double value = l[i * n + j];
+                    for (int k = k0; k < j; k++) {
+                        value -= l[i * n + k] * l[j * n + k];
+                    }
+                    l[i * n + j] = value / diagonal;
+                }
+            }
+            if (definite && k1 < n) {
+                // L21 = A21 * L11^-T, row by row
+                for (int i = k1; i < n; i++) {
+                    for (int j = k0; j < k1; j++) {
+                        double value = l[i * n + j];
+                        for (int k = k0; k < j; k++) {
+                            value -= l[i * n + k] * l[j * n + k];
+                        }
+                        l[i * n + j] = value / l[j * n + j];
+                    }
+                }
+                // A22 -= L21 * L21^T, a block row at a time up to and including its diagonal block
+                AccurateMatrix panel = view.subMatrix(k1, k0, n - k1, k1 - k0);
+                for (int i0 = k1; i0 < n; i0 += NB) {
+                    int i1 = Math.min(n, i0 + NB);
+                    Gemm.multiply(-1.0, panel.subMatrix(i0 - k1, 0, i1 - i0, k1 - k0), panel.subMatrix(0, 0, i1 - k1, k1 - k0).transpose(),
+                            view.subMatrix(i0, k1, i1 - i0, i1 - k1));
+                }
+            }
+        }
+        positiveDefinite = definite;
+        // the diagonal blocks of the updates wrote a little above the diagonal, only the lower triangle is part of L
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                l[i * n + j] = 0.0;
+            }
+        }
+    }
+
+    public boolean isPositiveDefinite() {
+        return positiveDefinite;
+    }
+
+    public AccurateMatrix lower() {
+        return new AccurateMatrix(l.clone(), 0, n, n, n, 1);
+    }
+
+    public double determinant() {
+        double answer = 1.0;
+        for (int i = 0; i < n; i++) {
+            answer *= l[i * n + i];
+        }
+        return answer * answer;
+    }
+
+    @Nonnull
+    @Override
+    public AccurateMatrix solve(@Nonnull Matrix b) {
+        if (b.numberOfRows() != n) {
+            throw new MismatchDimensionException(new AccurateMatrix(l, 0, n, n, n, 1), b);
+        }
+        if (!positiveDefinite) {
+            throw new MatrixNotInvertibleException("Not symmetric positive definite");
+        }
+        int m = b.numberOfColumns();
+        double[] x = new double[n * m];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                x[i * m + j] = b.get(i, j);
+            }
+        }
+        // L y = b
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < i; k++) {
+                double factor = l[i * n + k];
+                if (factor != 0.0) {
+                    for (int j = 0; j < m; j++) {
+                        x[i * m + j] -= factor * x[k * m + j];
+                    }
+                }
+            }
+            double diagonal = l[i * n + i];
+            for (int j = 0; j < m; j++) {
+                x[i * m + j] /= diagonal;
+            }
+        }
+        // L^T x = y, L^T[i][k] = L[k][i], so row k of x is finished before it is pushed into the rows above it
+        for (int k = n - 1; k >= 0; k--) {
+            double diagonal = l[k * n + k];
+            for (int j = 0; j < m; j++) {
+                x[k * m + j] /= diagonal;
+            }
+            for (int i = 0; i < k; i++) {
+                double factor = l[k * n + i];
+                if (factor != 0.0) {
+                    for (int j = 0; j < m; j++) {
+                        x[i * m + j] -= factor * x[k * m + j];
+                    }
+                }
+            }
+        }
+        return new AccurateMatrix(x, 0, n, m, m, 1);
+    }
+}
@@ -0,0 +1,10 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+
+// a factorization that can be reused across many solves, see AccurateMatrix.decompose()
+public interface Decomposition {
+    // x minimising |A x - b|, which is the exact solution for square systems; every column of b is a separate right hand side
+    @Nonnull
+    AccurateMatrix solve(@Nonnull Matrix b);
+}
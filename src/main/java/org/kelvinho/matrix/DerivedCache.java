@@ -0,0 +1,100 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// values derived from a matrix (transpose, sum, rank, echelon form, factorizations, ...), each stamped with the Version of the
+// storage it was computed from. Any mutation bumps the version, so a stale value is never returned, and a value computed while
+// a mutation happened is returned to its caller but not kept. Each key is computed by one thread at a time while the others
+// wait for it, so a matrix shared between threads does its expensive derivations once, and entries are published through
+// volatile fields so readers never see a half built value. Values are never allocated from a BufferPool scope, which would
+// recycle them when it closes
+final class DerivedCache {
+    private final Version version;
+    private final ConcurrentHashMap<Key<?>, Slot> slots = new ConcurrentHashMap<>();
+
+    DerivedCache(@Nonnull Version version) {
+        this.version = version;
+    }
+
+    @Nonnull
+    Version version() {
+        return version;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(@Nonnull Key<T> key, @Nonnull Supplier<T> supplier) {
+        Slot slot = slots.computeIfAbsent(key, k -> new Slot());
+        Entry entry = slot.entry;
+        if (entry != null && entry.stamp == version.value) {
+            return (T) entry.value;
+        }
+        synchronized (slot) {
+            entry = slot.entry;
+            if (entry != null && entry.stamp == version.value) {
+                return (T) entry.value;
+            }
+            long stamp = version.stamp(); // from here on a write bumps the version, so the value below isn't kept
+            T value = BufferPool.unscoped(supplier); // a cached value outlives the scope it was computed in
+            version.publish(slot, new Entry(value, stamp));
+            return value;
+        }
+    }
+
+    // one per derived quantity, compared by identity
+    static final class Key<T> {
+        private final String name;
+
+        Key(@Nonnull String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    // the mutation count of one storage, shared by a matrix and every view over it. bump() is a single volatile read until
+    // something is being computed or cached against the current value, so element-by-element writes stay cheap
+    static final class Version {
+        private volatile long value = 0;
+        private volatile boolean stamped = false;
+
+        void bump() {
+            if (stamped) {
+                synchronized (this) {
+                    stamped = false;
+                    value++;
+                }
+            }
+        }
+
+        // the current value, marked so that the next bump() moves past it
+        private synchronized long stamp() {
+            stamped = true;
+            return value;
+        }
+
+        private synchronized void publish(@Nonnull Slot slot, @Nonnull Entry entry) {
+            if (value == entry.stamp) {
+                slot.entry = entry;
+            }
+        }
+    }
+
+    private static final class Slot {
+        private volatile Entry entry = null;
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long stamp;
+
+        Entry(Object value, long stamp) {
+            this.value = value;
+            this.stamp = stamp;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+
+// how elements are stored on disk or off heap, DOUBLE for AccurateMatrix and FLOAT for NormalMatrix
+public enum ElementType {
+    DOUBLE(1, Double.BYTES), FLOAT(2, Float.BYTES);
+
+    final int code;
+    final int bytes;
+
+    ElementType(int code, int bytes) {
+        this.code = code;
+        this.bytes = bytes;
+    }
+
+    @Nonnull
+    static ElementType of(int code) {
+        for (ElementType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown element type " + code);
+    }
+
+    @Nonnull
+    static ElementType of(@Nonnull Matrix matrix) {
+        return matrix instanceof NormalMatrix ? FLOAT : DOUBLE;
+    }
+}
@@ -30,6 +30,38 @@ class Environment {
         return newValues;
     }
 
+    static double[] flatten(@Nonnull double[][] values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("Input values mst have at least 1 row");
+        }
+        int rows = values.length;
+        int columns = values[0].length;
+        double[] newValues = new double[rows * columns];
+        for (int i = 0; i < rows; i++) {
+            if (values[i].length != columns) {
+                throw new IllegalArgumentException("Row " + i + " has " + values[i].length + " columns, expected " + columns);
+            }
+            System.arraycopy(values[i], 0, newValues, i * columns, columns);
+        }
+        return newValues;
+    }
+
+    static float[] flatten(@Nonnull float[][] values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("Input values mst have at least 1 row");
+        }
+        int rows = values.length;
+        int columns = values[0].length;
+        float[] newValues = new float[rows * columns];
+        for (int i = 0; i < rows; i++) {
+            if (values[i].length != columns) {
+                throw new IllegalArgumentException("Row " + i + " has " + values[i].length + " columns, expected " + columns);
+            }
+            System.arraycopy(values[i], 0, newValues, i * columns, columns);
+        }
+        return newValues;
+    }
+
     private static float[][] convert(@Nonnull int[][] values) {
         if (values.length == 0) {
             throw new IllegalArgumentException("Input values mst have at least 1 row");
@@ -0,0 +1,95 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.function.DoubleUnaryOperator;
+
+// what Matrix.gemm() does to each element of a product before it's stored: out = activation(alpha * product + beta * out + bias).
+// Immutable, each setter returns a changed copy, e.g. new Epilogue().bias(b).sigmoid() for a dense layer. The dense types apply
+// it to every output tile right as the tile's last panel is accumulated, so the product is never written out on its own.
+// As with BLAS, beta = 0 ignores whatever out held (NaNs included). The bias is a 1 x columns row added to every row or a
+// rows x 1 column added to every column, like broadcast()
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class Epilogue {
+    final double alpha;
+    final double beta;
+    @Nullable
+    private final double[] bias;
+    private final boolean columnBias; // one value per row of out rather than per column
+    @Nullable
+    private final DoubleUnaryOperator activation;
+
+    public Epilogue() {
+        this(1.0, 0.0, null, false, null);
+    }
+
+    private Epilogue(double alpha, double beta, @Nullable double[] bias, boolean columnBias, @Nullable DoubleUnaryOperator activation) {
+        this.alpha = alpha;
+        this.beta = beta;
+        this.bias = bias;
+        this.columnBias = columnBias;
+        this.activation = activation;
+    }
+
+    @Nonnull
+    public Epilogue scale(double alpha) {
+        return new Epilogue(alpha, beta, bias, columnBias, activation);
+    }
+
+    @Nonnull
+    public Epilogue accumulate(double beta) {
+        return new Epilogue(alpha, beta, bias, columnBias, activation);
+    }
+
+    @Nonnull
+    public Epilogue bias(@Nonnull Matrix vector) {
+        if (vector.rows != 1 && vector.columns != 1) {
+            throw new IllegalArgumentException("The bias must be a row or a column, got (" + vector.rows + ", " + vector.columns + ")");
+        }
+        boolean column = vector.rows != 1;
+        double[] values = new double[column ? vector.rows : vector.columns];
+        for (int w = 0; w < values.length; w++) {
+            values[w] = column ? vector.get(w, 0) : vector.get(0, w);
+        }
+        return new Epilogue(alpha, beta, values, column, activation);
+    }
+
+    @Nonnull
+    public Epilogue activation(@Nullable DoubleUnaryOperator function) {
+        return new Epilogue(alpha, beta, bias, columnBias, function);
+    }
+
+    @Nonnull
+    public Epilogue sigmoid() {
+        return activation(Matrix.SIGMOID);
+    }
+
+    @Nonnull
+    public Epilogue tanh() {
+        return activation(Matrix.TANH);
+    }
+
+    boolean hasColumnBias() {
+        return bias != null && columnBias;
+    }
+
+    // the bias has to line up with out
+    void check(@Nonnull Matrix out) {
+        if (bias != null && bias.length != (columnBias ? out.rows : out.columns)) {
+            throw new MismatchDimensionException(out, columnBias ? new AccurateMatrix(bias.length, 1) : new AccurateMatrix(1, bias.length));
+        }
+    }
+
+    // beta * out's old value, exactly 0 when beta is
+    double start(double previous) {
+        return beta == 0.0 ? 0.0 : beta * previous;
+    }
+
+    // bias and activation for element (i, j), once the rest has been summed
+    double finish(double value, int i, int j) {
+        if (bias != null) {
+            value += bias[columnBias ? i : j];
+        }
+        return activation == null ? value : activation.applyAsDouble(value);
+    }
+}
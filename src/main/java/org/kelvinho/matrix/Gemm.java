@@ -0,0 +1,268 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+// dense general matrix multiply, c += alpha * a * b, with the usual cache-blocked layout:
+// nc columns of b are packed into kc x NR slivers (L2/L3 resident), mc rows of a are packed into MR x kc slivers (L2 resident),
+// and a MR x NR register tile accumulates each sliver pair. Packing goes through offset and strides, so views and transposed
+// operands cost nothing extra. Panels are packed as doubles, so float inputs accumulate in double
+@SuppressWarnings({"unused", "WeakerAccess"})
+final class Gemm {
+    static final int MR = 4;
+    static final int NR = 4;
+    static final int MC = 96;
+    static final int KC = 256;
+    static final int NC = 2048;
+
+    private Gemm() {
+    }
+
+    static void multiply(@Nonnull AccurateMatrix a, @Nonnull AccurateMatrix b, @Nonnull AccurateMatrix c) {
+        multiply(1.0, a, b, c);
+    }
+
+    static void multiply(double alpha, @Nonnull AccurateMatrix a, @Nonnull AccurateMatrix b, @Nonnull AccurateMatrix c) {
+        Parallelism.forRows(a.rows, (long) b.columns * a.columns, (from, to) -> multiply(from, to, alpha, a, b, c, null));
+    }
+
+    // c = epilogue(a * b, c), the epilogue is applied by the micro kernel to each register tile as its last panel is added in
+    static void multiply(@Nonnull AccurateMatrix a, @Nonnull AccurateMatrix b, @Nonnull AccurateMatrix c, @Nonnull Epilogue epilogue) {
+        if (a.columns == 0) {
+            // no panels for the micro kernel to finish on
+            for (int i = 0; i < c.rows; i++) {
+                for (int j = 0; j < c.columns; j++) {
+                    int index = c.offset + i * c.rowStride + j * c.columnStride;
+                    c.values[index] = epilogue.finish(epilogue.start(c.values[index]), i, j);
+                }
+            }
+            return;
+        }
+        Parallelism.forRows(a.rows, (long) b.columns * a.columns, (from, to) -> multiply(from, to, epilogue.alpha, a, b, c, epilogue));
+    }
+
+    // rows [from, to) of c, so that row bands can run on separate threads
+    private static void multiply(int from, int to, double alpha, @Nonnull AccurateMatrix a, @Nonnull AccurateMatrix b, @Nonnull AccurateMatrix c,
+                                 @Nullable Epilogue epilogue) {
+        int n = b.columns;
+        int k = a.columns;
+        double[] packedA = new double[MC * KC];
+        double[] packedB = new double[KC * roundUp(Math.min(n, NC), NR)];
+        double[] tile = new double[MR * NR];
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+            for (int pc = 0; pc < k; pc += KC) {
+                int kc = Math.min(KC, k - pc);
+                Panel panel = epilogue == null ? null : new Panel(epilogue, pc == 0, pc + kc == k, jc);
+                pack(b.values, b.offset + pc * b.rowStride + jc * b.columnStride, b.columnStride, b.rowStride, nc, kc, NR, packedB);
+                for (int ic = from; ic < to; ic += MC) {
+                    int mc = Math.min(MC, to - ic);
+                    pack(a.values, a.offset + ic * a.rowStride + pc * a.columnStride, a.rowStride, a.columnStride, mc, kc, MR, packedA);
+                    macroKernel(mc, nc, kc, alpha, packedA, packedB, c.values, c.offset + ic * c.rowStride + jc * c.columnStride, c.rowStride, c.columnStride,
+                            panel, ic, tile);
+                }
+            }
+        }
+    }
+
+    // where a panel sits along k, which decides what the epilogue does when its product is stored
+    private static final class Panel {
+        final Epilogue epilogue;
+        final boolean first; // beta * c comes in with the first panel
+        final boolean last; // bias and activation go out with the last
+        final int column; // of c, where the macro kernel's block starts
+
+        Panel(@Nonnull Epilogue epilogue, boolean first, boolean last, int column) {
+            this.epilogue = epilogue;
+            this.first = first;
+            this.last = last;
+            this.column = column;
+        }
+    }
+
+    static void multiply(@Nonnull NormalMatrix a, @Nonnull NormalMatrix b, @Nonnull NormalMatrix c) {
+        multiply(1.0, a, b, c);
+    }
+
+    static void multiply(double alpha, @Nonnull NormalMatrix a, @Nonnull NormalMatrix b, @Nonnull NormalMatrix c) {
+        Parallelism.forRows(a.rows, (long) b.columns * a.columns, (from, to) -> multiply(from, to, alpha, a, b, c, null));
+    }
+
+    // with the whole k extent summed in the double block first, the epilogue runs as the block is rounded back to float
+    static void multiply(@Nonnull NormalMatrix a, @Nonnull NormalMatrix b, @Nonnull NormalMatrix c, @Nonnull Epilogue epilogue) {
+        Parallelism.forRows(a.rows, (long) b.columns * a.columns, (from, to) -> multiply(from, to, epilogue.alpha, a, b, c, epilogue));
+    }
+
+    private static void multiply(int from, int to, double alpha, @Nonnull NormalMatrix a, @Nonnull NormalMatrix b, @Nonnull NormalMatrix c,
+                                 @Nullable Epilogue epilogue) {
+        int n = b.columns;
+        int k = a.columns;
+        int blockColumns = Math.min(n, NC);
+        double[] packedA = new double[MC * KC];
+        double[] packedB = new double[KC * roundUp(blockColumns, NR)];
+        double[] block = new double[MC * blockColumns];
+        double[] tile = new double[MR * NR];
+        for (int jc = 0; jc < n; jc += NC) {
+            int nc = Math.min(NC, n - jc);
+            for (int ic = from; ic < to; ic += MC) {
+                int mc = Math.min(MC, to - ic);
+                Arrays.fill(block, 0.0);
+                // the whole k extent is accumulated in a double block before rounding back to float once
+                for (int pc = 0; pc < k; pc += KC) {
+                    int kc = Math.min(KC, k - pc);
+                    pack(b.values, b.offset + pc * b.rowStride + jc * b.columnStride, b.columnStride, b.rowStride, nc, kc, NR, packedB);
+                    pack(a.values, a.offset + ic * a.rowStride + pc * a.columnStride, a.rowStride, a.columnStride, mc, kc, MR, packedA);
+                    macroKernel(mc, nc, kc, 1.0, packedA, packedB, block, 0, blockColumns, 1, null, 0, tile);
+                }
+                for (int i = 0; i < mc; i++) {
+                    int target = c.offset + (ic + i) * c.rowStride + jc * c.columnStride;
+                    for (int j = 0; j < nc; j++) {
+                        int index = target + j * c.columnStride;
+                        double product = alpha * block[i * blockColumns + j];
+                        c.values[index] = (float) (epilogue == null ? c.values[index] + product
+                                : epilogue.finish(product + epilogue.start(c.values[index]), ic + i, jc + j));
+                    }
+                }
+            }
+        }
+    }
+
+    private static int roundUp(int value, int multiple) {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+
+    // packs a length x depth panel into slivers of width rows, each sliver laid out depth-major; short slivers are zero padded.
+    // for a the panel rows are matrix rows, for b they are matrix columns, which is just a swap of the two strides
+    private static void pack(@Nonnull double[] source, int start, int lengthStride, int depthStride, int length, int depth, int width,
+                             @Nonnull double[] packed) {
+        int index = 0;
+        for (int i = 0; i < length; i += width) {
+            int valid = Math.min(width, length - i);
+            int sliverStart = start + i * lengthStride;
+            for (int p = 0; p < depth; p++) {
+                int position = sliverStart + p * depthStride;
+                for (int r = 0; r < valid; r++) {
+                    packed[index++] = source[position + r * lengthStride];
+                }
+                for (int r = valid; r < width; r++) {
+                    packed[index++] = 0.0;
+                }
+            }
+        }
+    }
+
+    private static void pack(@Nonnull float[] source, int start, int lengthStride, int depthStride, int length, int depth, int width,
+                             @Nonnull double[] packed) {
+        int index = 0;
+        for (int i = 0; i < length; i += width) {
+            int valid = Math.min(width, length - i);
+            int sliverStart = start + i * lengthStride;
+            for (int p = 0; p < depth; p++) {
+                int position = sliverStart + p * depthStride;
+                for (int r = 0; r < valid; r++) {
+                    packed[index++] = source[position + r * lengthStride];
+                }
+                for (int r = valid; r < width; r++) {
+                    packed[index++] = 0.0;
+                }
+            }
+        }
+    }
+
+    // row is the row of c that the block starts at, for the epilogue's bias
+    private static void macroKernel(int mc, int nc, int kc, double alpha, @Nonnull double[] packedA, @Nonnull double[] packedB,
+                                    @Nonnull double[] c, int cStart, int cRowStride, int cColumnStride, @Nullable Panel panel, int row,
+                                    @Nonnull double[] tile) {
+        for (int j = 0; j < nc; j += NR) {
+            int nr = Math.min(NR, nc - j);
+            int bIndex = j * kc;
+            for (int i = 0; i < mc; i += MR) {
+                int mr = Math.min(MR, mc - i);
+                microKernel(kc, alpha, packedA, i * kc, packedB, bIndex, c, cStart + i * cRowStride + j * cColumnStride, cRowStride, cColumnStride, mr, nr,
+                        panel, row + i, panel == null ? 0 : panel.column + j, tile);
+            }
+        }
+    }
+
+    // the mr x nr tile of c starting at index c0 += alpha * a sliver * b sliver, with the 4 x 4 tile held in locals
+    private static void microKernel(int kc, double alpha, @Nonnull double[] a, int aIndex, @Nonnull double[] b, int bIndex,
+                                    @Nonnull double[] c, int c0, int rs, int cs, int mr, int nr, @Nullable Panel panel, int row, int column,
+                                    @Nonnull double[] tile) {
+        double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+        double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+        double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+        double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+        for (int p = 0; p < kc; p++) {
+            double a0 = a[aIndex], a1 = a[aIndex + 1], a2 = a[aIndex + 2], a3 = a[aIndex + 3];
+            double b0 = b[bIndex], b1 = b[bIndex + 1], b2 = b[bIndex + 2], b3 = b[bIndex + 3];
+            c00 += a0 * b0;
+            c01 += a0 * b1;
+            c02 += a0 * b2;
+            c03 += a0 * b3;
+            c10 += a1 * b0;
+            c11 += a1 * b1;
+            c12 += a1 * b2;
+            c13 += a1 * b3;
+            c20 += a2 * b0;
+            c21 += a2 * b1;
+            c22 += a2 * b2;
+            c23 += a2 * b3;
+            c30 += a3 * b0;
+            c31 += a3 * b1;
+            c32 += a3 * b2;
+            c33 += a3 * b3;
+            aIndex += MR;
+            bIndex += NR;
+        }
+        if (panel == null && mr == MR && nr == NR) {
+            int r1 = c0 + rs, r2 = r1 + rs, r3 = r2 + rs;
+            c[c0] += alpha * c00;
+            c[c0 + cs] += alpha * c01;
+            c[c0 + 2 * cs] += alpha * c02;
+            c[c0 + 3 * cs] += alpha * c03;
+            c[r1] += alpha * c10;
+            c[r1 + cs] += alpha * c11;
+            c[r1 + 2 * cs] += alpha * c12;
+            c[r1 + 3 * cs] += alpha * c13;
+            c[r2] += alpha * c20;
+            c[r2 + cs] += alpha * c21;
+            c[r2 + 2 * cs] += alpha * c22;
+            c[r2 + 3 * cs] += alpha * c23;
+            c[r3] += alpha * c30;
+            c[r3 + cs] += alpha * c31;
+            c[r3 + 2 * cs] += alpha * c32;
+            c[r3 + 3 * cs] += alpha * c33;
+        } else {
+            // an edge tile, only part of the register tile maps onto c, or a tile going through the epilogue
+            tile[0] = c00;
+            tile[1] = c01;
+            tile[2] = c02;
+            tile[3] = c03;
+            tile[4] = c10;
+            tile[5] = c11;
+            tile[6] = c12;
+            tile[7] = c13;
+            tile[8] = c20;
+            tile[9] = c21;
+            tile[10] = c22;
+            tile[11] = c23;
+            tile[12] = c30;
+            tile[13] = c31;
+            tile[14] = c32;
+            tile[15] = c33;
+            for (int r = 0; r < mr; r++) {
+                for (int s = 0; s < nr; s++) {
+                    int index = c0 + r * rs + s * cs;
+                    double value = alpha * tile[r * NR + s];
+                    if (panel == null) {
+                        c[index] += value;
+                    } else {
+                        value += panel.first ? panel.epilogue.start(c[index]) : c[index];
+                        c[index] = panel.last ? panel.epilogue.finish(value, row + r, column + s) : value;
+                    }
+                }
+            }
+        }
+    }
+}
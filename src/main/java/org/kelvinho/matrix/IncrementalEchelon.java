@@ -0,0 +1,179 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+// the reduced row echelon form of a growing set of rows, for systems that gain one constraint at a time. Only the independent
+// rows are kept, fully reduced and sorted by pivot column, so appending a row costs one pass against each of them plus, when it
+// raises the rank, clearing its pivot column from the others: O(rank * columns) <= O(columns^2) instead of redoing the whole
+// reducedRowEchelonForm(). basis() and nullSpace() read straight off that state and are cached until the rank changes.
+// Negligible means the same as in reducedRowEchelonForm(), Environment.doubleLooselyEquals(x, 0)
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class IncrementalEchelon {
+    private final int columns;
+    private final List<double[]> rows = new ArrayList<>(); // pivot row k has a 1 at pivots[k] and 0 at every other pivot column
+    private final List<Integer> pivots = new ArrayList<>(); // ascending
+    private int appended = 0;
+    private AccurateMatrix basis = null;
+    private AccurateMatrix nullSpace = null;
+
+    public IncrementalEchelon(int numberOfColumns) {
+        if (numberOfColumns < 0) {
+            throw new IllegalArgumentException("Negative number of columns " + numberOfColumns);
+        }
+        columns = numberOfColumns;
+    }
+
+    @Nonnull
+    public static IncrementalEchelon of(@Nonnull Matrix matrix) {
+        IncrementalEchelon answer = new IncrementalEchelon(matrix.numberOfColumns());
+        answer.append(matrix);
+        return answer;
+    }
+
+    public int numberOfColumns() {
+        return columns;
+    }
+
+    // rows appended so far, dependent ones included
+    public int numberOfRows() {
+        return appended;
+    }
+
+    public int rank() {
+        return rows.size();
+    }
+
+    @Nonnull
+    public int[] pivotColumns() {
+        int[] answer = new int[pivots.size()];
+        for (int k = 0; k < answer.length; k++) {
+            answer[k] = pivots.get(k);
+        }
+        return answer;
+    }
+
+    // what's left of row after removing its component in the current row space, the row itself is untouched
+    @Nonnull
+    private double[] reduce(@Nonnull double[] row) {
+        if (row.length != columns) {
+            throw new IllegalArgumentException("Expected a row of " + columns + " columns, got " + row.length);
+        }
+        double[] residual = row.clone();
+        for (int k = 0; k < rows.size(); k++) {
+            int pivot = pivots.get(k);
+            double factor = residual[pivot];
+            if (factor != 0.0) {
+                double[] basisRow = rows.get(k);
+                for (int j = pivot; j < columns; j++) {
+                    residual[j] -= factor * basisRow[j];
+                }
+                residual[pivot] = 0.0;
+            }
+        }
+        return residual;
+    }
+
+    private static int firstNonNegligible(@Nonnull double[] row) {
+        for (int j = 0; j < row.length; j++) {
+            if (!Environment.doubleLooselyEquals(row[j], 0.0)) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    // whether appending row would raise the rank
+    public boolean isIndependent(@Nonnull double[] row) {
+        return firstNonNegligible(reduce(row)) >= 0;
+    }
+
+    // true when the row raised the rank
+    public boolean append(@Nonnull double[] row) {
+        double[] residual = reduce(row);
+        appended++;
+        int pivot = firstNonNegligible(residual);
+        if (pivot < 0) {
+            return false;
+        }
+        double factor = 1.0 / residual[pivot];
+        for (int j = 0; j < pivot; j++) {
+            residual[j] = 0.0;
+        }
+        for (int j = pivot + 1; j < columns; j++) {
+            residual[j] *= factor;
+        }
+        residual[pivot] = 1.0;
+        // clear the new pivot column from the rows already there
+        for (double[] basisRow : rows) {
+            double multiple = basisRow[pivot];
+            if (multiple != 0.0) {
+                for (int j = pivot + 1; j < columns; j++) {
+                    basisRow[j] -= multiple * residual[j];
+                }
+                basisRow[pivot] = 0.0;
+            }
+        }
+        int position = 0;
+        while (position < pivots.size() && pivots.get(position) < pivot) {
+            position++;
+        }
+        rows.add(position, residual);
+        pivots.add(position, pivot);
+        basis = null;
+        nullSpace = null;
+        return true;
+    }
+
+    public void append(@Nonnull Matrix matrix) {
+        if (matrix.numberOfColumns() != columns) {
+            throw new IllegalArgumentException("Expected rows of " + columns + " columns, got " + matrix.numberOfColumns());
+        }
+        double[] row = new double[columns];
+        for (int i = 0; i < matrix.numberOfRows(); i++) {
+            for (int j = 0; j < columns; j++) {
+                row[j] = matrix.get(i, j);
+            }
+            append(row);
+        }
+    }
+
+    // the independent rows in reduced row echelon form, rank x columns
+    @Nonnull
+    public AccurateMatrix basis() {
+        if (basis == null) {
+            double[] values = new double[rows.size() * columns];
+            for (int k = 0; k < rows.size(); k++) {
+                System.arraycopy(rows.get(k), 0, values, k * columns, columns);
+            }
+            basis = new AccurateMatrix(values, 0, rows.size(), columns, columns, 1);
+        }
+        return basis;
+    }
+
+    // one basis vector per free column, as the columns of a columns x (columns - rank) matrix: 1 at its free column and minus
+    // the free column's entry of each pivot row at that row's pivot column
+    @Nonnull
+    public AccurateMatrix nullSpace() {
+        if (nullSpace == null) {
+            int free = columns - rows.size();
+            double[] values = new double[columns * free];
+            int vector = 0;
+            int k = 0;
+            for (int j = 0; j < columns; j++) {
+                if (k < pivots.size() && pivots.get(k) == j) {
+                    k++;
+                    continue;
+                }
+                values[j * free + vector] = 1.0;
+                for (int p = 0; p < k; p++) { // pivot rows past j are zero at j
+                    values[pivots.get(p) * free + vector] = -rows.get(p)[j];
+                }
+                vector++;
+            }
+            nullSpace = new AccurateMatrix(values, 0, columns, free, free, 1);
+        }
+        return nullSpace;
+    }
+}
@@ -0,0 +1,7 @@
+package org.kelvinho.matrix;
+
+// element generator taking (row, column), the primitive counterpart of BiFunction<Integer, Integer, Double>
+@FunctionalInterface
+public interface IntIntToDoubleFunction {
+    double apply(int i, int j);
+}
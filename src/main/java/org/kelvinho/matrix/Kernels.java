@@ -0,0 +1,143 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+// inner loops of the dense types over contiguous runs of their backing arrays. The Vector API backend (VectorKernels, built from
+// src/vector when a JDK 16+ is available) is picked at class load when the jdk.incubator.vector module is present, otherwise the
+// plain loops in ScalarKernels are used, which HotSpot's superword pass can still vectorize for the element-wise cases
+@SuppressWarnings({"unused", "WeakerAccess"})
+abstract class Kernels {
+    static final Kernels INSTANCE = load();
+
+    enum Operation {
+        ADD, SUBTRACT, MULTIPLY, DIVIDE
+    }
+
+    enum Activation {
+        EXP, SIGMOID, TANH
+    }
+
+    private static final int CHUNK = 256;
+
+    @Nonnull
+    private static Kernels load() {
+        if (!"scalar".equals(System.getProperty("org.kelvinho.matrix.kernels"))) {
+            try {
+                return (Kernels) Class.forName("org.kelvinho.matrix.VectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError ignored) {
+                // not built, older runtime, or started without --add-modules jdk.incubator.vector
+            }
+        }
+        return new ScalarKernels();
+    }
+
+    // the shared helper operators in Matrix map onto kernels, anything else has to go through the operator
+    @Nullable
+    static Operation operation(@Nonnull DoubleBinaryOperator function) {
+        if (function == Matrix.ADD) {
+            return Operation.ADD;
+        } else if (function == Matrix.MINUS) {
+            return Operation.SUBTRACT;
+        } else if (function == Matrix.MUL) {
+            return Operation.MULTIPLY;
+        } else if (function == Matrix.DIVIDE) {
+            return Operation.DIVIDE;
+        }
+        return null;
+    }
+
+    @Nullable
+    static Activation activation(@Nonnull DoubleUnaryOperator function) {
+        if (function == Matrix.EXP) {
+            return Activation.EXP;
+        } else if (function == Matrix.SIGMOID) {
+            return Activation.SIGMOID;
+        } else if (function == Matrix.TANH) {
+            return Activation.TANH;
+        }
+        return null;
+    }
+
+    abstract String name();
+
+    // out = a op b
+    abstract void apply(@Nonnull Operation operation, @Nonnull double[] a, int aOffset, @Nonnull double[] b, int bOffset,
+                        @Nonnull double[] out, int outOffset, int length);
+
+    abstract void apply(@Nonnull Operation operation, @Nonnull float[] a, int aOffset, @Nonnull float[] b, int bOffset,
+                        @Nonnull float[] out, int outOffset, int length);
+
+    // out = a * b + c
+    abstract void fma(@Nonnull double[] a, int aOffset, @Nonnull double[] b, int bOffset, @Nonnull double[] c, int cOffset,
+                      @Nonnull double[] out, int outOffset, int length);
+
+    abstract void fma(@Nonnull float[] a, int aOffset, @Nonnull float[] b, int bOffset, @Nonnull float[] c, int cOffset,
+                      @Nonnull float[] out, int outOffset, int length);
+
+    // out = activation(a), see Activations for what each accuracy promises
+    abstract void activate(@Nonnull Activation activation, @Nonnull Activations.Accuracy accuracy, @Nonnull double[] a, int aOffset,
+                           @Nonnull double[] out, int outOffset, int length);
+
+    abstract void activate(@Nonnull Activation activation, @Nonnull Activations.Accuracy accuracy, @Nonnull float[] a, int aOffset,
+                           @Nonnull float[] out, int outOffset, int length);
+
+    // out = sigmoid(a) and derivative = out * (1 - out) in one pass
+    abstract void sigmoid(@Nonnull Activations.Accuracy accuracy, @Nonnull double[] a, int aOffset, @Nonnull double[] out, int outOffset,
+                          @Nonnull double[] derivative, int derivativeOffset, int length);
+
+    abstract void sigmoid(@Nonnull Activations.Accuracy accuracy, @Nonnull float[] a, int aOffset, @Nonnull float[] out, int outOffset,
+                          @Nonnull float[] derivative, int derivativeOffset, int length);
+
+    // out = exp(a - max) / sum(exp(a - max)), out may be a
+    void softmax(@Nonnull Activations.Accuracy accuracy, @Nonnull double[] a, int aOffset, @Nonnull double[] out, int outOffset, int length) {
+        double max = max(a, aOffset, length);
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = a[aOffset + i] - max;
+        }
+        activate(Activation.EXP, accuracy, out, outOffset, out, outOffset, length);
+        double scale = 1.0 / sum(out, outOffset, length);
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] *= scale;
+        }
+    }
+
+    // log(sum(exp(a))) = max + log(sum(exp(a - max))), which neither overflows nor loses everything to underflow
+    double logSumExp(@Nonnull Activations.Accuracy accuracy, @Nonnull double[] a, int offset, int length) {
+        double max = max(a, offset, length);
+        if (Double.isInfinite(max)) {
+            return max;
+        }
+        double[] chunk = new double[Math.min(CHUNK, length)];
+        double sum = 0.0;
+        for (int from = 0; from < length; from += CHUNK) {
+            int size = Math.min(CHUNK, length - from);
+            for (int i = 0; i < size; i++) {
+                chunk[i] = a[offset + from + i] - max;
+            }
+            activate(Activation.EXP, accuracy, chunk, 0, chunk, 0, size);
+            sum += sum(chunk, 0, size);
+        }
+        return max + Math.log(sum);
+    }
+
+    // NaN if any element is, -infinity when empty
+    private static double max(@Nonnull double[] a, int offset, int length) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++) {
+            max = Math.max(max, a[offset + i]);
+        }
+        return max;
+    }
+
+    abstract double sum(@Nonnull double[] a, int offset, int length);
+
+    // floats are accumulated in double
+    abstract double sum(@Nonnull float[] a, int offset, int length);
+
+    abstract double dot(@Nonnull double[] a, int aOffset, @Nonnull double[] b, int bOffset, int length);
+
+    abstract double dot(@Nonnull float[] a, int aOffset, @Nonnull float[] b, int bOffset, int length);
+}
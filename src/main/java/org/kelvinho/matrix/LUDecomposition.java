@@ -0,0 +1,172 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+// PA = LU with partial pivoting (largest magnitude in the column), blocked right-looking: each panel of NB columns is factored
+// unblocked, the rows to its right are solved against L11 and the trailing matrix is updated with a single Gemm call.
+// L (unit diagonal) and U share one n x n array
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class LUDecomposition implements Decomposition {
+    private static final int NB = 64;
+    private final int n;
+    private final double[] lu;
+    private final int[] permutation; // row i of PA is row permutation[i] of A
+    private final boolean evenPermutation;
+    private final boolean singular;
+
+    public LUDecomposition(@Nonnull Matrix matrix) {
+        if (matrix.numberOfRows() != matrix.numberOfColumns()) {
+            throw new MatrixNotInvertibleException("Not a square matrix");
+        }
+        n = matrix.numberOfRows();
+        lu = new double[n * n];
+        permutation = new int[n];
+        double scale = 0.0;
+        for (int i = 0; i < n; i++) {
+            permutation[i] = i;
+            for (int j = 0; j < n; j++) {
+                lu[i * n + j] = matrix.get(i, j);
+                scale = Math.max(scale, Math.abs(lu[i * n + j]));
+            }
+        }
+        boolean even = true;
+        boolean zeroPivot = false;
+        AccurateMatrix view = new AccurateMatrix(lu, 0, n, n, n, 1);
+        for (int k0 = 0; k0 < n; k0 += NB) {
+            int kb = Math.min(NB, n - k0);
+            int k1 = k0 + kb;
+            // panel
+            for (int j = k0; j < k1; j++) {
+                int pivot = j;
+                for (int i = j + 1; i < n; i++) {
+                    if (Math.abs(lu[i * n + j]) > Math.abs(lu[pivot * n + j])) {
+                        pivot = i;
+                    }
+                }
+                if (pivot != j) {
+                    swapRows(pivot, j);
+                    even = !even;
+                }
+                double diagonal = lu[j * n + j];
+                if (scale == 0.0 || Environment.doubleLooselyEquals(diagonal / scale, 0.0)) {
+                    zeroPivot = true;
+                    continue;
+                }
+                for (int i = j + 1; i < n; i++) {
+                    double factor = lu[i * n + j] /= diagonal;
+                    if (factor != 0.0) {
+                        for (int w = j + 1; w < k1; w++) {
+                            lu[i * n + w] -= factor * lu[j * n + w];
+                        }
+                    }
+                }
+            }
+            if (k1 < n) {
+                // U12 = L11^-1 * A12
+                for (int i = k0 + 1; i < k1; i++) {
+                    for (int k = k0; k < i; k++) {
+                        double factor = lu[i * n + k];
+                        if (factor != 0.0) {
+                            for (int w = k1; w < n; w++) {
+                                lu[i * n + w] -= factor * lu[k * n + w];
+                            }
+                        }
+                    }
+                }
+                // A22 -= L21 * U12
+                Gemm.multiply(-1.0, view.subMatrix(k1, k0, n - k1, kb), view.subMatrix(k0, k1, kb, n - k1), view.subMatrix(k1, k1, n - k1, n - k1));
+            }
+        }
+        evenPermutation = even;
+        singular = zeroPivot;
+    }
+
+    private void swapRows(int a, int b) {
+        for (int w = 0; w < n; w++) {
+            double temporary = lu[a * n + w];
+            lu[a * n + w] = lu[b * n + w];
+            lu[b * n + w] = temporary;
+        }
+        int temporary = permutation[a];
+        permutation[a] = permutation[b];
+        permutation[b] = temporary;
+    }
+
+    public boolean isSingular() {
+        return singular;
+    }
+
+    public double determinant() {
+        double answer = evenPermutation ? 1.0 : -1.0;
+        for (int i = 0; i < n; i++) {
+            answer *= lu[i * n + i];
+        }
+        return answer;
+    }
+
+    // x such that A x = b, every column of b is a separate right hand side
+    @Nonnull
+    @Override
+    public AccurateMatrix solve(@Nonnull Matrix b) {
+        if (b.numberOfRows() != n) {
+            throw new MismatchDimensionException(new AccurateMatrix(lu, 0, n, n, n, 1), b);
+        }
+        if (singular) {
+            throw new MatrixNotInvertibleException("Matrix is singular");
+        }
+        int m = b.numberOfColumns();
+        double[] x = new double[n * m];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                x[i * m + j] = b.get(permutation[i], j);
+            }
+        }
+        // L y = Pb, then U x = y, both sweeping whole rows of x
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < i; k++) {
+                double factor = lu[i * n + k];
+                if (factor != 0.0) {
+                    for (int j = 0; j < m; j++) {
+                        x[i * m + j] -= factor * x[k * m + j];
+                    }
+                }
+            }
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            for (int k = i + 1; k < n; k++) {
+                double factor = lu[i * n + k];
+                if (factor != 0.0) {
+                    for (int j = 0; j < m; j++) {
+                        x[i * m + j] -= factor * x[k * m + j];
+                    }
+                }
+            }
+            double diagonal = lu[i * n + i];
+            for (int j = 0; j < m; j++) {
+                x[i * m + j] /= diagonal;
+            }
+        }
+        return new AccurateMatrix(x, 0, n, m, m, 1);
+    }
+
+    @Nullable
+    public AccurateMatrix inverse() {
+        if (singular) {
+            return null;
+        }
+        return solve(new AccurateMatrix(n, n, (i, j) -> i == j ? 1 : 0));
+    }
+
+    public AccurateMatrix lower() {
+        return new AccurateMatrix(n, n, (i, j) -> i == j ? 1 : (i > j ? lu[i * n + j] : 0));
+    }
+
+    public AccurateMatrix upper() {
+        return new AccurateMatrix(n, n, (i, j) -> i <= j ? lu[i * n + j] : 0);
+    }
+
+    public int[] permutation() {
+        return permutation.clone();
+    }
+}
@@ -0,0 +1,283 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+// element-wise expression tree built by operate() and the helpers on top of it (add, mul, sigmoid, ...), nothing is computed
+// until the values are read. get() evaluates the tree for a single element, while evaluate(), sum() and dot() stream it row by
+// row through a few cache sized buffers, so a whole chain costs one pass over its inputs and no intermediate matrices
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class LazyMatrix extends Matrix {
+    private static final int CHUNK = 256; // columns evaluated at a time, small enough for every buffer to stay in L1
+    private final Node node;
+    private final Matrix prototype; // decides the type of the evaluated matrix
+
+    LazyMatrix(@Nonnull Matrix matrix) {
+        this(new Leaf(matrix), matrix);
+    }
+
+    private LazyMatrix(@Nonnull Node node, @Nonnull Matrix prototype) {
+        this.node = node;
+        this.prototype = prototype;
+        rows = prototype.rows;
+        columns = prototype.columns;
+    }
+
+    @Override
+    public double get(int i, int j) {
+        if (i < 0 || i >= rows || j < 0 || j >= columns) {
+            throw new IndexOutOfBoundsException("(" + i + ", " + j + ") is outside of (" + rows + ", " + columns + ")");
+        }
+        return node.get(i, j);
+    }
+
+    @Override
+    protected Matrix template(int rows, int columns) {
+        return prototype.template(rows, columns);
+    }
+
+    @Override
+    public void mutableSet(int i, int j, double value) {
+        throw new UnsupportedOperationException("A lazy matrix can't be changed, evaluate() it first");
+    }
+
+    @Override
+    public LazyMatrix lazy() {
+        return this;
+    }
+
+    public Matrix evaluate() {
+        return evaluate(node, template(rows, columns));
+    }
+
+    @Override
+    public Matrix operate(@Nullable DoubleUnaryOperator function) {
+        if (function == null) {
+            return this;
+        }
+        return new LazyMatrix(new Unary(node, function), prototype);
+    }
+
+    @Override
+    public Matrix operate(@Nonnull Matrix matrix, @Nonnull DoubleBinaryOperator function) {
+        if (!sameDimension(matrix)) {
+            throw new MismatchDimensionException(this, matrix);
+        }
+        return new LazyMatrix(new Binary(node, nodeOf(matrix), function), prototype);
+    }
+
+    @Override
+    public Matrix operate(@Nonnull DoubleUnaryOperator function, @Nonnull Matrix out) {
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        return evaluate(new Unary(node, function), out);
+    }
+
+    @Override
+    public Matrix operate(@Nonnull Matrix matrix, @Nonnull DoubleBinaryOperator function, @Nonnull Matrix out) {
+        if (!sameDimension(matrix)) {
+            throw new MismatchDimensionException(this, matrix);
+        }
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        return evaluate(new Binary(node, nodeOf(matrix), function), out);
+    }
+
+    @Override
+    public double sum() {
+        int depth = node.depth();
+        return Parallelism.sum(rows, columns, (from, to) -> {
+            double[][] buffers = new double[depth + 1][Math.min(CHUNK, columns)];
+            double partial = 0.0;
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < columns; j += CHUNK) {
+                    int length = Math.min(CHUNK, columns - j);
+                    node.row(i, j, length, buffers[0], buffers, 1);
+                    for (int w = 0; w < length; w++) {
+                        partial += buffers[0][w];
+                    }
+                }
+            }
+            return partial;
+        });
+    }
+
+    // not cached, writes to the leaves don't bump this matrix's version. Evaluated once and viewed transposed
+    @Override
+    public Matrix transpose() {
+        return evaluate().transpose();
+    }
+
+    @Override
+    public Matrix gemm(@Nonnull Matrix matrix, @Nonnull Epilogue epilogue, @Nonnull Matrix out) {
+        return evaluate().gemm(matrix, epilogue, out);
+    }
+
+    @Override
+    public Matrix dot(@Nonnull Matrix matrix, boolean transposeThis, boolean transposeMatrix) {
+        return evaluate().dot(matrix, transposeThis, transposeMatrix);
+    }
+
+    // the row is evaluated chunk by chunk, as in evaluate()
+    @Override
+    void readRow(int i, int column, @Nonnull double[] target, int targetOffset, int length) {
+        double[][] buffers = new double[node.depth() + 1][Math.min(CHUNK, length)];
+        for (int j = 0; j < length; j += CHUNK) {
+            int chunk = Math.min(CHUNK, length - j);
+            node.row(i, column + j, chunk, buffers[0], buffers, 1);
+            System.arraycopy(buffers[0], 0, target, targetOffset + j, chunk);
+        }
+    }
+
+    @Override
+    public Matrix dot(@Nonnull Matrix matrix) {
+        return evaluate().dot(matrix);
+    }
+
+    @Override
+    public boolean equals(@Nonnull Object object) {
+        return evaluate().equals(object);
+    }
+
+    @Nonnull
+    private static Node nodeOf(@Nonnull Matrix matrix) {
+        return matrix instanceof LazyMatrix ? ((LazyMatrix) matrix).node : new Leaf(matrix);
+    }
+
+    // rows are written from several threads, so a sparse out, whose inserts shift its whole pattern, is evaluated densely first
+    // and then takes the result in one go
+    private Matrix evaluate(@Nonnull Node root, @Nonnull Matrix out) {
+        if (out instanceof SparseMatrix) {
+            return ((SparseMatrix) out).assign(evaluate(root, template(rows, columns)));
+        }
+        int depth = root.depth();
+        Parallelism.forRows(rows, (long) columns * depth, (from, to) -> {
+            double[][] buffers = new double[depth + 1][Math.min(CHUNK, columns)];
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < columns; j += CHUNK) {
+                    int length = Math.min(CHUNK, columns - j);
+                    root.row(i, j, length, buffers[0], buffers, 1);
+                    for (int w = 0; w < length; w++) {
+                        out.mutableSet(i, j + w, buffers[0][w]);
+                    }
+                }
+            }
+        });
+        out.modified();
+        return out;
+    }
+
+    private static abstract class Node {
+        abstract double get(int i, int j);
+
+        // writes elements [column, column + length) of the given row into target, buffers[level..] are free to use as scratch
+        abstract void row(int i, int column, int length, @Nonnull double[] target, @Nonnull double[][] buffers, int level);
+
+        // number of scratch buffers row() needs
+        abstract int depth();
+    }
+
+    private static class Leaf extends Node {
+        private final Matrix matrix;
+
+        Leaf(@Nonnull Matrix matrix) {
+            this.matrix = matrix;
+        }
+
+        @Override
+        double get(int i, int j) {
+            return matrix.get(i, j);
+        }
+
+        @Override
+        void row(int i, int column, int length, @Nonnull double[] target, @Nonnull double[][] buffers, int level) {
+            if (matrix instanceof AccurateMatrix) {
+                AccurateMatrix dense = (AccurateMatrix) matrix;
+                int index = dense.offset + i * dense.rowStride + column * dense.columnStride;
+                for (int w = 0; w < length; w++, index += dense.columnStride) {
+                    target[w] = dense.values[index];
+                }
+            } else if (matrix instanceof NormalMatrix) {
+                NormalMatrix dense = (NormalMatrix) matrix;
+                int index = dense.offset + i * dense.rowStride + column * dense.columnStride;
+                for (int w = 0; w < length; w++, index += dense.columnStride) {
+                    target[w] = dense.values[index];
+                }
+            } else {
+                for (int w = 0; w < length; w++) {
+                    target[w] = matrix.get(i, column + w);
+                }
+            }
+        }
+
+        @Override
+        int depth() {
+            return 0;
+        }
+    }
+
+    private static class Unary extends Node {
+        private final Node child;
+        private final DoubleUnaryOperator function;
+
+        Unary(@Nonnull Node child, @Nonnull DoubleUnaryOperator function) {
+            this.child = child;
+            this.function = function;
+        }
+
+        @Override
+        double get(int i, int j) {
+            return function.applyAsDouble(child.get(i, j));
+        }
+
+        @Override
+        void row(int i, int column, int length, @Nonnull double[] target, @Nonnull double[][] buffers, int level) {
+            child.row(i, column, length, target, buffers, level);
+            for (int w = 0; w < length; w++) {
+                target[w] = function.applyAsDouble(target[w]);
+            }
+        }
+
+        @Override
+        int depth() {
+            return child.depth();
+        }
+    }
+
+    private static class Binary extends Node {
+        private final Node left;
+        private final Node right;
+        private final DoubleBinaryOperator function;
+
+        Binary(@Nonnull Node left, @Nonnull Node right, @Nonnull DoubleBinaryOperator function) {
+            this.left = left;
+            this.right = right;
+            this.function = function;
+        }
+
+        @Override
+        double get(int i, int j) {
+            return function.applyAsDouble(left.get(i, j), right.get(i, j));
+        }
+
+        @Override
+        void row(int i, int column, int length, @Nonnull double[] target, @Nonnull double[][] buffers, int level) {
+            // left is done with the scratch buffers by the time right needs them, so right only has to skip over its own buffer
+            left.row(i, column, length, target, buffers, level);
+            double[] scratch = buffers[level];
+            right.row(i, column, length, scratch, buffers, level + 1);
+            for (int w = 0; w < length; w++) {
+                target[w] = function.applyAsDouble(target[w], scratch[w]);
+            }
+        }
+
+        @Override
+        int depth() {
+            return Math.max(left.depth(), right.depth() + 1);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// a BufferMatrix whose bands are mapped from a file with FileChannel.map the first time they're touched, so only the pages
+// actually used are ever brought in. Elements are little endian doubles, or floats for files written by MatrixIO from a
+// NormalMatrix. Large results that don't get an explicit path (dot(), transpose(), operate(), ...) are temporary() MappedMatrix
+// themselves and hold a channel and mappings until they're closed, so close them like any other MappedMatrix. Results of at
+// most HEAP_BYTES (reductions, rows, small products) are plain AccurateMatrix so they hold no file or channel at all
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class MappedMatrix extends BufferMatrix implements AutoCloseable {
+    static final long HEAP_BYTES = 1 << 20;
+    private final FileChannel channel;
+    private final long dataOffset;
+    private final boolean writable;
+    private final Path temporaryFile;
+
+    MappedMatrix(@Nonnull FileChannel channel, long dataOffset, int numberOfRows, int numberOfColumns, @Nonnull ElementType type,
+                 boolean writable, Path temporaryFile) {
+        super(numberOfRows, numberOfColumns, type);
+        this.channel = channel;
+        this.dataOffset = dataOffset;
+        this.writable = writable;
+        this.temporaryFile = temporaryFile;
+    }
+
+    // a new zero filled matrix, the file is sparse until written to
+    public static MappedMatrix create(@Nonnull Path path, int numberOfRows, int numberOfColumns) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return sized(channel, numberOfRows, numberOfColumns, null);
+    }
+
+    public static MappedMatrix open(@Nonnull Path path, int numberOfRows, int numberOfColumns, boolean writable) throws IOException {
+        FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        if (channel.size() < (long) numberOfRows * numberOfColumns * Double.BYTES) {
+            channel.close();
+            throw new IOException(path + " is too small for a (" + numberOfRows + ", " + numberOfColumns + ") matrix");
+        }
+        return new MappedMatrix(channel, 0, numberOfRows, numberOfColumns, ElementType.DOUBLE, writable, null);
+    }
+
+    // backed by a file nobody else sees, close() it to give the space back. Where an open file can be deleted (anything but
+    // Windows) the name is gone right away, the channel and mappings keep the data, and nothing outlives a crashed or killed JVM.
+    // Elsewhere close() deletes the file, with deleteOnExit() as the fallback for matrices that are never closed
+    public static MappedMatrix temporary(int numberOfRows, int numberOfColumns) throws IOException {
+        Path path = Files.createTempFile("matrix", ".bin");
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Path temporaryFile = null;
+        try {
+            Files.delete(path);
+        } catch (IOException e) {
+            path.toFile().deleteOnExit();
+            temporaryFile = path;
+        }
+        return sized(channel, numberOfRows, numberOfColumns, temporaryFile);
+    }
+
+    private static MappedMatrix sized(@Nonnull FileChannel channel, int numberOfRows, int numberOfColumns, Path temporaryFile) throws IOException {
+        long size = (long) numberOfRows * numberOfColumns * Double.BYTES;
+        if (size > 0) {
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+        return new MappedMatrix(channel, 0, numberOfRows, numberOfColumns, ElementType.DOUBLE, true, temporaryFile);
+    }
+
+    @Nonnull
+    @Override
+    Buffer createBand(int firstRow, int numberOfRows) {
+        try {
+            ByteBuffer bytes = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                    dataOffset + (long) firstRow * columns * type.bytes, (long) numberOfRows * columns * type.bytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            return type == ElementType.DOUBLE ? bytes.asDoubleBuffer() : bytes.asFloatBuffer();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // the generic operations write large answers into another mapped file instead of the heap, a temporary() the caller closes
+    @Override
+    protected Matrix template(int rows, int columns) {
+        if ((long) rows * columns * Double.BYTES <= HEAP_BYTES) {
+            return new AccurateMatrix(rows, columns);
+        }
+        try {
+            return temporary(rows, columns);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // the answer is mapped from output and open, close it when done
+    public MappedMatrix dot(@Nonnull Matrix matrix, @Nonnull Path output) throws IOException {
+        if (columns != matrix.rows) {
+            throw new MismatchDimensionException(this, matrix);
+        }
+        return dot(matrix, create(output, rows, matrix.columns));
+    }
+
+    // mapped from output as well, close it when done
+    public MappedMatrix transpose(@Nonnull Path output) throws IOException {
+        return transpose(create(output, columns, rows));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        if (temporaryFile != null) {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+}
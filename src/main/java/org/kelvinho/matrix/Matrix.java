@@ -2,15 +2,35 @@ package org.kelvinho.matrix;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.function.BiFunction;
-import java.util.function.Function;
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
 
 @SuppressWarnings({"unused", "WeakerAccess"})
 public abstract class Matrix {
-    private Matrix transposedMatrix = null;
+    private static final DoubleUnaryOperator NEGATE = x -> -x;
+    private static final DoubleUnaryOperator ONE_OVER = x -> 1 / x;
+    private static final DoubleUnaryOperator SQ = x -> x * x;
+    static final DoubleUnaryOperator SIGMOID = Activations::sigmoid;
+    static final DoubleUnaryOperator TANH = Activations::tanh;
+    static final DoubleUnaryOperator EXP = Activations::exp;
+    private static final DoubleUnaryOperator ONE_MINUS = x -> 1 - x;
+    private static final DoubleUnaryOperator SIGMOID_DERIVATIVE = x -> x * (1 - x);
+    private static final DoubleUnaryOperator ABS = Math::abs;
+    static final DoubleBinaryOperator ADD = (x, y) -> x + y;
+    static final DoubleBinaryOperator MINUS = (x, y) -> x - y;
+    static final DoubleBinaryOperator MUL = (x, y) -> x * y;
+    static final DoubleBinaryOperator DIVIDE = (x, y) -> x / y;
+
+    private static final DerivedCache.Key<Matrix> TRANSPOSE = new DerivedCache.Key<>("transpose");
+    private static final DerivedCache.Key<Double> SUM = new DerivedCache.Key<>("sum");
+
     protected int rows;
     protected int columns;
-    private Double sum = null;
+    private volatile DerivedCache.Version version = null; // shared with every view over the same storage, made on demand
+    private volatile DerivedCache derived = null;
 
     // fundamentals
     public abstract double get(int i, int j);
@@ -34,17 +54,28 @@ public abstract class Matrix {
         return columns;
     }
 
+    // element-wise operations on the returned matrix are deferred and fused, see LazyMatrix
+    public LazyMatrix lazy() {
+        return new LazyMatrix(this);
+    }
+
     public Matrix transpose() {
-        if (transposedMatrix != null) {
-            return transposedMatrix;
-        }
-        transposedMatrix = template(columns, rows);
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns; j++) {
-                transposedMatrix.mutableSet(j, i, get(i, j));
+        return derived(TRANSPOSE, this::transposeCopy);
+    }
+
+    // a physical transpose in new storage, shared with nothing and not cached. The dense types' transpose() is a free view, this
+    // is for when the transposed layout itself is needed
+    public Matrix transposeCopy() {
+        Matrix answer = template(columns, rows);
+        Transpose.blocks(rows, columns, (rowFrom, rowTo, columnFrom, columnTo) -> {
+            for (int i = rowFrom; i < rowTo; i++) {
+                for (int j = columnFrom; j < columnTo; j++) {
+                    answer.mutableSet(j, i, get(i, j));
+                }
             }
-        }
-        return transpose();
+        });
+        answer.modified();
+        return answer;
     }
 
     public Matrix dot(@Nonnull Matrix matrix) {
@@ -52,41 +83,254 @@ public abstract class Matrix {
             throw new MismatchDimensionException(this, matrix);
         }
         Matrix answer = template(rows, matrix.columns);
-        for (int i = 0; i < answer.rows; i++) {
-            for (int j = 0; j < answer.columns; j++) {
-                double sum = 0.0;
-                for (int k = 0; k < columns; k++) {
-                    sum += get(i, k) * matrix.get(k, j);
+        Parallelism.forRows(answer.rows, (long) answer.columns * columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < answer.columns; j++) {
+                    double sum = 0.0;
+                    for (int k = 0; k < columns; k++) {
+                        sum += get(i, k) * matrix.get(k, j);
+                    }
+                    answer.mutableSet(i, j, sum);
                 }
-                answer.mutableSet(i, j, sum);
             }
-        }
+        });
         return answer;
     }
 
     @SuppressWarnings("MethodDoesntCallSuperMethod")
     public final Object clone() {
         Matrix answer = template(rows, columns);
-        for (int i = 0; i < answer.rows; i++) {
-            for (int j = 0; j < answer.columns; j++) {
-                answer.mutableSet(i, j, get(i, j));
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < columns; j++) {
+                    answer.mutableSet(i, j, get(i, j));
+                }
             }
+        });
+        return answer;
+    }
+
+    // op(this) . op(matrix), op transposing its operand when the flag is set, without building either transpose. This generic
+    // version reads both through get() with the indices swapped, the dense and buffer types override it
+    public Matrix dot(@Nonnull Matrix matrix, boolean transposeThis, boolean transposeMatrix) {
+        if (!transposeThis && !transposeMatrix) {
+            return dot(matrix);
+        }
+        int m = transposeThis ? columns : rows;
+        int depth = transposeThis ? rows : columns;
+        int n = transposeMatrix ? matrix.rows : matrix.columns;
+        if (depth != (transposeMatrix ? matrix.columns : matrix.rows)) {
+            throw new MismatchDimensionException(this, matrix);
         }
+        Matrix answer = template(m, n);
+        Parallelism.forRows(m, (long) n * depth, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < n; j++) {
+                    double sum = 0.0;
+                    for (int k = 0; k < depth; k++) {
+                        sum += (transposeThis ? get(k, i) : get(i, k)) * (transposeMatrix ? matrix.get(j, k) : matrix.get(k, j));
+                    }
+                    answer.mutableSet(i, j, sum);
+                }
+            }
+        });
+        answer.modified();
         return answer;
     }
 
+    // out = activation(alpha * this . matrix + beta * out + bias) as configured by the epilogue, e.g. a whole dense layer
+    // x.gemm(w, new Epilogue().bias(b).sigmoid()). The dense types fuse it into the product, this generic version takes the
+    // product first and then makes one pass over it and out. out must not share storage with this or matrix
+    public Matrix gemm(@Nonnull Matrix matrix, @Nonnull Epilogue epilogue) {
+        return gemm(matrix, epilogue, template(rows, matrix.columns));
+    }
+
+    public Matrix gemm(@Nonnull Matrix matrix, @Nonnull Epilogue epilogue, @Nonnull Matrix out) {
+        checkGemm(matrix, epilogue, out);
+        Matrix product = dot(matrix);
+        int n = out.columns;
+        Parallelism.forRows(rows, n, (from, to) -> {
+            double[] products = new double[n];
+            double[] row = new double[n];
+            for (int i = from; i < to; i++) {
+                product.readRow(i, 0, products, 0, n);
+                out.readRow(i, 0, row, 0, n);
+                for (int j = 0; j < n; j++) {
+                    row[j] = epilogue.finish(epilogue.alpha * products[j] + epilogue.start(row[j]), i, j);
+                }
+                out.writeRow(i, 0, row, 0, n);
+            }
+        });
+        out.modified();
+        return out;
+    }
+
+    final void checkGemm(@Nonnull Matrix matrix, @Nonnull Epilogue epilogue, @Nonnull Matrix out) {
+        if (columns != matrix.rows) {
+            throw new MismatchDimensionException(this, matrix);
+        }
+        if (out.rows != rows || out.columns != matrix.columns) {
+            throw new MismatchDimensionException(matrix, out);
+        }
+        epilogue.check(out);
+    }
+
+    // this^T . matrix
+    public Matrix transposeDot(@Nonnull Matrix matrix) {
+        return dot(matrix, true, false);
+    }
+
+    // this . matrix^T
+    public Matrix dotTranspose(@Nonnull Matrix matrix) {
+        return dot(matrix, false, true);
+    }
+
     public double sum() {
-        if (sum != null) {
-            return sum;
-        } else {
-            sum = 0.0;
+        return derived(SUM, () -> Parallelism.sum(rows, columns, this::sum));
+    }
+
+    // reductions along one axis, the row variants give a rows x 1 column and the column variants a 1 x columns row. Maxima and
+    // arg maxima skip NaNs, a row or column with nothing else has NaN as its maximum and -1 as its arg max
+
+    public Matrix rowSums() {
+        return rowReduction(row -> Kernels.INSTANCE.sum(row, 0, row.length));
+    }
+
+    public Matrix rowMeans() {
+        return rowReduction(row -> Kernels.INSTANCE.sum(row, 0, row.length) / row.length);
+    }
+
+    public Matrix rowMaxima() {
+        return rowReduction(row -> {
+            int index = argMax(row, row.length);
+            return index < 0 ? Double.NaN : row[index];
+        });
+    }
+
+    // euclidean
+    public Matrix rowNorms() {
+        return rowReduction(row -> Math.sqrt(Kernels.INSTANCE.dot(row, 0, row, 0, row.length)));
+    }
+
+    @Nonnull
+    public int[] rowArgMax() {
+        int[] answer = new int[rows];
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            double[] row = new double[columns];
+            for (int i = from; i < to; i++) {
+                readRow(i, 0, row, 0, columns);
+                answer[i] = argMax(row, columns);
+            }
+        });
+        return answer;
+    }
+
+    public Matrix columnSums() {
+        return columnVector(columnAccumulation(false), 1.0);
+    }
+
+    public Matrix columnMeans() {
+        return columnVector(columnAccumulation(false), 1.0 / rows);
+    }
+
+    public Matrix columnMaxima() {
+        double[] maxima = new double[columns];
+        columnMaxima(maxima, new int[columns]);
+        return columnVector(maxima, 1.0);
+    }
+
+    public Matrix columnNorms() {
+        double[] squares = columnAccumulation(true);
+        for (int j = 0; j < columns; j++) {
+            squares[j] = Math.sqrt(squares[j]);
+        }
+        return columnVector(squares, 1.0);
+    }
+
+    @Nonnull
+    public int[] columnArgMax() {
+        int[] answer = new int[columns];
+        columnMaxima(new double[columns], answer);
+        return answer;
+    }
+
+    private Matrix rowReduction(@Nonnull ToDoubleFunction<double[]> reduction) {
+        Matrix answer = template(rows, 1);
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            double[] row = new double[columns];
+            for (int i = from; i < to; i++) {
+                readRow(i, 0, row, 0, columns);
+                answer.mutableSet(i, 0, reduction.applyAsDouble(row));
+            }
+        });
+        answer.modified();
+        return answer;
+    }
+
+    // the first index of the largest non NaN value, -1 if there is none
+    private static int argMax(@Nonnull double[] values, int length) {
+        int index = -1;
+        for (int j = 0; j < length; j++) {
+            if (index < 0 ? !Double.isNaN(values[j]) : values[j] > values[index]) {
+                index = j;
+            }
+        }
+        return index;
+    }
+
+    // the columns are split between the tasks, each of which walks all rows over its own slice, so rows are still read in order
+    @Nonnull
+    private double[] columnAccumulation(boolean squares) {
+        double[] answer = new double[columns];
+        Parallelism.forRows(columns, rows, (from, to) -> {
+            double[] row = new double[to - from];
             for (int i = 0; i < rows; i++) {
-                for (int j = 0; j < columns; j++) {
-                    sum += get(i, j);
+                readRow(i, from, row, 0, to - from);
+                if (squares) {
+                    Kernels.INSTANCE.fma(row, 0, row, 0, answer, from, answer, from, to - from);
+                } else {
+                    Kernels.INSTANCE.apply(Kernels.Operation.ADD, answer, from, row, 0, answer, from, to - from);
                 }
             }
-            return sum();
+        });
+        return answer;
+    }
+
+    private void columnMaxima(@Nonnull double[] maxima, @Nonnull int[] indices) {
+        Arrays.fill(maxima, Double.NaN);
+        Arrays.fill(indices, -1);
+        Parallelism.forRows(columns, rows, (from, to) -> {
+            double[] row = new double[to - from];
+            for (int i = 0; i < rows; i++) {
+                readRow(i, from, row, 0, to - from);
+                for (int w = 0; w < to - from; w++) {
+                    if (indices[from + w] < 0 ? !Double.isNaN(row[w]) : row[w] > maxima[from + w]) {
+                        maxima[from + w] = row[w];
+                        indices[from + w] = i;
+                    }
+                }
+            }
+        });
+    }
+
+    private Matrix columnVector(@Nonnull double[] values, double scale) {
+        Matrix answer = template(1, columns);
+        for (int j = 0; j < columns; j++) {
+            answer.mutableSet(0, j, values[j] * scale);
         }
+        answer.modified();
+        return answer;
+    }
+
+    // sum of rows [from, to), the leaves of the reduction tree in sum()
+    protected double sum(int from, int to) {
+        double partial = 0.0;
+        for (int i = from; i < to; i++) {
+            for (int j = 0; j < columns; j++) {
+                partial += get(i, j);
+            }
+        }
+        return partial;
     }
 
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
@@ -107,80 +351,479 @@ public abstract class Matrix {
         }
     }
 
-    public Matrix operate(@Nullable Function<Double, Double> function) {
+    public Matrix operate(@Nullable DoubleUnaryOperator function) {
         if (function == null) {
             return this;
         }
-        Matrix answer = template(rows, columns);
-        for (int i = 0; i < answer.rows; i++) {
-            for (int j = 0; j < answer.columns; j++) {
-                answer.mutableSet(i, j, function.apply(get(i, j)));
-            }
+        return operate(function, template(rows, columns));
+    }
+
+    public Matrix operate(@Nonnull Matrix matrix, @Nonnull DoubleBinaryOperator function) {
+        if (!sameDimension(matrix)) {
+            throw new MismatchDimensionException(this, matrix);
         }
-        return answer;
+        return operate(matrix, function, template(rows, columns));
+    }
+
+    // destination passing, the result is written into out (which may be this or matrix) and out is returned
+
+    public Matrix operate(@Nonnull DoubleUnaryOperator function, @Nonnull Matrix out) {
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < columns; j++) {
+                    out.mutableSet(i, j, function.applyAsDouble(get(i, j)));
+                }
+            }
+        });
+        out.modified();
+        return out;
     }
 
-    public Matrix operate(@Nonnull Matrix matrix, @Nonnull BiFunction<Double, Double, Double> function) {
+    public Matrix operate(@Nonnull Matrix matrix, @Nonnull DoubleBinaryOperator function, @Nonnull Matrix out) {
         if (!sameDimension(matrix)) {
             throw new MismatchDimensionException(this, matrix);
         }
-        Matrix answer = template(rows, columns);
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns; j++) {
-                answer.mutableSet(i, j, function.apply(get(i, j), matrix.get(i, j)));
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < columns; j++) {
+                    out.mutableSet(i, j, function.applyAsDouble(get(i, j), matrix.get(i, j)));
+                }
             }
+        });
+        out.modified();
+        return out;
+    }
+
+    public Matrix operateInPlace(@Nonnull DoubleUnaryOperator function) {
+        return operate(function, this);
+    }
+
+    public Matrix operateInPlace(@Nonnull Matrix matrix, @Nonnull DoubleBinaryOperator function) {
+        return operate(matrix, function, this);
+    }
+
+    // this op vector, where vector is either a 1 x columns row applied to every row or a rows x 1 column applied to every column.
+    // The vector is read once and this is streamed through one row buffer, nothing of this size is built besides out
+    public Matrix broadcast(@Nonnull Matrix vector, @Nonnull DoubleBinaryOperator function) {
+        return broadcast(vector, function, template(rows, columns));
+    }
+
+    public Matrix broadcast(@Nonnull Matrix vector, @Nonnull DoubleBinaryOperator function, @Nonnull Matrix out) {
+        boolean rowVector = vector.rows == 1 && vector.columns == columns;
+        if (!rowVector && !(vector.rows == rows && vector.columns == 1)) {
+            throw new MismatchDimensionException(this, vector);
+        }
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        double[] operand = new double[rowVector ? columns : rows];
+        if (rowVector) {
+            vector.readRow(0, 0, operand, 0, columns);
+        } else {
+            for (int i = 0; i < rows; i++) {
+                operand[i] = vector.get(i, 0);
+            }
+        }
+        Kernels.Operation operation = Kernels.operation(function);
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            double[] row = new double[columns];
+            for (int i = from; i < to; i++) {
+                readRow(i, 0, row, 0, columns);
+                if (rowVector && operation != null) {
+                    Kernels.INSTANCE.apply(operation, row, 0, operand, 0, row, 0, columns);
+                } else {
+                    for (int j = 0; j < columns; j++) {
+                        row[j] = function.applyAsDouble(row[j], operand[rowVector ? j : i]);
+                    }
+                }
+                out.writeRow(i, 0, row, 0, columns);
+            }
+        });
+        out.modified();
+        return out;
+    }
+
+    public Matrix broadcastInPlace(@Nonnull Matrix vector, @Nonnull DoubleBinaryOperator function) {
+        return broadcast(vector, function, this);
+    }
+
+    // copies columns [column, column + length) of row i into target, the dense and buffer types override it with bulk copies
+    void readRow(int i, int column, @Nonnull double[] target, int targetOffset, int length) {
+        for (int w = 0; w < length; w++) {
+            target[targetOffset + w] = get(i, column + w);
+        }
+    }
+
+    // the reverse, callers call modified() once they are done
+    void writeRow(int i, int column, @Nonnull double[] source, int sourceOffset, int length) {
+        for (int w = 0; w < length; w++) {
+            mutableSet(i, column + w, source[sourceOffset + w]);
         }
-        return answer;
+    }
+
+    // called after the values were changed in bulk, drops everything derived from the old values
+    protected void modified() {
+        changed();
+    }
+
+    // called by every mutableSet(), a volatile read unless something derived from the current values is cached
+    protected final void changed() {
+        DerivedCache.Version current = version;
+        if (current != null) {
+            current.bump();
+        }
+    }
+
+    // the cached value for key, computed by supplier when missing or stale. Derived matrices are shared, don't change them
+    final <T> T derived(@Nonnull DerivedCache.Key<T> key, @Nonnull Supplier<T> supplier) {
+        DerivedCache cache = derived;
+        if (cache == null) {
+            synchronized (this) {
+                cache = derived;
+                if (cache == null) {
+                    derived = cache = new DerivedCache(version());
+                }
+            }
+        }
+        return cache.get(key, supplier);
+    }
+
+    @Nonnull
+    private DerivedCache.Version version() {
+        DerivedCache.Version current = version;
+        if (current == null) {
+            synchronized (this) {
+                current = version;
+                if (current == null) {
+                    version = current = new DerivedCache.Version();
+                }
+            }
+        }
+        return current;
+    }
+
+    // makes this freshly built view share source's version, so writes through either one invalidate what's cached on both
+    final <T extends Matrix> T viewOf(@Nonnull Matrix source) {
+        version = source.version();
+        @SuppressWarnings("unchecked") T self = (T) this;
+        return self;
     }
 
     // quality of life methods, but all of these should be possible by operate() methods
+    // each comes as a new matrix, a destination variant writing into out, and an in place variant
 
     public Matrix negate() {
-        return operate(x -> -x);
+        return operate(NEGATE);
+    }
+
+    public Matrix negate(@Nonnull Matrix out) {
+        return operate(NEGATE, out);
+    }
+
+    public Matrix negateInPlace() {
+        return operateInPlace(NEGATE);
     }
 
     public Matrix oneOver() {
-        return operate(x -> 1 / x);
+        return operate(ONE_OVER);
+    }
+
+    public Matrix oneOver(@Nonnull Matrix out) {
+        return operate(ONE_OVER, out);
+    }
+
+    public Matrix oneOverInPlace() {
+        return operateInPlace(ONE_OVER);
     }
 
     public Matrix mul(double value) {
         return operate(x -> x * value);
     }
 
+    public Matrix mul(double value, @Nonnull Matrix out) {
+        return operate(x -> x * value, out);
+    }
+
+    public Matrix mulInPlace(double value) {
+        return operateInPlace(x -> x * value);
+    }
+
     public Matrix sq() {
-        return operate(x -> x * x);
+        return operate(SQ);
+    }
+
+    public Matrix sq(@Nonnull Matrix out) {
+        return operate(SQ, out);
+    }
+
+    public Matrix sqInPlace() {
+        return operateInPlace(SQ);
     }
 
     public Matrix sigmoid() {
-        return operate(x -> (1 / (1 + Math.exp(-x))));
+        return operate(SIGMOID);
+    }
+
+    public Matrix sigmoid(@Nonnull Matrix out) {
+        return operate(SIGMOID, out);
+    }
+
+    public Matrix sigmoidInPlace() {
+        return operateInPlace(SIGMOID);
+    }
+
+    // out = sigmoid(this) and derivative = out * (1 - out), in one pass
+    public Matrix sigmoid(@Nonnull Matrix out, @Nonnull Matrix derivative) {
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        if (!sameDimension(derivative)) {
+            throw new MismatchDimensionException(this, derivative);
+        }
+        Activations.Accuracy accuracy = Activations.accuracy();
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < columns; j++) {
+                    double s = Activations.sigmoid(get(i, j), accuracy);
+                    out.mutableSet(i, j, s);
+                    derivative.mutableSet(i, j, s * (1 - s));
+                }
+            }
+        });
+        out.modified();
+        derivative.modified();
+        return out;
+    }
+
+    public Matrix tanh() {
+        return operate(TANH);
+    }
+
+    public Matrix tanh(@Nonnull Matrix out) {
+        return operate(TANH, out);
+    }
+
+    public Matrix tanhInPlace() {
+        return operateInPlace(TANH);
+    }
+
+    public Matrix exp() {
+        return operate(EXP);
+    }
+
+    public Matrix exp(@Nonnull Matrix out) {
+        return operate(EXP, out);
+    }
+
+    public Matrix expInPlace() {
+        return operateInPlace(EXP);
+    }
+
+    // each row scaled to exp(x - max) / sum(exp(x - max))
+    public Matrix softmax() {
+        return softmax(template(rows, columns));
+    }
+
+    public Matrix softmax(@Nonnull Matrix out) {
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        Activations.Accuracy accuracy = Activations.accuracy();
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            double[] row = new double[columns];
+            for (int i = from; i < to; i++) {
+                readRow(i, 0, row, 0, columns);
+                Kernels.INSTANCE.softmax(accuracy, row, 0, row, 0, columns);
+                for (int j = 0; j < columns; j++) {
+                    out.mutableSet(i, j, row[j]);
+                }
+            }
+        });
+        out.modified();
+        return out;
+    }
+
+    public Matrix softmaxInPlace() {
+        return softmax(this);
+    }
+
+    // log(sum(exp(row))) of each row as a column, without overflowing
+    public Matrix logSumExp() {
+        Matrix answer = template(rows, 1);
+        Activations.Accuracy accuracy = Activations.accuracy();
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            double[] row = new double[columns];
+            for (int i = from; i < to; i++) {
+                readRow(i, 0, row, 0, columns);
+                answer.mutableSet(i, 0, Kernels.INSTANCE.logSumExp(accuracy, row, 0, columns));
+            }
+        });
+        answer.modified();
+        return answer;
+    }
+
+    public Matrix broadcastAdd(@Nonnull Matrix vector) {
+        return broadcast(vector, ADD);
+    }
+
+    public Matrix broadcastAdd(@Nonnull Matrix vector, @Nonnull Matrix out) {
+        return broadcast(vector, ADD, out);
+    }
+
+    public Matrix broadcastAddInPlace(@Nonnull Matrix vector) {
+        return broadcastInPlace(vector, ADD);
+    }
+
+    public Matrix broadcastMinus(@Nonnull Matrix vector) {
+        return broadcast(vector, MINUS);
+    }
+
+    public Matrix broadcastMinus(@Nonnull Matrix vector, @Nonnull Matrix out) {
+        return broadcast(vector, MINUS, out);
+    }
+
+    public Matrix broadcastMinusInPlace(@Nonnull Matrix vector) {
+        return broadcastInPlace(vector, MINUS);
+    }
+
+    public Matrix broadcastMul(@Nonnull Matrix vector) {
+        return broadcast(vector, MUL);
+    }
+
+    public Matrix broadcastMul(@Nonnull Matrix vector, @Nonnull Matrix out) {
+        return broadcast(vector, MUL, out);
+    }
+
+    public Matrix broadcastMulInPlace(@Nonnull Matrix vector) {
+        return broadcastInPlace(vector, MUL);
+    }
+
+    public Matrix broadcastDivide(@Nonnull Matrix vector) {
+        return broadcast(vector, DIVIDE);
+    }
+
+    public Matrix broadcastDivide(@Nonnull Matrix vector, @Nonnull Matrix out) {
+        return broadcast(vector, DIVIDE, out);
+    }
+
+    public Matrix broadcastDivideInPlace(@Nonnull Matrix vector) {
+        return broadcastInPlace(vector, DIVIDE);
     }
 
     public Matrix oneMinus() {
-        return operate(x -> 1 - x);
+        return operate(ONE_MINUS);
+    }
+
+    public Matrix oneMinus(@Nonnull Matrix out) {
+        return operate(ONE_MINUS, out);
+    }
+
+    public Matrix oneMinusInPlace() {
+        return operateInPlace(ONE_MINUS);
     }
 
     public Matrix sigmoidDerivative() {
-        return operate(x -> x * (1 - x));
+        return operate(SIGMOID_DERIVATIVE);
+    }
+
+    public Matrix sigmoidDerivative(@Nonnull Matrix out) {
+        return operate(SIGMOID_DERIVATIVE, out);
+    }
+
+    public Matrix sigmoidDerivativeInPlace() {
+        return operateInPlace(SIGMOID_DERIVATIVE);
     }
 
     public Matrix abs() {
-        return operate(Math::abs);
+        return operate(ABS);
+    }
+
+    public Matrix abs(@Nonnull Matrix out) {
+        return operate(ABS, out);
+    }
+
+    public Matrix absInPlace() {
+        return operateInPlace(ABS);
     }
 
     public Matrix add(@Nonnull Matrix matrix) {
-        return operate(matrix, (x, y) -> x + y);
+        return operate(matrix, ADD);
+    }
+
+    public Matrix add(@Nonnull Matrix matrix, @Nonnull Matrix out) {
+        return operate(matrix, ADD, out);
+    }
+
+    public Matrix addInPlace(@Nonnull Matrix matrix) {
+        return operateInPlace(matrix, ADD);
     }
 
     public Matrix minus(@Nonnull Matrix matrix) {
-        return operate(matrix, (x, y) -> x - y);
+        return operate(matrix, MINUS);
+    }
+
+    public Matrix minus(@Nonnull Matrix matrix, @Nonnull Matrix out) {
+        return operate(matrix, MINUS, out);
+    }
+
+    public Matrix minusInPlace(@Nonnull Matrix matrix) {
+        return operateInPlace(matrix, MINUS);
     }
 
     public Matrix mul(@Nonnull Matrix matrix) {
-        return operate(matrix, (x, y) -> x * y);
+        return operate(matrix, MUL);
+    }
+
+    public Matrix mul(@Nonnull Matrix matrix, @Nonnull Matrix out) {
+        return operate(matrix, MUL, out);
+    }
+
+    public Matrix mulInPlace(@Nonnull Matrix matrix) {
+        return operateInPlace(matrix, MUL);
     }
 
     public Matrix divide(@Nonnull Matrix matrix) {
-        return operate(matrix, (x, y) -> x / y);
+        return operate(matrix, DIVIDE);
+    }
+
+    public Matrix divide(@Nonnull Matrix matrix, @Nonnull Matrix out) {
+        return operate(matrix, DIVIDE, out);
+    }
+
+    public Matrix divideInPlace(@Nonnull Matrix matrix) {
+        return operateInPlace(matrix, DIVIDE);
+    }
+
+    // this * b + c element-wise, in one pass
+    public Matrix fma(@Nonnull Matrix b, @Nonnull Matrix c) {
+        return fma(b, c, template(rows, columns));
+    }
+
+    public Matrix fma(@Nonnull Matrix b, @Nonnull Matrix c, @Nonnull Matrix out) {
+        if (!sameDimension(b)) {
+            throw new MismatchDimensionException(this, b);
+        }
+        if (!sameDimension(c)) {
+            throw new MismatchDimensionException(this, c);
+        }
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                for (int j = 0; j < columns; j++) {
+                    out.mutableSet(i, j, get(i, j) * b.get(i, j) + c.get(i, j));
+                }
+            }
+        });
+        out.modified();
+        return out;
     }
 
     public abstract boolean equals(@Nonnull Object object);
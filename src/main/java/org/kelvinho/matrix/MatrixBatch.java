@@ -0,0 +1,430 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+// a batch of same-shape matrices stored back to back in one double[], matrix k starting at k * rows * columns. Every operation
+// handles the whole batch in one call, split across the batch with Parallelism, so thousands of small products cost a few
+// loops over one array instead of thousands of Matrix objects. Small matrices are multiplied with plain i-k-j loops, which for
+// 16 x 16 or 64 x 64 beat packing for Gemm; larger ones go through Gemm on views of the batch
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class MatrixBatch {
+    private static final int SMALL = 64; // at most this many columns on either side of a product uses the direct loops
+    final double[] values;
+    final int count;
+    final int rows;
+    final int columns;
+
+    public MatrixBatch(int count, int numberOfRows, int numberOfColumns) {
+        this(new double[checkedSize(count, numberOfRows, numberOfColumns)], count, numberOfRows, numberOfColumns);
+    }
+
+    MatrixBatch(@Nonnull double[] values, int count, int numberOfRows, int numberOfColumns) {
+        this.values = values;
+        this.count = count;
+        rows = numberOfRows;
+        columns = numberOfColumns;
+    }
+
+    private static int checkedSize(int count, int numberOfRows, int numberOfColumns) {
+        if (count < 0 || numberOfRows < 0 || numberOfColumns < 0) {
+            throw new IllegalArgumentException("Bad batch (" + count + ", " + numberOfRows + ", " + numberOfColumns + ")");
+        }
+        long size = (long) count * numberOfRows * numberOfColumns;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A batch of " + size + " elements doesn't fit in an array");
+        }
+        return (int) size;
+    }
+
+    @Nonnull
+    public static MatrixBatch of(@Nonnull List<? extends Matrix> matrices) {
+        if (matrices.isEmpty()) {
+            throw new IllegalArgumentException("Can't tell the shape of an empty batch");
+        }
+        Matrix first = matrices.get(0);
+        MatrixBatch answer = new MatrixBatch(matrices.size(), first.numberOfRows(), first.numberOfColumns());
+        for (int k = 0; k < matrices.size(); k++) {
+            Matrix matrix = matrices.get(k);
+            if (!first.sameDimension(matrix)) {
+                throw new MismatchDimensionException(first, matrix);
+            }
+            for (int i = 0; i < answer.rows; i++) {
+                for (int j = 0; j < answer.columns; j++) {
+                    answer.values[answer.index(k, i, j)] = matrix.get(i, j);
+                }
+            }
+        }
+        return answer;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int numberOfRows() {
+        return rows;
+    }
+
+    public int numberOfColumns() {
+        return columns;
+    }
+
+    private int stride() {
+        return rows * columns;
+    }
+
+    private int index(int k, int i, int j) {
+        if (k < 0 || k >= count || i < 0 || i >= rows || j < 0 || j >= columns) {
+            throw new IndexOutOfBoundsException("(" + k + ", " + i + ", " + j + ") is outside of (" + count + ", " + rows + ", " + columns + ")");
+        }
+        return k * stride() + i * columns + j;
+    }
+
+    public double get(int k, int i, int j) {
+        return values[index(k, i, j)];
+    }
+
+    public void mutableSet(int k, int i, int j, double value) {
+        values[index(k, i, j)] = value;
+    }
+
+    // matrix k, sharing storage with the batch
+    @Nonnull
+    public AccurateMatrix get(int k) {
+        if (k < 0 || k >= count) {
+            throw new IndexOutOfBoundsException(k + " is outside of a batch of " + count);
+        }
+        return new AccurateMatrix(values, k * stride(), rows, columns, columns, 1);
+    }
+
+    private boolean sameShape(@Nonnull MatrixBatch batch) {
+        return count == batch.count && rows == batch.rows && columns == batch.columns;
+    }
+
+    private void checkShape(@Nonnull MatrixBatch batch) {
+        if (!sameShape(batch)) {
+            throw new IllegalArgumentException("Batch (" + count + ", " + rows + ", " + columns + ") doesn't match ("
+                    + batch.count + ", " + batch.rows + ", " + batch.columns + ")");
+        }
+    }
+
+    // products
+    // matrix k of the answer is this[k] . batch[k]
+    @Nonnull
+    public MatrixBatch dot(@Nonnull MatrixBatch batch) {
+        if (count != batch.count || columns != batch.rows) {
+            throw new IllegalArgumentException("Can't multiply batch (" + count + ", " + rows + ", " + columns + ") by ("
+                    + batch.count + ", " + batch.rows + ", " + batch.columns + ")");
+        }
+        MatrixBatch answer = new MatrixBatch(count, rows, batch.columns);
+        int aStride = stride();
+        int bStride = batch.stride();
+        int cStride = answer.stride();
+        Parallelism.forRows(count, (long) rows * columns * batch.columns, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                multiply(values, k * aStride, batch.values, k * bStride, answer.values, k * cStride, rows, columns, batch.columns);
+            }
+        });
+        return answer;
+    }
+
+    // every matrix times the same matrix, which is a single (count * rows) x columns product
+    @Nonnull
+    public MatrixBatch dot(@Nonnull Matrix matrix) {
+        if (columns != matrix.numberOfRows()) {
+            throw new IllegalArgumentException("Can't multiply batch (" + count + ", " + rows + ", " + columns + ") by ("
+                    + matrix.numberOfRows() + ", " + matrix.numberOfColumns() + ")");
+        }
+        AccurateMatrix right = matrix instanceof AccurateMatrix ? (AccurateMatrix) matrix
+                : new AccurateMatrix(matrix.numberOfRows(), matrix.numberOfColumns(), matrix::get);
+        MatrixBatch answer = new MatrixBatch(count, rows, right.columns);
+        AccurateMatrix a = new AccurateMatrix(values, 0, count * rows, columns, columns, 1);
+        AccurateMatrix c = new AccurateMatrix(answer.values, 0, count * rows, right.columns, right.columns, 1);
+        Gemm.multiply(a, right, c);
+        return answer;
+    }
+
+    // c[cOffset..] += a[aOffset..] . b[bOffset..] for contiguous row-major m x n and n x p matrices
+    private static void multiply(@Nonnull double[] a, int aOffset, @Nonnull double[] b, int bOffset, @Nonnull double[] c, int cOffset,
+                                 int m, int n, int p) {
+        if (n > SMALL || p > SMALL) {
+            Gemm.multiply(new AccurateMatrix(a, aOffset, m, n, n, 1), new AccurateMatrix(b, bOffset, n, p, p, 1),
+                    new AccurateMatrix(c, cOffset, m, p, p, 1));
+            return;
+        }
+        for (int i = 0; i < m; i++) {
+            int cRow = cOffset + i * p;
+            for (int k = 0; k < n; k++) {
+                double factor = a[aOffset + i * n + k];
+                int bRow = bOffset + k * p;
+                for (int j = 0; j < p; j++) {
+                    c[cRow + j] += factor * b[bRow + j];
+                }
+            }
+        }
+    }
+
+    @Nonnull
+    public MatrixBatch transpose() {
+        MatrixBatch answer = new MatrixBatch(count, columns, rows);
+        int stride = stride();
+        Parallelism.forRows(count, stride, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                int base = k * stride;
+                for (int i = 0; i < rows; i++) {
+                    for (int j = 0; j < columns; j++) {
+                        answer.values[base + j * rows + i] = values[base + i * columns + j];
+                    }
+                }
+            }
+        });
+        return answer;
+    }
+
+    // Gauss-Jordan with partial pivoting on each matrix, throws if any of them is singular
+    @Nonnull
+    public MatrixBatch inverse() {
+        if (rows != columns) {
+            throw new MatrixNotInvertibleException("Not a batch of square matrices");
+        }
+        int n = rows;
+        MatrixBatch answer = new MatrixBatch(count, n, n);
+        Parallelism.forRows(count, (long) n * n * n, (from, to) -> {
+            double[] a = new double[n * n];
+            for (int k = from; k < to; k++) {
+                System.arraycopy(values, k * n * n, a, 0, n * n);
+                if (!invert(a, answer.values, k * n * n, n)) {
+                    throw new MatrixNotInvertibleException("Matrix " + k + " of the batch is singular");
+                }
+            }
+        });
+        return answer;
+    }
+
+    // a is destroyed, the inverse goes to inverse[offset..]
+    private static boolean invert(@Nonnull double[] a, @Nonnull double[] inverse, int offset, int n) {
+        double scale = 0.0;
+        for (int i = 0; i < n * n; i++) {
+            scale = Math.max(scale, Math.abs(a[i]));
+        }
+        for (int i = 0; i < n; i++) {
+            inverse[offset + i * n + i] = 1.0;
+        }
+        for (int j = 0; j < n; j++) {
+            int pivot = j;
+            for (int i = j + 1; i < n; i++) {
+                if (Math.abs(a[i * n + j]) > Math.abs(a[pivot * n + j])) {
+                    pivot = i;
+                }
+            }
+            double diagonal = a[pivot * n + j];
+            if (scale == 0.0 || Environment.doubleLooselyEquals(diagonal / scale, 0.0)) {
+                return false;
+            }
+            if (pivot != j) {
+                swap(a, 0, pivot, j, n);
+                swap(inverse, offset, pivot, j, n);
+            }
+            double oneOver = 1.0 / diagonal;
+            for (int w = 0; w < n; w++) {
+                a[j * n + w] *= oneOver;
+                inverse[offset + j * n + w] *= oneOver;
+            }
+            for (int i = 0; i < n; i++) {
+                double factor = a[i * n + j];
+                if (i != j && factor != 0.0) {
+                    for (int w = 0; w < n; w++) {
+                        a[i * n + w] -= factor * a[j * n + w];
+                        inverse[offset + i * n + w] -= factor * inverse[offset + j * n + w];
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void swap(@Nonnull double[] values, int offset, int rowA, int rowB, int n) {
+        for (int w = 0; w < n; w++) {
+            double temporary = values[offset + rowA * n + w];
+            values[offset + rowA * n + w] = values[offset + rowB * n + w];
+            values[offset + rowB * n + w] = temporary;
+        }
+    }
+
+    @Nonnull
+    public double[] determinant() {
+        if (rows != columns) {
+            throw new MatrixNotInvertibleException("Not a batch of square matrices");
+        }
+        double[] answer = new double[count];
+        Parallelism.forRows(count, (long) rows * rows * rows, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                answer[k] = new LUDecomposition(get(k)).determinant();
+            }
+        });
+        return answer;
+    }
+
+    // element-wise
+    @Nonnull
+    public MatrixBatch operate(@Nonnull DoubleUnaryOperator function) {
+        MatrixBatch answer = new MatrixBatch(count, rows, columns);
+        int stride = stride();
+        Parallelism.forRows(count, stride, (from, to) -> {
+            Kernels.Activation activation = Kernels.activation(function);
+            if (activation != null) {
+                Kernels.INSTANCE.activate(activation, Activations.accuracy(), values, from * stride, answer.values, from * stride, (to - from) * stride);
+                return;
+            }
+            for (int index = from * stride; index < to * stride; index++) {
+                answer.values[index] = function.applyAsDouble(values[index]);
+            }
+        });
+        return answer;
+    }
+
+    @Nonnull
+    public MatrixBatch operate(@Nonnull MatrixBatch batch, @Nonnull DoubleBinaryOperator function) {
+        checkShape(batch);
+        MatrixBatch answer = new MatrixBatch(count, rows, columns);
+        Kernels.Operation operation = Kernels.operation(function);
+        int stride = stride();
+        Parallelism.forRows(count, stride, (from, to) -> {
+            if (operation != null) {
+                Kernels.INSTANCE.apply(operation, values, from * stride, batch.values, from * stride, answer.values, from * stride,
+                        (to - from) * stride);
+                return;
+            }
+            for (int index = from * stride; index < to * stride; index++) {
+                answer.values[index] = function.applyAsDouble(values[index], batch.values[index]);
+            }
+        });
+        return answer;
+    }
+
+    // the same matrix applied to every matrix of the batch, batch[k] (function) matrix
+    @Nonnull
+    public MatrixBatch operate(@Nonnull Matrix matrix, @Nonnull DoubleBinaryOperator function) {
+        if (matrix.numberOfRows() != rows || matrix.numberOfColumns() != columns) {
+            throw new IllegalArgumentException("Matrix (" + matrix.numberOfRows() + ", " + matrix.numberOfColumns()
+                    + ") doesn't match the batch's (" + rows + ", " + columns + ")");
+        }
+        double[] other = new double[stride()];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                other[i * columns + j] = matrix.get(i, j);
+            }
+        }
+        MatrixBatch answer = new MatrixBatch(count, rows, columns);
+        Kernels.Operation operation = Kernels.operation(function);
+        int stride = stride();
+        Parallelism.forRows(count, stride, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                if (operation != null) {
+                    Kernels.INSTANCE.apply(operation, values, k * stride, other, 0, answer.values, k * stride, stride);
+                } else {
+                    for (int w = 0; w < stride; w++) {
+                        answer.values[k * stride + w] = function.applyAsDouble(values[k * stride + w], other[w]);
+                    }
+                }
+            }
+        });
+        return answer;
+    }
+
+    @Nonnull
+    public MatrixBatch add(@Nonnull MatrixBatch batch) {
+        return operate(batch, Matrix.ADD);
+    }
+
+    @Nonnull
+    public MatrixBatch minus(@Nonnull MatrixBatch batch) {
+        return operate(batch, Matrix.MINUS);
+    }
+
+    @Nonnull
+    public MatrixBatch mul(@Nonnull MatrixBatch batch) {
+        return operate(batch, Matrix.MUL);
+    }
+
+    @Nonnull
+    public MatrixBatch divide(@Nonnull MatrixBatch batch) {
+        return operate(batch, Matrix.DIVIDE);
+    }
+
+    @Nonnull
+    public MatrixBatch mul(double scalar) {
+        return operate(x -> x * scalar);
+    }
+
+    @Nonnull
+    public MatrixBatch sigmoid() {
+        return operate(Matrix.SIGMOID);
+    }
+
+    // reductions
+    // the sum of each matrix
+    @Nonnull
+    public double[] sums() {
+        double[] answer = new double[count];
+        int stride = stride();
+        Parallelism.forRows(count, stride, (from, to) -> {
+            for (int k = from; k < to; k++) {
+                answer[k] = Kernels.INSTANCE.sum(values, k * stride, stride);
+            }
+        });
+        return answer;
+    }
+
+    public double sum() {
+        return Parallelism.sum(count, stride(), (from, to) -> Kernels.INSTANCE.sum(values, from * stride(), (to - from) * stride()));
+    }
+
+    // the element-wise sum over the batch, as one rows x columns matrix
+    @Nonnull
+    public AccurateMatrix sumOverBatch() {
+        int stride = stride();
+        double[] answer = new double[stride];
+        Parallelism.forRows(rows, (long) count * columns, (from, to) -> {
+            for (int k = 0; k < count; k++) {
+                for (int index = from * columns; index < to * columns; index++) {
+                    answer[index] += values[k * stride + index];
+                }
+            }
+        });
+        return new AccurateMatrix(answer, 0, rows, columns, columns, 1);
+    }
+
+    @Nonnull
+    public AccurateMatrix mean() {
+        AccurateMatrix answer = sumOverBatch();
+        if (count > 0) {
+            answer.mulInPlace(1.0 / count);
+        }
+        return answer;
+    }
+
+    @Override
+    public boolean equals(@Nonnull Object object) {
+        if (!(object instanceof MatrixBatch) || !sameShape((MatrixBatch) object)) {
+            return false;
+        }
+        MatrixBatch batch = (MatrixBatch) object;
+        for (int index = 0; index < values.length; index++) {
+            if (!Environment.doubleLooselyEquals(values[index], batch.values[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // equals() compares elements within a tolerance, which no hash of the elements could agree with, so only the shape is hashed
+    @Override
+    public int hashCode() {
+        return Objects.hash(count, rows, columns);
+    }
+}
@@ -0,0 +1,197 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// binary matrix files: a fixed HEADER_BYTES little endian header followed by the elements, row-major and little endian.
+//   0  int   magic "KMTX"
+//   4  short version
+//   6  byte  element type (ElementType.code)
+//   7  byte  layout (only ROW_MAJOR so far)
+//   8  long  rows
+//  16  long  columns
+//  24  8 reserved bytes, zero
+// The header is a multiple of 8 bytes so the data that follows stays aligned, which lets map() hand the file straight to a
+// MappedMatrix without parsing it, and any AccurateMatrix / NormalMatrix can be read back with bulk copies
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class MatrixIO {
+    static final int MAGIC = 0x58544D4B; // "KMTX" read as a little endian int
+    static final short VERSION = 1;
+    static final byte ROW_MAJOR = 0;
+    static final int HEADER_BYTES = 32;
+    static final int ROWS_POSITION = 8;
+    static final int CHUNK_BYTES = 1 << 16;
+
+    private MatrixIO() {
+    }
+
+    // elements are written as doubles, except for a NormalMatrix which keeps its floats
+    public static void write(@Nonnull Matrix matrix, @Nonnull WritableByteChannel channel) throws IOException {
+        MatrixWriter writer = new MatrixWriter(channel, matrix.numberOfRows(), matrix.numberOfColumns(), ElementType.of(matrix));
+        writer.writeRows(matrix);
+        writer.finish();
+    }
+
+    public static void write(@Nonnull Matrix matrix, @Nonnull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(matrix, channel);
+        }
+    }
+
+    // an AccurateMatrix for double files and a NormalMatrix for float files
+    @Nonnull
+    public static Matrix read(@Nonnull ReadableByteChannel channel) throws IOException {
+        Header header = readHeader(channel);
+        long size = (long) header.rows * header.columns;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("A (" + header.rows + ", " + header.columns + ") matrix doesn't fit in an array, map() it instead");
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.type == ElementType.DOUBLE) {
+            double[] values = new double[(int) size];
+            readValues(channel, buffer, values, values.length);
+            return new AccurateMatrix(values, 0, header.rows, header.columns, header.columns, 1);
+        }
+        float[] values = new float[(int) size];
+        readValues(channel, buffer, values, values.length);
+        return new NormalMatrix(values, 0, header.rows, header.columns, header.columns, 1);
+    }
+
+    @Nonnull
+    public static Matrix read(@Nonnull Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel);
+        }
+    }
+
+    // zero-copy load: the elements stay in the file and are paged in on demand, close() the matrix when done
+    @Nonnull
+    public static MappedMatrix map(@Nonnull Path path, boolean writable) throws IOException {
+        FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            Header header = readHeader(channel);
+            if (channel.size() < HEADER_BYTES + (long) header.rows * header.columns * header.type.bytes) {
+                throw new IOException(path + " is truncated");
+            }
+            return new MappedMatrix(channel, HEADER_BYTES, header.rows, header.columns, header.type, writable, null);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // the rows of a matrix file batchRows at a time, only one batch is ever in memory. close() the batches to close the channel
+    @Nonnull
+    public static RowBatches batches(@Nonnull ReadableByteChannel channel, int batchRows) throws IOException {
+        return RowBatches.of(channel, batchRows);
+    }
+
+    @Nonnull
+    public static RowBatches batches(@Nonnull Path path, int batchRows) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return RowBatches.of(channel, batchRows);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // the number of rows must be known up front since the channel can't be rewound to fix the header
+    @Nonnull
+    public static MatrixWriter writer(@Nonnull WritableByteChannel channel, int numberOfRows, int numberOfColumns,
+                                      @Nonnull ElementType type) throws IOException {
+        return new MatrixWriter(channel, numberOfRows, numberOfColumns, type);
+    }
+
+    // rows can be appended until close(), which then writes the final count into the header
+    @Nonnull
+    public static MatrixWriter writer(@Nonnull Path path, int numberOfColumns, @Nonnull ElementType type) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return new MatrixWriter(channel, -1, numberOfColumns, type);
+    }
+
+    @Nonnull
+    static ByteBuffer header(int numberOfRows, int numberOfColumns, @Nonnull ElementType type) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putShort(VERSION).put((byte) type.code).put(ROW_MAJOR).putLong(numberOfRows).putLong(numberOfColumns);
+        buffer.clear();
+        return buffer;
+    }
+
+    @Nonnull
+    static Header readHeader(@Nonnull ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        fill(channel, buffer, HEADER_BYTES);
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a matrix file");
+        }
+        short version = buffer.getShort();
+        if (version > VERSION) {
+            throw new IOException("Unsupported format version " + version);
+        }
+        ElementType type = ElementType.of(buffer.get());
+        byte layout = buffer.get();
+        if (layout != ROW_MAJOR) {
+            throw new IOException("Unsupported layout " + layout);
+        }
+        long rows = buffer.getLong();
+        long columns = buffer.getLong();
+        if (rows < 0 || columns < 0 || rows > Integer.MAX_VALUE || columns > Integer.MAX_VALUE) {
+            throw new IOException("Bad dimension (" + rows + ", " + columns + ")");
+        }
+        return new Header(type, (int) rows, (int) columns);
+    }
+
+    // the next count elements of the channel into values[0, count), through buffer
+    static void readValues(@Nonnull ReadableByteChannel channel, @Nonnull ByteBuffer buffer, @Nonnull double[] values, int count) throws IOException {
+        for (int index = 0, chunk; index < count; index += chunk) {
+            chunk = Math.min(count - index, buffer.capacity() / Double.BYTES);
+            fill(channel, buffer, chunk * Double.BYTES);
+            buffer.asDoubleBuffer().get(values, index, chunk);
+        }
+    }
+
+    static void readValues(@Nonnull ReadableByteChannel channel, @Nonnull ByteBuffer buffer, @Nonnull float[] values, int count) throws IOException {
+        for (int index = 0, chunk; index < count; index += chunk) {
+            chunk = Math.min(count - index, buffer.capacity() / Float.BYTES);
+            fill(channel, buffer, chunk * Float.BYTES);
+            buffer.asFloatBuffer().get(values, index, chunk);
+        }
+    }
+
+    // reads exactly length bytes into the start of buffer and flips it
+    private static void fill(@Nonnull ReadableByteChannel channel, @Nonnull ByteBuffer buffer, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Matrix file ended early");
+            }
+        }
+        buffer.flip();
+    }
+
+    static class Header {
+        final ElementType type;
+        final int rows;
+        final int columns;
+
+        Header(@Nonnull ElementType type, int rows, int columns) {
+            this.type = type;
+            this.rows = rows;
+            this.columns = columns;
+        }
+    }
+}
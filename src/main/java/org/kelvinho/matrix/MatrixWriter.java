@@ -0,0 +1,169 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+// writes a matrix file (see MatrixIO) a row at a time, so results can be spilled without ever holding them in memory.
+// Rows go through a single CHUNK_BYTES buffer. When the number of rows isn't known up front (numberOfRows < 0) the channel must
+// be seekable, the header is written with 0 rows and patched by close()
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class MatrixWriter implements AutoCloseable {
+    private final WritableByteChannel channel;
+    private final int expectedRows;
+    private final int columns;
+    private final ElementType type;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(MatrixIO.CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final long start;
+    private int rows = 0;
+    private boolean finished = false;
+
+    MatrixWriter(@Nonnull WritableByteChannel channel, int numberOfRows, int numberOfColumns, @Nonnull ElementType type) throws IOException {
+        if (numberOfColumns < 0) {
+            throw new IllegalArgumentException("Negative number of columns " + numberOfColumns);
+        }
+        if (numberOfRows < 0 && !(channel instanceof SeekableByteChannel)) {
+            throw new IllegalArgumentException("The number of rows is needed up front unless the channel is seekable");
+        }
+        this.channel = channel;
+        this.expectedRows = numberOfRows;
+        this.columns = numberOfColumns;
+        this.type = type;
+        start = channel instanceof SeekableByteChannel ? ((SeekableByteChannel) channel).position() : 0;
+        writeFully(MatrixIO.header(Math.max(0, numberOfRows), numberOfColumns, type));
+    }
+
+    public int numberOfRows() {
+        return rows;
+    }
+
+    public int numberOfColumns() {
+        return columns;
+    }
+
+    public void writeRow(@Nonnull double[] row) throws IOException {
+        writeRow(row, 0);
+    }
+
+    // writes row[offset, offset + numberOfColumns())
+    public void writeRow(@Nonnull double[] row, int offset) throws IOException {
+        checkRow();
+        if (offset < 0 || offset + columns > row.length) {
+            throw new IndexOutOfBoundsException("Row of " + columns + " from " + offset + " is outside of an array of " + row.length);
+        }
+        for (int w = 0, count; w < columns; w += count) {
+            count = Math.min(columns - w, room());
+            if (type == ElementType.DOUBLE) {
+                buffer.asDoubleBuffer().put(row, offset + w, count);
+                buffer.position(buffer.position() + count * Double.BYTES);
+            } else {
+                for (int k = offset + w; k < offset + w + count; k++) {
+                    buffer.putFloat((float) row[k]);
+                }
+            }
+        }
+        rows++;
+    }
+
+    public void writeRow(@Nonnull float[] row, int offset) throws IOException {
+        checkRow();
+        if (offset < 0 || offset + columns > row.length) {
+            throw new IndexOutOfBoundsException("Row of " + columns + " from " + offset + " is outside of an array of " + row.length);
+        }
+        for (int w = 0, count; w < columns; w += count) {
+            count = Math.min(columns - w, room());
+            if (type == ElementType.FLOAT) {
+                buffer.asFloatBuffer().put(row, offset + w, count);
+                buffer.position(buffer.position() + count * Float.BYTES);
+            } else {
+                for (int k = offset + w; k < offset + w + count; k++) {
+                    buffer.putDouble(row[k]);
+                }
+            }
+        }
+        rows++;
+    }
+
+    // appends every row of the matrix, contiguous rows of the dense types are copied in bulk
+    public void writeRows(@Nonnull Matrix matrix) throws IOException {
+        if (matrix.numberOfColumns() != columns) {
+            throw new IllegalArgumentException("Expected rows of " + columns + " columns, got " + matrix.numberOfColumns());
+        }
+        if (matrix instanceof LazyMatrix) {
+            matrix = ((LazyMatrix) matrix).evaluate();
+        }
+        if (matrix instanceof AccurateMatrix && ((AccurateMatrix) matrix).columnStride == 1) {
+            AccurateMatrix dense = (AccurateMatrix) matrix;
+            for (int i = 0; i < dense.numberOfRows(); i++) {
+                writeRow(dense.values, dense.offset + i * dense.rowStride);
+            }
+        } else if (matrix instanceof NormalMatrix && ((NormalMatrix) matrix).columnStride == 1) {
+            NormalMatrix dense = (NormalMatrix) matrix;
+            for (int i = 0; i < dense.numberOfRows(); i++) {
+                writeRow(dense.values, dense.offset + i * dense.rowStride);
+            }
+        } else {
+            double[] row = new double[columns];
+            for (int i = 0; i < matrix.numberOfRows(); i++) {
+                matrix.readRow(i, 0, row, 0, columns);
+                writeRow(row, 0);
+            }
+        }
+    }
+
+    // flushes and completes the header without closing the channel
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        buffer.flip();
+        writeFully(buffer);
+        if (expectedRows < 0) {
+            SeekableByteChannel seekable = (SeekableByteChannel) channel;
+            long end = seekable.position();
+            seekable.position(start);
+            writeFully(MatrixIO.header(rows, columns, type));
+            seekable.position(end);
+        } else if (rows != expectedRows) {
+            throw new IOException("Expected " + expectedRows + " rows, " + rows + " were written");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void checkRow() {
+        if (finished) {
+            throw new IllegalStateException("The writer is closed");
+        }
+        if (expectedRows >= 0 && rows >= expectedRows) {
+            throw new IllegalStateException("All " + expectedRows + " rows have been written");
+        }
+    }
+
+    // elements that fit in the buffer, flushing it first when it's full
+    private int room() throws IOException {
+        if (buffer.remaining() < type.bytes) {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+        return buffer.remaining() / type.bytes;
+    }
+
+    private void writeFully(@Nonnull ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+}
@@ -1,19 +1,27 @@
 package org.kelvinho.matrix;
 
 import javax.annotation.Nonnull;
-import java.util.function.BiFunction;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
 
 @SuppressWarnings({"unused", "WeakerAccess"})
 public class NormalMatrix extends Matrix implements Cloneable {
-    private float[][] values;
+    // row-major, element (i, j) lives at values[offset + i * rowStride + j * columnStride]; views share values with their source
+    final float[] values;
+    final int offset;
+    final int rowStride;
+    final int columnStride;
 
-    public NormalMatrix(int numberOfRows, int numberOfColumns, @Nonnull BiFunction<Integer, Integer, Double> generator) {
+    public NormalMatrix(int numberOfRows, int numberOfColumns, @Nonnull IntIntToDoubleFunction generator) {
         rows = numberOfRows;
         columns = numberOfColumns;
-        values = new float[rows][columns];
+        values = new float[AccurateMatrix.arraySize(rows, columns)];
+        offset = 0;
+        rowStride = columns;
+        columnStride = 1;
         for (int i = 0; i < rows; i++) {
             for (int j = 0; j < columns; j++) {
-                mutableSet(i, j, generator.apply(i, j));
+                values[i * columns + j] = (float) generator.apply(i, j);
             }
         }
     }
@@ -30,29 +38,317 @@ public class NormalMatrix extends Matrix implements Cloneable {
         if (values.length == 0) {
             throw new RuntimeException("The number of rows is 0. Please use new NormalMatrix(int numberOfRows, int numberOfColumns) instead.");
         }
-        this.values = Environment.clone(values);
+        this.values = Environment.flatten(values);
         rows = values.length;
         columns = values[0].length;
+        offset = 0;
+        rowStride = columns;
+        columnStride = 1;
+    }
+
+    NormalMatrix(@Nonnull float[] values, int offset, int numberOfRows, int numberOfColumns, int rowStride, int columnStride) {
+        this.values = values;
+        this.offset = offset;
+        this.rowStride = rowStride;
+        this.columnStride = columnStride;
+        rows = numberOfRows;
+        columns = numberOfColumns;
     }
 
     @Override
     public double get(int i, int j) {
-        return 0;
+        return values[index(i, j)];
+    }
+
+    private int index(int i, int j) {
+        if (i < 0 || i >= rows || j < 0 || j >= columns) {
+            throw new IndexOutOfBoundsException("(" + i + ", " + j + ") is outside of (" + rows + ", " + columns + ")");
+        }
+        return offset + i * rowStride + j * columnStride;
+    }
+
+    // views, these share the backing array, so mutableSet() on either side shows up on the other
+
+    public NormalMatrix subMatrix(int row, int column, int numberOfRows, int numberOfColumns) {
+        if (row < 0 || column < 0 || numberOfRows < 0 || numberOfColumns < 0 || row + numberOfRows > rows || column + numberOfColumns > columns) {
+            throw new IndexOutOfBoundsException();
+        }
+        return new NormalMatrix(values, offset + row * rowStride + column * columnStride, numberOfRows, numberOfColumns, rowStride, columnStride)
+                .viewOf(this);
+    }
+
+    public NormalMatrix row(int i) {
+        return subMatrix(i, 0, 1, columns);
+    }
+
+    public NormalMatrix column(int j) {
+        return subMatrix(0, j, rows, 1);
+    }
+
+    @Override
+    public NormalMatrix transpose() {
+        return new NormalMatrix(values, offset, columns, rows, columnStride, rowStride).viewOf(this);
+    }
+
+    @Override
+    protected NormalMatrix template(int rows, int columns) {
+        return new NormalMatrix(BufferPool.floats(AccurateMatrix.arraySize(rows, columns)), 0, rows, columns, columns, 1);
+    }
+
+    // a contiguous copy, filled in cache-oblivious blocks
+    @Override
+    public NormalMatrix transposeCopy() {
+        NormalMatrix answer = template(columns, rows);
+        float[] target = answer.values;
+        Transpose.blocks(rows, columns, (rowFrom, rowTo, columnFrom, columnTo) -> {
+            for (int i = rowFrom; i < rowTo; i++) {
+                int index = offset + i * rowStride + columnFrom * columnStride;
+                for (int j = columnFrom; j < columnTo; j++, index += columnStride) {
+                    target[j * rows + i] = values[index];
+                }
+            }
+        });
+        return answer;
+    }
+
+    // the transposes are stride swapped views, so Gemm's packing reads each operand in place in whichever order it's laid out
+    @Override
+    public Matrix dot(@Nonnull Matrix matrix, boolean transposeThis, boolean transposeMatrix) {
+        if (matrix instanceof LazyMatrix) {
+            return dot(((LazyMatrix) matrix).evaluate(), transposeThis, transposeMatrix);
+        }
+        if (!(matrix instanceof AccurateMatrix) && !(matrix instanceof NormalMatrix)) {
+            return super.dot(matrix, transposeThis, transposeMatrix);
+        }
+        return (transposeThis ? transpose() : this).dot(transposeMatrix ? matrix.transpose() : matrix);
+    }
+
+    @Override
+    public Matrix gemm(@Nonnull Matrix matrix, @Nonnull Epilogue epilogue, @Nonnull Matrix out) {
+        if (matrix instanceof LazyMatrix) {
+            return gemm(((LazyMatrix) matrix).evaluate(), epilogue, out);
+        }
+        if (matrix instanceof AccurateMatrix && columns == matrix.rows) {
+            return gemm(((AccurateMatrix) matrix).toNormal(), epilogue, out);
+        }
+        if (!(matrix instanceof NormalMatrix) || !(out instanceof NormalMatrix)) {
+            return super.gemm(matrix, epilogue, out);
+        }
+        checkGemm(matrix, epilogue, out);
+        NormalMatrix target = (NormalMatrix) out;
+        if (target.overlaps(this) || target.overlaps((NormalMatrix) matrix)) {
+            // out shares the array with an operand, see AccurateMatrix.gemm()
+            NormalMatrix answer = epilogue.beta == 0.0 ? template(out.rows, out.columns) : (NormalMatrix) out.clone();
+            Gemm.multiply(this, (NormalMatrix) matrix, answer, epilogue);
+            target.copyFrom(answer);
+        } else {
+            Gemm.multiply(this, (NormalMatrix) matrix, target, epilogue);
+        }
+        out.modified();
+        return out;
+    }
+
+    // by the span of indices, as in AccurateMatrix
+    private boolean overlaps(@Nonnull NormalMatrix matrix) {
+        if (values != matrix.values || rows == 0 || columns == 0 || matrix.rows == 0 || matrix.columns == 0) {
+            return false;
+        }
+        return offset <= matrix.lastIndex() && matrix.offset <= lastIndex();
+    }
+
+    private int lastIndex() {
+        return offset + (rows - 1) * rowStride + (columns - 1) * columnStride;
+    }
+
+    // from a contiguous matrix of the same size
+    private void copyFrom(@Nonnull NormalMatrix matrix) {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0, index = offset + i * rowStride; j < columns; j++, index += columnStride) {
+                values[index] = matrix.values[i * columns + j];
+            }
+        }
+    }
+
+    // contiguous along rows (column stride 1), which is what the kernels need
+    private boolean rowContiguous() {
+        return columnStride == 1;
+    }
+
+    @Override
+    protected double sum(int from, int to) {
+        // floats are only storage, every partial sum is a double
+        double partial = 0.0;
+        for (int i = from; i < to; i++) {
+            if (rowContiguous()) {
+                partial += Kernels.INSTANCE.sum(values, offset + i * rowStride, columns);
+            } else {
+                for (int j = 0, index = offset + i * rowStride; j < columns; j++, index += columnStride) {
+                    partial += values[index];
+                }
+            }
+        }
+        return partial;
+    }
+
+    @Override
+    void readRow(int i, int column, @Nonnull double[] target, int targetOffset, int length) {
+        int index = offset + i * rowStride + column * columnStride;
+        for (int w = 0; w < length; w++, index += columnStride) {
+            target[targetOffset + w] = values[index];
+        }
+    }
+
+    @Override
+    void writeRow(int i, int column, @Nonnull double[] source, int sourceOffset, int length) {
+        int index = offset + i * rowStride + column * columnStride;
+        for (int w = 0; w < length; w++, index += columnStride) {
+            values[index] = (float) source[sourceOffset + w];
+        }
+    }
+
+    // one pass over the arrays, without going through get()
+    @Nonnull
+    public AccurateMatrix toAccurate() {
+        double[] answer = new double[rows * columns];
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                for (int j = 0, index = offset + i * rowStride; j < columns; j++, index += columnStride) {
+                    answer[i * columns + j] = values[index];
+                }
+            }
+        });
+        return new AccurateMatrix(answer, 0, rows, columns, columns, 1);
+    }
+
+    @Override
+    public Matrix operate(@Nonnull DoubleUnaryOperator function, @Nonnull Matrix out) {
+        Kernels.Activation activation = Kernels.activation(function);
+        if (activation == null || !(out instanceof NormalMatrix) || !rowContiguous() || !((NormalMatrix) out).rowContiguous()) {
+            return super.operate(function, out);
+        }
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        NormalMatrix c = (NormalMatrix) out;
+        Activations.Accuracy accuracy = Activations.accuracy();
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Kernels.INSTANCE.activate(activation, accuracy, values, offset + i * rowStride, c.values, c.offset + i * c.rowStride, columns);
+            }
+        });
+        out.modified();
+        return out;
     }
 
     @Override
-    public Matrix set(int i, int j, double value) {
-        return null;
+    public Matrix sigmoid(@Nonnull Matrix out, @Nonnull Matrix derivative) {
+        if (!(out instanceof NormalMatrix) || !(derivative instanceof NormalMatrix) || !rowContiguous() || !((NormalMatrix) out).rowContiguous()
+                || !((NormalMatrix) derivative).rowContiguous() || !sameDimension(out) || !sameDimension(derivative)) {
+            return super.sigmoid(out, derivative);
+        }
+        NormalMatrix c = (NormalMatrix) out, d = (NormalMatrix) derivative;
+        Activations.Accuracy accuracy = Activations.accuracy();
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Kernels.INSTANCE.sigmoid(accuracy, values, offset + i * rowStride, c.values, c.offset + i * c.rowStride,
+                        d.values, d.offset + i * d.rowStride, columns);
+            }
+        });
+        out.modified();
+        derivative.modified();
+        return out;
     }
 
     @Override
-    protected Matrix template(int rows, int columns) {
-        return new NormalMatrix(rows, columns, 0.0);
+    public Matrix operate(@Nonnull Matrix matrix, @Nonnull DoubleBinaryOperator function, @Nonnull Matrix out) {
+        Kernels.Operation operation = Kernels.operation(function);
+        if (operation == null || !(matrix instanceof NormalMatrix) || !(out instanceof NormalMatrix) || !rowContiguous()
+                || !((NormalMatrix) matrix).rowContiguous() || !((NormalMatrix) out).rowContiguous()) {
+            return super.operate(matrix, function, out);
+        }
+        if (!sameDimension(matrix)) {
+            throw new MismatchDimensionException(this, matrix);
+        }
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        NormalMatrix b = (NormalMatrix) matrix;
+        NormalMatrix c = (NormalMatrix) out;
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Kernels.INSTANCE.apply(operation, values, offset + i * rowStride, b.values, b.offset + i * b.rowStride,
+                        c.values, c.offset + i * c.rowStride, columns);
+            }
+        });
+        out.modified();
+        return out;
+    }
+
+    @Override
+    public Matrix fma(@Nonnull Matrix b, @Nonnull Matrix c, @Nonnull Matrix out) {
+        if (!(b instanceof NormalMatrix) || !(c instanceof NormalMatrix) || !(out instanceof NormalMatrix) || !rowContiguous()
+                || !((NormalMatrix) b).rowContiguous() || !((NormalMatrix) c).rowContiguous() || !((NormalMatrix) out).rowContiguous()) {
+            return super.fma(b, c, out);
+        }
+        if (!sameDimension(b)) {
+            throw new MismatchDimensionException(this, b);
+        }
+        if (!sameDimension(c)) {
+            throw new MismatchDimensionException(this, c);
+        }
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        NormalMatrix x = (NormalMatrix) b;
+        NormalMatrix y = (NormalMatrix) c;
+        NormalMatrix z = (NormalMatrix) out;
+        Parallelism.forRows(rows, columns, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                Kernels.INSTANCE.fma(values, offset + i * rowStride, x.values, x.offset + i * x.rowStride,
+                        y.values, y.offset + i * y.rowStride, z.values, z.offset + i * z.rowStride, columns);
+            }
+        });
+        out.modified();
+        return out;
+    }
+
+    @Override
+    public Matrix dot(@Nonnull Matrix matrix) {
+        if (matrix instanceof LazyMatrix) {
+            return dot(((LazyMatrix) matrix).evaluate());
+        }
+        if (matrix instanceof SparseMatrix) {
+            return ((SparseMatrix) matrix).leftDot(this);
+        }
+        if (matrix instanceof AccurateMatrix && columns == matrix.rows) {
+            // the answer is stored as floats anyway, so the right side is stored as floats too and still accumulated in double
+            return dot(((AccurateMatrix) matrix).toNormal());
+        }
+        if (!(matrix instanceof NormalMatrix)) {
+            return super.dot(matrix);
+        }
+        if (columns != matrix.rows) {
+            throw new MismatchDimensionException(this, matrix);
+        }
+        NormalMatrix right = (NormalMatrix) matrix;
+        NormalMatrix answer = template(rows, matrix.columns);
+        if (right.columns == 1 && right.rowStride == 1 && rowContiguous()) {
+            // matrix-vector, each answer is one contiguous dot product
+            Parallelism.forRows(rows, columns, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    answer.values[i] = (float) Kernels.INSTANCE.dot(values, offset + i * rowStride, right.values, right.offset, columns);
+                }
+            });
+            return answer;
+        }
+        Gemm.multiply(this, right, answer);
+        return answer;
     }
 
     @Override
     public void mutableSet(int i, int j, double value) {
-        values[i][j] = (float) value;
+        values[index(i, j)] = (float) value;
+        changed();
     }
 
     @Override
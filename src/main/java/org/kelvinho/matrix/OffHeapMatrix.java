@@ -0,0 +1,77 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// a BufferMatrix in direct memory taken from an Arena, so it is never scanned or moved by the garbage collector. template()
+// allocates from the same arena, which recycles the memory of closed matrices. Using a matrix after close() throws
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class OffHeapMatrix extends BufferMatrix implements AutoCloseable {
+    private final Arena arena;
+    private final AtomicReferenceArray<ByteBuffer> memory; // the buffers behind each band, to give back on close()
+    private volatile boolean closed = false;
+
+    OffHeapMatrix(@Nonnull Arena arena, int numberOfRows, int numberOfColumns, @Nonnull ElementType type) {
+        super(numberOfRows, numberOfColumns, type);
+        this.arena = arena;
+        memory = new AtomicReferenceArray<>(numberOfBands());
+    }
+
+    @Nonnull
+    public Arena arena() {
+        return arena;
+    }
+
+    @Nonnull
+    @Override
+    Buffer createBand(int firstRow, int numberOfRows) {
+        if (closed) {
+            throw new IllegalStateException("The matrix is closed");
+        }
+        int band = firstRow / rowsPerBand;
+        ByteBuffer bytes = arena.acquire(numberOfRows * columns * type.bytes);
+        if (!memory.compareAndSet(band, null, bytes)) {
+            arena.recycle(bytes);
+            bytes = memory.get(band);
+        }
+        bytes = bytes.duplicate().order(bytes.order());
+        return type == ElementType.DOUBLE ? bytes.asDoubleBuffer() : bytes.asFloatBuffer();
+    }
+
+    @Override
+    protected Matrix template(int rows, int columns) {
+        return arena.allocate(rows, columns, type);
+    }
+
+    // an on heap copy, an AccurateMatrix for doubles and a NormalMatrix for floats
+    @Nonnull
+    public Matrix toDense() {
+        if (type == ElementType.DOUBLE) {
+            AccurateMatrix answer = new AccurateMatrix(rows, columns);
+            for (int i = 0; i < rows; i++) {
+                readRow(i, 0, answer.values, i * columns, columns);
+            }
+            return answer;
+        }
+        return new NormalMatrix(rows, columns, this::get);
+    }
+
+    // gives the memory back to the arena
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (int band = 0; band < numberOfBands(); band++) {
+            detachBand(band);
+            ByteBuffer bytes = memory.getAndSet(band, null);
+            if (bytes != null) {
+                arena.recycle(bytes);
+            }
+        }
+        arena.closed(this);
+    }
+}
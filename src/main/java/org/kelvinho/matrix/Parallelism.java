@@ -0,0 +1,144 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+// opt-in fork-join execution of the bulk operations in Matrix. Work is split by rows, and anything smaller than the threshold
+// (counted in multiply-adds or elements) stays on the calling thread
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class Parallelism {
+    private static final int SUM_BLOCK = 4096; // elements per leaf of the sum() reduction tree
+    private static volatile ForkJoinPool pool = null;
+    private static volatile long threshold = 1 << 16;
+
+    private Parallelism() {
+    }
+
+    public static void enable() {
+        enable(ForkJoinPool.commonPool());
+    }
+
+    public static void enable(@Nonnull ForkJoinPool forkJoinPool) {
+        pool = forkJoinPool;
+    }
+
+    public static void disable() {
+        pool = null;
+    }
+
+    public static boolean isEnabled() {
+        return pool != null;
+    }
+
+    public static void setThreshold(long work) {
+        if (work < 1) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+        threshold = work;
+    }
+
+    public static long threshold() {
+        return threshold;
+    }
+
+    // the pool to fork onto, null while disabled
+    @Nullable
+    static ForkJoinPool pool() {
+        return pool;
+    }
+
+    interface RowTask {
+        void run(int from, int to);
+    }
+
+    interface RowSum {
+        double sum(int from, int to);
+    }
+
+    // runs task over [0, rows), each row costing workPerRow
+    static void forRows(int rows, long workPerRow, @Nonnull RowTask task) {
+        ForkJoinPool forkJoinPool = pool;
+        long rowsPerTask = Math.max(1, threshold / Math.max(1, workPerRow));
+        if (forkJoinPool == null || rows <= rowsPerTask) {
+            task.run(0, rows);
+        } else {
+            forkJoinPool.invoke(new RowAction(0, rows, (int) Math.min(rowsPerTask, rows), task));
+        }
+    }
+
+    // the reduction tree only depends on the shape, so serial and parallel runs give bit-identical results
+    static double sum(int rows, int columns, @Nonnull RowSum rowSum) {
+        if (rows == 0 || columns == 0) {
+            return 0.0;
+        }
+        int rowsPerBlock = Math.max(1, SUM_BLOCK / columns);
+        int blocks = (rows + rowsPerBlock - 1) / rowsPerBlock;
+        SumTask task = new SumTask(0, blocks, rows, rowsPerBlock, rowSum);
+        ForkJoinPool forkJoinPool = pool;
+        if (forkJoinPool == null || (long) rows * columns <= threshold) {
+            return task.compute();
+        }
+        return forkJoinPool.invoke(task);
+    }
+
+    private static class RowAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final RowTask task;
+
+        RowAction(int from, int to, int grain, @Nonnull RowTask task) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                task.run(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RowAction(from, middle, grain, task), new RowAction(middle, to, grain, task));
+            }
+        }
+    }
+
+    private static class SumTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+        private final int fromBlock;
+        private final int toBlock;
+        private final int rows;
+        private final int rowsPerBlock;
+        private final RowSum rowSum;
+
+        SumTask(int fromBlock, int toBlock, int rows, int rowsPerBlock, @Nonnull RowSum rowSum) {
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+            this.rows = rows;
+            this.rowsPerBlock = rowsPerBlock;
+            this.rowSum = rowSum;
+        }
+
+        @Override
+        protected Double compute() {
+            if (toBlock - fromBlock == 1) {
+                return rowSum.sum(fromBlock * rowsPerBlock, Math.min(rows, (fromBlock + 1) * rowsPerBlock));
+            }
+            int middle = (fromBlock + toBlock) >>> 1;
+            SumTask left = new SumTask(fromBlock, middle, rows, rowsPerBlock, rowSum);
+            SumTask right = new SumTask(middle, toBlock, rows, rowsPerBlock, rowSum);
+            if (inForkJoinPool()) {
+                right.fork();
+                double leftSum = left.compute();
+                return leftSum + right.join();
+            }
+            return left.compute() + right.compute();
+        }
+    }
+}
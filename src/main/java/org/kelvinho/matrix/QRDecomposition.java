@@ -0,0 +1,150 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+// A = QR by Householder reflections for rows >= columns, solve() gives the least squares solution.
+// Reflectors are formed a panel of NB columns at a time; the panel's reflectors are then applied to the trailing columns in
+// blocks of CB columns, so each trailing block stays in cache for all NB reflectors instead of being streamed NB times.
+// The reflectors are stored below the diagonal (v with v[k] = 1 + x[k] / norm, Q_k = I - v v^T / v[k]), R above it
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class QRDecomposition implements Decomposition {
+    private static final int NB = 32;
+    private static final int CB = 128;
+    private final int m;
+    private final int n;
+    private final double[] qr;
+    private final double[] rDiagonal;
+
+    public QRDecomposition(@Nonnull Matrix matrix) {
+        m = matrix.numberOfRows();
+        n = matrix.numberOfColumns();
+        if (m < n) {
+            throw new IllegalArgumentException("Least squares needs at least as many rows as columns, got (" + m + ", " + n + ")");
+        }
+        qr = new double[m * n];
+        rDiagonal = new double[n];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < n; j++) {
+                qr[i * n + j] = matrix.get(i, j);
+            }
+        }
+        double[] w = new double[Math.max(CB, NB)];
+        for (int k0 = 0; k0 < n; k0 += NB) {
+            int k1 = Math.min(n, k0 + NB);
+            for (int k = k0; k < k1; k++) {
+                double norm = 0.0;
+                for (int i = k; i < m; i++) {
+                    norm = Math.hypot(norm, qr[i * n + k]);
+                }
+                if (norm != 0.0) {
+                    if (qr[k * n + k] < 0) {
+                        norm = -norm;
+                    }
+                    for (int i = k; i < m; i++) {
+                        qr[i * n + k] /= norm;
+                    }
+                    qr[k * n + k] += 1.0;
+                    reflect(k, k + 1, k1, w);
+                }
+                rDiagonal[k] = -norm;
+            }
+            for (int j0 = k1; j0 < n; j0 += CB) {
+                int j1 = Math.min(n, j0 + CB);
+                for (int k = k0; k < k1; k++) {
+                    if (rDiagonal[k] != 0.0) {
+                        reflect(k, j0, j1, w);
+                    }
+                }
+            }
+        }
+    }
+
+    // applies reflector k to columns [from, to) of rows k.., sweeping rows so the access stays contiguous
+    private void reflect(int k, int from, int to, @Nonnull double[] w) {
+        int width = to - from;
+        for (int j = 0; j < width; j++) {
+            w[j] = 0.0;
+        }
+        for (int i = k; i < m; i++) {
+            double v = qr[i * n + k];
+            int row = i * n + from;
+            for (int j = 0; j < width; j++) {
+                w[j] += v * qr[row + j];
+            }
+        }
+        double scale = -1.0 / qr[k * n + k];
+        for (int j = 0; j < width; j++) {
+            w[j] *= scale;
+        }
+        for (int i = k; i < m; i++) {
+            double v = qr[i * n + k];
+            int row = i * n + from;
+            for (int j = 0; j < width; j++) {
+                qr[row + j] += w[j] * v;
+            }
+        }
+    }
+
+    public boolean isFullRank() {
+        for (int j = 0; j < n; j++) {
+            if (Environment.doubleLooselyEquals(rDiagonal[j], 0.0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public AccurateMatrix r() {
+        return new AccurateMatrix(n, n, (i, j) -> i < j ? qr[i * n + j] : (i == j ? rDiagonal[i] : 0));
+    }
+
+    @Nonnull
+    @Override
+    public AccurateMatrix solve(@Nonnull Matrix b) {
+        if (b.numberOfRows() != m) {
+            throw new MismatchDimensionException(new AccurateMatrix(qr, 0, m, n, n, 1), b);
+        }
+        if (!isFullRank()) {
+            throw new MatrixNotInvertibleException("Matrix is rank deficient");
+        }
+        int p = b.numberOfColumns();
+        double[] x = new double[m * p];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < p; j++) {
+                x[i * p + j] = b.get(i, j);
+            }
+        }
+        // Q^T b
+        double[] w = new double[p];
+        for (int k = 0; k < n; k++) {
+            Arrays.fill(w, 0.0);
+            for (int i = k; i < m; i++) {
+                double v = qr[i * n + k];
+                for (int j = 0; j < p; j++) {
+                    w[j] += v * x[i * p + j];
+                }
+            }
+            double scale = -1.0 / qr[k * n + k];
+            for (int i = k; i < m; i++) {
+                double v = qr[i * n + k] * scale;
+                for (int j = 0; j < p; j++) {
+                    x[i * p + j] += w[j] * v;
+                }
+            }
+        }
+        // R x = Q^T b
+        for (int i = n - 1; i >= 0; i--) {
+            for (int k = i + 1; k < n; k++) {
+                double factor = qr[i * n + k];
+                for (int j = 0; j < p; j++) {
+                    x[i * p + j] -= factor * x[k * p + j];
+                }
+            }
+            for (int j = 0; j < p; j++) {
+                x[i * p + j] /= rDiagonal[i];
+            }
+        }
+        return new AccurateMatrix(x, 0, n, p, p, 1);
+    }
+}
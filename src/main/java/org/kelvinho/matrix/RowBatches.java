@@ -0,0 +1,296 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+// the rows of a matrix, a matrix file or a stream of double[] rows, batchRows rows at a time (the last batch may have fewer).
+// Each batch is a dense matrix over one buffer that the next batch overwrites, so memory stays at a single batch however long
+// the input is: clone() a batch to keep it past next(). dot() / gemm() against a resident right hand side give the batches of
+// the product the same way, so an unbounded stream can be scored with constant memory, e.g.
+//   MatrixIO.batches(input, 256).gemm(weights, new Epilogue().bias(b).sigmoid()).writeTo(writer)
+// IOExceptions from a channel come out of hasNext() / next() as UncheckedIOException, writeTo() and collect() unwrap them
+@SuppressWarnings({"unused", "WeakerAccess"})
+public abstract class RowBatches implements Iterator<Matrix>, Closeable {
+    final int columns;
+    final int batchRows;
+    @Nullable
+    private Matrix next = null;
+    private boolean exhausted = false;
+
+    RowBatches(int numberOfColumns, int batchRows) {
+        if (batchRows <= 0) {
+            throw new IllegalArgumentException("Batches need at least 1 row, got " + batchRows);
+        }
+        this.columns = numberOfColumns;
+        this.batchRows = batchRows;
+    }
+
+    // batches are views of matrix when it's dense and copies through a single buffer otherwise
+    @Nonnull
+    public static RowBatches of(@Nonnull Matrix matrix, int batchRows) {
+        return new MatrixBatches(matrix instanceof LazyMatrix ? ((LazyMatrix) matrix).evaluate() : matrix, batchRows);
+    }
+
+    // every row must have numberOfColumns elements, the arrays are copied so the stream may reuse them
+    @Nonnull
+    public static RowBatches of(@Nonnull Spliterator<double[]> rows, int numberOfColumns, int batchRows) {
+        return new SpliteratorBatches(rows, numberOfColumns, batchRows);
+    }
+
+    // see MatrixIO.batches(), AccurateMatrix batches for double files and NormalMatrix batches for float files
+    @Nonnull
+    static RowBatches of(@Nonnull ReadableByteChannel channel, int batchRows) throws IOException {
+        MatrixIO.Header header = MatrixIO.readHeader(channel);
+        return new ChannelBatches(channel, header, batchRows);
+    }
+
+    public int numberOfColumns() {
+        return columns;
+    }
+
+    public int batchRows() {
+        return batchRows;
+    }
+
+    // the next batch, or null once there are no rows left
+    @Nullable
+    abstract Matrix read() throws IOException;
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !exhausted) {
+            try {
+                next = read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            exhausted = next == null;
+        }
+        return next != null;
+    }
+
+    @Override
+    public Matrix next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Matrix batch = next;
+        next = null;
+        return batch;
+    }
+
+    // the batches of this . matrix
+    @Nonnull
+    public RowBatches dot(@Nonnull Matrix matrix) {
+        return gemm(matrix, new Epilogue());
+    }
+
+    // the batches of gemm(matrix, epilogue), each one computed into the same output buffer. A bias has to be a row, the batches
+    // don't have a fixed number of rows for a column to line up with, and beta has to be 0 since the buffer only holds the
+    // previous batch's answer
+    @Nonnull
+    public RowBatches gemm(@Nonnull Matrix matrix, @Nonnull Epilogue epilogue) {
+        if (matrix.rows != columns) {
+            throw new IllegalArgumentException("Expected a right hand side of " + columns + " rows, got " + matrix.rows);
+        }
+        if (epilogue.beta != 0.0) {
+            throw new IllegalArgumentException("Streamed products have no previous output to accumulate, beta was " + epilogue.beta);
+        }
+        if (epilogue.hasColumnBias()) {
+            throw new IllegalArgumentException("Streamed products need a row bias, a column can't line up with every batch");
+        }
+        return new ProductBatches(this, matrix, epilogue);
+    }
+
+    // appends every remaining row to writer
+    public void writeTo(@Nonnull MatrixWriter writer) throws IOException {
+        try {
+            while (hasNext()) {
+                writer.writeRows(next());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // every remaining row in one AccurateMatrix, for when the result does fit after all
+    @Nonnull
+    public AccurateMatrix collect() throws IOException {
+        try {
+            return AccurateMatrix.builder(columns, batchRows).addRows(this).build();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    private static class MatrixBatches extends RowBatches {
+        private final Matrix matrix;
+        @Nullable
+        private double[] buffer = null;
+        private int row = 0;
+
+        MatrixBatches(@Nonnull Matrix matrix, int batchRows) {
+            super(matrix.columns, batchRows);
+            this.matrix = matrix;
+        }
+
+        @Nullable
+        @Override
+        Matrix read() {
+            if (row >= matrix.rows) {
+                return null;
+            }
+            int count = Math.min(batchRows, matrix.rows - row);
+            int first = row;
+            row += count;
+            if (matrix instanceof AccurateMatrix) {
+                return ((AccurateMatrix) matrix).subMatrix(first, 0, count, columns);
+            }
+            if (matrix instanceof NormalMatrix) {
+                return ((NormalMatrix) matrix).subMatrix(first, 0, count, columns);
+            }
+            if (buffer == null) {
+                buffer = new double[batchRows * columns];
+            }
+            for (int i = 0; i < count; i++) {
+                matrix.readRow(first + i, 0, buffer, i * columns, columns);
+            }
+            return new AccurateMatrix(buffer, 0, count, columns, columns, 1);
+        }
+    }
+
+    private static class SpliteratorBatches extends RowBatches implements Consumer<double[]> {
+        private final Spliterator<double[]> rows;
+        private final double[] buffer;
+        private int filled = 0;
+
+        SpliteratorBatches(@Nonnull Spliterator<double[]> rows, int numberOfColumns, int batchRows) {
+            super(numberOfColumns, batchRows);
+            this.rows = rows;
+            buffer = new double[batchRows * numberOfColumns];
+        }
+
+        @Nullable
+        @Override
+        Matrix read() {
+            filled = 0;
+            while (filled < batchRows && rows.tryAdvance(this)) {
+                filled++;
+            }
+            return filled == 0 ? null : new AccurateMatrix(buffer, 0, filled, columns, columns, 1);
+        }
+
+        @Override
+        public void accept(@Nonnull double[] row) {
+            if (row.length != columns) {
+                throw new IllegalArgumentException("Expected rows of " + columns + " columns, got " + row.length);
+            }
+            System.arraycopy(row, 0, buffer, filled * columns, columns);
+        }
+    }
+
+    private static class ChannelBatches extends RowBatches {
+        private final ReadableByteChannel channel;
+        private final ElementType type;
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(MatrixIO.CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        @Nullable
+        private double[] doubles = null;
+        @Nullable
+        private float[] floats = null;
+        private int remaining;
+
+        ChannelBatches(@Nonnull ReadableByteChannel channel, @Nonnull MatrixIO.Header header, int batchRows) {
+            super(header.columns, batchRows);
+            if ((long) batchRows * header.columns > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("A batch of " + batchRows + " rows of " + header.columns + " columns doesn't fit in an array");
+            }
+            this.channel = channel;
+            type = header.type;
+            remaining = header.rows;
+        }
+
+        @Nullable
+        @Override
+        Matrix read() throws IOException {
+            if (remaining == 0) {
+                return null;
+            }
+            int count = Math.min(batchRows, remaining);
+            remaining -= count;
+            if (type == ElementType.DOUBLE) {
+                if (doubles == null) {
+                    doubles = new double[batchRows * columns];
+                }
+                MatrixIO.readValues(channel, bytes, doubles, count * columns);
+                return new AccurateMatrix(doubles, 0, count, columns, columns, 1);
+            }
+            if (floats == null) {
+                floats = new float[batchRows * columns];
+            }
+            MatrixIO.readValues(channel, bytes, floats, count * columns);
+            return new NormalMatrix(floats, 0, count, columns, columns, 1);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // the right hand side is converted once to the element type of the batches, so the dense gemm() paths never convert it per
+    // batch, and the output buffer is made on the first batch to match
+    private static class ProductBatches extends RowBatches {
+        private final RowBatches source;
+        private final Epilogue epilogue;
+        private Matrix matrix;
+        @Nullable
+        private Matrix out = null;
+
+        ProductBatches(@Nonnull RowBatches source, @Nonnull Matrix matrix, @Nonnull Epilogue epilogue) {
+            super(matrix.columns, source.batchRows);
+            this.source = source;
+            this.epilogue = epilogue;
+            this.matrix = matrix instanceof LazyMatrix ? ((LazyMatrix) matrix).evaluate() : matrix;
+        }
+
+        @Nullable
+        @Override
+        Matrix read() {
+            if (!source.hasNext()) {
+                return null;
+            }
+            Matrix batch = source.next();
+            if (out == null) {
+                if (batch instanceof NormalMatrix) {
+                    matrix = matrix instanceof AccurateMatrix ? ((AccurateMatrix) matrix).toNormal() : matrix;
+                    out = new NormalMatrix(batchRows, columns);
+                } else {
+                    matrix = matrix instanceof NormalMatrix ? ((NormalMatrix) matrix).toAccurate() : matrix;
+                    out = new AccurateMatrix(batchRows, columns);
+                }
+            }
+            Matrix target = out instanceof NormalMatrix
+                    ? ((NormalMatrix) out).subMatrix(0, 0, batch.rows, columns) : ((AccurateMatrix) out).subMatrix(0, 0, batch.rows, columns);
+            return batch.gemm(matrix, epilogue, target);
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+}
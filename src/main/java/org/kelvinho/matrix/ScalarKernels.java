@@ -0,0 +1,211 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+
+// portable fallback, the reductions keep four independent accumulators so they aren't bound by the latency of one add chain
+@SuppressWarnings({"unused", "WeakerAccess"})
+final class ScalarKernels extends Kernels {
+    @Override
+    String name() {
+        return "scalar";
+    }
+
+    @Override
+    void apply(@Nonnull Operation operation, @Nonnull double[] a, int aOffset, @Nonnull double[] b, int bOffset,
+               @Nonnull double[] out, int outOffset, int length) {
+        switch (operation) {
+            case ADD:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = a[aOffset + i] + b[bOffset + i];
+                }
+                break;
+            case SUBTRACT:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = a[aOffset + i] - b[bOffset + i];
+                }
+                break;
+            case MULTIPLY:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = a[aOffset + i] * b[bOffset + i];
+                }
+                break;
+            case DIVIDE:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = a[aOffset + i] / b[bOffset + i];
+                }
+                break;
+        }
+    }
+
+    @Override
+    void apply(@Nonnull Operation operation, @Nonnull float[] a, int aOffset, @Nonnull float[] b, int bOffset,
+               @Nonnull float[] out, int outOffset, int length) {
+        switch (operation) {
+            case ADD:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = a[aOffset + i] + b[bOffset + i];
+                }
+                break;
+            case SUBTRACT:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = a[aOffset + i] - b[bOffset + i];
+                }
+                break;
+            case MULTIPLY:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = a[aOffset + i] * b[bOffset + i];
+                }
+                break;
+            case DIVIDE:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = a[aOffset + i] / b[bOffset + i];
+                }
+                break;
+        }
+    }
+
+    @Override
+    void fma(@Nonnull double[] a, int aOffset, @Nonnull double[] b, int bOffset, @Nonnull double[] c, int cOffset,
+             @Nonnull double[] out, int outOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = a[aOffset + i] * b[bOffset + i] + c[cOffset + i];
+        }
+    }
+
+    @Override
+    void fma(@Nonnull float[] a, int aOffset, @Nonnull float[] b, int bOffset, @Nonnull float[] c, int cOffset,
+             @Nonnull float[] out, int outOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            out[outOffset + i] = a[aOffset + i] * b[bOffset + i] + c[cOffset + i];
+        }
+    }
+
+    @Override
+    void activate(@Nonnull Activation activation, @Nonnull Activations.Accuracy accuracy, @Nonnull double[] a, int aOffset,
+                  @Nonnull double[] out, int outOffset, int length) {
+        switch (activation) {
+            case EXP:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = Activations.exp(a[aOffset + i], accuracy);
+                }
+                break;
+            case SIGMOID:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = Activations.sigmoid(a[aOffset + i], accuracy);
+                }
+                break;
+            case TANH:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = Activations.tanh(a[aOffset + i], accuracy);
+                }
+                break;
+        }
+    }
+
+    // evaluated in double and rounded once
+    @Override
+    void activate(@Nonnull Activation activation, @Nonnull Activations.Accuracy accuracy, @Nonnull float[] a, int aOffset,
+                  @Nonnull float[] out, int outOffset, int length) {
+        switch (activation) {
+            case EXP:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = (float) Activations.exp(a[aOffset + i], accuracy);
+                }
+                break;
+            case SIGMOID:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = (float) Activations.sigmoid(a[aOffset + i], accuracy);
+                }
+                break;
+            case TANH:
+                for (int i = 0; i < length; i++) {
+                    out[outOffset + i] = (float) Activations.tanh(a[aOffset + i], accuracy);
+                }
+                break;
+        }
+    }
+
+    @Override
+    void sigmoid(@Nonnull Activations.Accuracy accuracy, @Nonnull double[] a, int aOffset, @Nonnull double[] out, int outOffset,
+                 @Nonnull double[] derivative, int derivativeOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            double s = Activations.sigmoid(a[aOffset + i], accuracy);
+            out[outOffset + i] = s;
+            derivative[derivativeOffset + i] = s * (1 - s);
+        }
+    }
+
+    @Override
+    void sigmoid(@Nonnull Activations.Accuracy accuracy, @Nonnull float[] a, int aOffset, @Nonnull float[] out, int outOffset,
+                 @Nonnull float[] derivative, int derivativeOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            double s = Activations.sigmoid(a[aOffset + i], accuracy);
+            out[outOffset + i] = (float) s;
+            derivative[derivativeOffset + i] = (float) (s * (1 - s));
+        }
+    }
+
+    @Override
+    double sum(@Nonnull double[] a, int offset, int length) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[offset + i];
+            s1 += a[offset + i + 1];
+            s2 += a[offset + i + 2];
+            s3 += a[offset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[offset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    double sum(@Nonnull float[] a, int offset, int length) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[offset + i];
+            s1 += a[offset + i + 1];
+            s2 += a[offset + i + 2];
+            s3 += a[offset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[offset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    double dot(@Nonnull double[] a, int aOffset, @Nonnull double[] b, int bOffset, int length) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    double dot(@Nonnull float[] a, int aOffset, @Nonnull float[] b, int bOffset, int length) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += (double) a[aOffset + i] * b[bOffset + i];
+            s1 += (double) a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += (double) a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += (double) a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += (double) a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
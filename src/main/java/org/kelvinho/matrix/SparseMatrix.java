@@ -0,0 +1,520 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+// compressed sparse row storage: the non zeros of row i are values[rowPointers[i] until rowPointers[i + 1]], sorted by column.
+// The transpose is built as another CSR matrix, which is the compressed sparse column form of the original.
+// Operations that can't keep the sparsity (template(), operate() with f(0) != 0, products that fill in) fall back to AccurateMatrix
+@SuppressWarnings({"unused", "WeakerAccess"})
+public class SparseMatrix extends Matrix {
+    private static final double DENSE_FILL = 0.25; // products with more non zeros than this fraction are returned dense
+    int[] rowPointers;
+    int[] columnIndices;
+    double[] values;
+
+    public SparseMatrix(int numberOfRows, int numberOfColumns) {
+        this(numberOfRows, numberOfColumns, new int[numberOfRows + 1], new int[0], new double[0]);
+    }
+
+    SparseMatrix(int numberOfRows, int numberOfColumns, @Nonnull int[] rowPointers, @Nonnull int[] columnIndices, @Nonnull double[] values) {
+        rows = numberOfRows;
+        columns = numberOfColumns;
+        this.rowPointers = rowPointers;
+        this.columnIndices = columnIndices;
+        this.values = values;
+    }
+
+    public static Builder builder(int numberOfRows, int numberOfColumns) {
+        return new Builder(numberOfRows, numberOfColumns);
+    }
+
+    public static SparseMatrix of(@Nonnull Matrix matrix) {
+        Builder builder = builder(matrix.rows, matrix.columns);
+        for (int i = 0; i < matrix.rows; i++) {
+            for (int j = 0; j < matrix.columns; j++) {
+                builder.add(i, j, matrix.get(i, j));
+            }
+        }
+        return builder.build();
+    }
+
+    public int nonZeros() {
+        return rowPointers[rows];
+    }
+
+    private int find(int i, int j) { // position of (i, j) in the arrays, or -(insertion point) - 1
+        if (i < 0 || i >= rows || j < 0 || j >= columns) {
+            throw new IndexOutOfBoundsException("(" + i + ", " + j + ") is outside of (" + rows + ", " + columns + ")");
+        }
+        return Arrays.binarySearch(columnIndices, rowPointers[i], rowPointers[i + 1], j);
+    }
+
+    @Override
+    public double get(int i, int j) {
+        int position = find(i, j);
+        return position >= 0 ? values[position] : 0.0;
+    }
+
+    @Override
+    protected Matrix template(int rows, int columns) {
+        return new AccurateMatrix(rows, columns);
+    }
+
+    // O(nonZeros()) when a new non zero has to be inserted, use a Builder for bulk construction
+    @Override
+    public void mutableSet(int i, int j, double value) {
+        int position = find(i, j);
+        if (position >= 0) {
+            values[position] = value;
+        } else if (value != 0.0) {
+            position = -position - 1;
+            int size = nonZeros();
+            int[] newColumnIndices = new int[size + 1];
+            double[] newValues = new double[size + 1];
+            System.arraycopy(columnIndices, 0, newColumnIndices, 0, position);
+            System.arraycopy(values, 0, newValues, 0, position);
+            newColumnIndices[position] = j;
+            newValues[position] = value;
+            System.arraycopy(columnIndices, position, newColumnIndices, position + 1, size - position);
+            System.arraycopy(values, position, newValues, position + 1, size - position);
+            columnIndices = newColumnIndices;
+            values = newValues;
+            for (int row = i + 1; row <= rows; row++) {
+                rowPointers[row]++;
+            }
+        }
+        modified();
+    }
+
+    // transpose() already builds a new matrix each time
+    @Override
+    public SparseMatrix transposeCopy() {
+        return transpose();
+    }
+
+    @Override
+    public SparseMatrix transpose() {
+        int size = nonZeros();
+        int[] newRowPointers = new int[columns + 1];
+        int[] newColumnIndices = new int[size];
+        double[] newValues = new double[size];
+        for (int k = 0; k < size; k++) {
+            newRowPointers[columnIndices[k] + 1]++;
+        }
+        for (int j = 0; j < columns; j++) {
+            newRowPointers[j + 1] += newRowPointers[j];
+        }
+        int[] next = Arrays.copyOf(newRowPointers, columns);
+        // rows are visited in order, so every new row comes out sorted by column
+        for (int i = 0; i < rows; i++) {
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                int target = next[columnIndices[k]]++;
+                newColumnIndices[target] = i;
+                newValues[target] = values[k];
+            }
+        }
+        return new SparseMatrix(columns, rows, newRowPointers, newColumnIndices, newValues);
+    }
+
+    @Override
+    public double sum() {
+        double sum = 0.0;
+        for (int k = 0, size = nonZeros(); k < size; k++) {
+            sum += values[k];
+        }
+        return sum;
+    }
+
+    @Override
+    public Matrix dot(@Nonnull Matrix matrix) {
+        if (columns != matrix.rows) {
+            throw new MismatchDimensionException(this, matrix);
+        }
+        if (matrix instanceof SparseMatrix) {
+            return dot((SparseMatrix) matrix);
+        }
+        if (matrix instanceof LazyMatrix) {
+            matrix = ((LazyMatrix) matrix).evaluate();
+        }
+        // each non zero (i, k) adds a scaled row k of the right hand side into row i of the answer
+        AccurateMatrix answer = new AccurateMatrix(rows, matrix.columns);
+        Matrix right = matrix;
+        int n = matrix.columns;
+        Parallelism.forRows(rows, (long) n * Math.max(1, nonZeros() / Math.max(1, rows)), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int target = i * n;
+                for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                    double value = values[k];
+                    int row = columnIndices[k];
+                    if (right instanceof AccurateMatrix) {
+                        AccurateMatrix dense = (AccurateMatrix) right;
+                        int source = dense.offset + row * dense.rowStride;
+                        for (int j = 0; j < n; j++) {
+                            answer.values[target + j] += value * dense.values[source + j * dense.columnStride];
+                        }
+                    } else {
+                        for (int j = 0; j < n; j++) {
+                            answer.values[target + j] += value * right.get(row, j);
+                        }
+                    }
+                }
+            }
+        });
+        return answer;
+    }
+
+    // Gustavson's row by row product: a symbolic pass counts the non zeros of each answer row, which decides between sparse and
+    // dense storage before any value is computed
+    private Matrix dot(@Nonnull SparseMatrix matrix) {
+        int n = matrix.columns;
+        int[] marker = new int[n];
+        Arrays.fill(marker, -1);
+        int[] newRowPointers = new int[rows + 1];
+        for (int i = 0; i < rows; i++) {
+            int count = 0;
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                int row = columnIndices[k];
+                for (int w = matrix.rowPointers[row]; w < matrix.rowPointers[row + 1]; w++) {
+                    int column = matrix.columnIndices[w];
+                    if (marker[column] != i) {
+                        marker[column] = i;
+                        count++;
+                    }
+                }
+            }
+            newRowPointers[i + 1] = newRowPointers[i] + count;
+        }
+        int size = newRowPointers[rows];
+        if (size > DENSE_FILL * rows * n) {
+            AccurateMatrix answer = new AccurateMatrix(rows, n);
+            for (int i = 0; i < rows; i++) {
+                for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                    double value = values[k];
+                    int row = columnIndices[k];
+                    for (int w = matrix.rowPointers[row]; w < matrix.rowPointers[row + 1]; w++) {
+                        answer.values[i * n + matrix.columnIndices[w]] += value * matrix.values[w];
+                    }
+                }
+            }
+            return answer;
+        }
+        int[] newColumnIndices = new int[size];
+        double[] newValues = new double[size];
+        double[] accumulator = new double[n];
+        Arrays.fill(marker, -1);
+        for (int i = 0; i < rows; i++) {
+            int start = newRowPointers[i];
+            int end = start;
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                double value = values[k];
+                int row = columnIndices[k];
+                for (int w = matrix.rowPointers[row]; w < matrix.rowPointers[row + 1]; w++) {
+                    int column = matrix.columnIndices[w];
+                    if (marker[column] != i) {
+                        marker[column] = i;
+                        newColumnIndices[end++] = column;
+                        accumulator[column] = 0.0;
+                    }
+                    accumulator[column] += value * matrix.values[w];
+                }
+            }
+            Arrays.sort(newColumnIndices, start, end);
+            for (int k = start; k < end; k++) {
+                newValues[k] = accumulator[newColumnIndices[k]];
+            }
+        }
+        return new SparseMatrix(rows, n, newRowPointers, newColumnIndices, newValues);
+    }
+
+    // answer = matrix * this, for dense matrices on the left
+    Matrix leftDot(@Nonnull AccurateMatrix matrix) {
+        if (matrix.columns != rows) {
+            throw new MismatchDimensionException(matrix, this);
+        }
+        AccurateMatrix answer = new AccurateMatrix(matrix.rows, columns);
+        int n = columns;
+        Parallelism.forRows(matrix.rows, (long) nonZeros(), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int target = i * n;
+                for (int k = 0; k < rows; k++) {
+                    double value = matrix.values[matrix.offset + i * matrix.rowStride + k * matrix.columnStride];
+                    if (value != 0.0) {
+                        for (int w = rowPointers[k]; w < rowPointers[k + 1]; w++) {
+                            answer.values[target + columnIndices[w]] += value * values[w];
+                        }
+                    }
+                }
+            }
+        });
+        return answer;
+    }
+
+    // the same for floats on the left, each row is summed in double and rounded once
+    Matrix leftDot(@Nonnull NormalMatrix matrix) {
+        if (matrix.columns != rows) {
+            throw new MismatchDimensionException(matrix, this);
+        }
+        NormalMatrix answer = new NormalMatrix(matrix.rows, columns);
+        int n = columns;
+        Parallelism.forRows(matrix.rows, (long) nonZeros(), (from, to) -> {
+            double[] row = new double[n];
+            for (int i = from; i < to; i++) {
+                Arrays.fill(row, 0.0);
+                for (int k = 0; k < rows; k++) {
+                    double value = matrix.values[matrix.offset + i * matrix.rowStride + k * matrix.columnStride];
+                    if (value != 0.0) {
+                        for (int w = rowPointers[k]; w < rowPointers[k + 1]; w++) {
+                            row[columnIndices[w]] += value * values[w];
+                        }
+                    }
+                }
+                for (int j = 0; j < n; j++) {
+                    answer.values[i * n + j] = (float) row[j];
+                }
+            }
+        });
+        return answer;
+    }
+
+    @Override
+    public Matrix operate(@Nullable DoubleUnaryOperator function) {
+        if (function == null) {
+            return this;
+        }
+        if (function.applyAsDouble(0.0) != 0.0) {
+            return super.operate(function);
+        }
+        int size = nonZeros();
+        double[] newValues = new double[size];
+        for (int k = 0; k < size; k++) {
+            newValues[k] = function.applyAsDouble(values[k]);
+        }
+        return new SparseMatrix(rows, columns, rowPointers.clone(), Arrays.copyOf(columnIndices, size), newValues);
+    }
+
+    // a sparse out takes the new pattern in one go (see assign()), anything else is written element by element as usual
+    @Override
+    public Matrix operate(@Nonnull DoubleUnaryOperator function, @Nonnull Matrix out) {
+        if (out == this && function.applyAsDouble(0.0) == 0.0) {
+            for (int k = 0, size = nonZeros(); k < size; k++) {
+                values[k] = function.applyAsDouble(values[k]);
+            }
+            modified();
+            return this;
+        }
+        if (out instanceof SparseMatrix) {
+            if (!sameDimension(out)) {
+                throw new MismatchDimensionException(this, out);
+            }
+            return ((SparseMatrix) out).assign(operate(function));
+        }
+        return super.operate(function, out);
+    }
+
+    // zeros on both sides stay zero when f(0, 0) == 0, so only the union of the two patterns is visited
+    @Override
+    public Matrix operate(@Nonnull Matrix matrix, @Nonnull DoubleBinaryOperator function) {
+        if (!(matrix instanceof SparseMatrix) || function.applyAsDouble(0.0, 0.0) != 0.0) {
+            return super.operate(matrix, function);
+        }
+        if (!sameDimension(matrix)) {
+            throw new MismatchDimensionException(this, matrix);
+        }
+        return merge((SparseMatrix) matrix, function);
+    }
+
+    // addInPlace(), add(matrix, out) and the rest end up here, into a sparse out they merge the patterns like operate() above
+    @Override
+    public Matrix operate(@Nonnull Matrix matrix, @Nonnull DoubleBinaryOperator function, @Nonnull Matrix out) {
+        if (!(out instanceof SparseMatrix)) {
+            return super.operate(matrix, function, out);
+        }
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        return ((SparseMatrix) out).assign(operate(matrix, function));
+    }
+
+    @Override
+    public Matrix broadcast(@Nonnull Matrix vector, @Nonnull DoubleBinaryOperator function, @Nonnull Matrix out) {
+        if (!(out instanceof SparseMatrix)) {
+            return super.broadcast(vector, function, out);
+        }
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        return ((SparseMatrix) out).assign(broadcast(vector, function));
+    }
+
+    @Override
+    public Matrix fma(@Nonnull Matrix b, @Nonnull Matrix c, @Nonnull Matrix out) {
+        if (!(out instanceof SparseMatrix)) {
+            return super.fma(b, c, out);
+        }
+        if (!sameDimension(out)) {
+            throw new MismatchDimensionException(this, out);
+        }
+        return ((SparseMatrix) out).assign(fma(b, c));
+    }
+
+    @Nonnull
+    private SparseMatrix merge(@Nonnull SparseMatrix other, @Nonnull DoubleBinaryOperator function) {
+        Builder builder = builder(rows, columns);
+        for (int i = 0; i < rows; i++) {
+            int a = rowPointers[i], aEnd = rowPointers[i + 1];
+            int b = other.rowPointers[i], bEnd = other.rowPointers[i + 1];
+            while (a < aEnd || b < bEnd) {
+                int aColumn = a < aEnd ? columnIndices[a] : Integer.MAX_VALUE;
+                int bColumn = b < bEnd ? other.columnIndices[b] : Integer.MAX_VALUE;
+                if (aColumn == bColumn) {
+                    builder.add(i, aColumn, function.applyAsDouble(values[a++], other.values[b++]));
+                } else if (aColumn < bColumn) {
+                    builder.add(i, aColumn, function.applyAsDouble(values[a++], 0.0));
+                } else {
+                    builder.add(i, bColumn, function.applyAsDouble(0.0, other.values[b++]));
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    // replaces the whole pattern with result's, which was computed without reading this as it changed. mutableSet() would shift
+    // the arrays on every new non zero and isn't safe from several threads, so results for a sparse out are never written
+    // element by element
+    @Nonnull
+    SparseMatrix assign(@Nonnull Matrix result) {
+        SparseMatrix sparse = result instanceof SparseMatrix ? (SparseMatrix) result : of(result);
+        if (sparse != this) {
+            rowPointers = sparse.rowPointers;
+            columnIndices = sparse.columnIndices;
+            values = sparse.values;
+        }
+        modified();
+        return this;
+    }
+
+    public AccurateMatrix toDense() {
+        AccurateMatrix answer = new AccurateMatrix(rows, columns);
+        for (int i = 0; i < rows; i++) {
+            for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                answer.values[i * columns + columnIndices[k]] = values[k];
+            }
+        }
+        return answer;
+    }
+
+    @Override
+    public boolean equals(@Nonnull Object object) {
+        if (object instanceof SparseMatrix) {
+            SparseMatrix matrix = (SparseMatrix) object;
+            if (!sameDimension(matrix)) {
+                return false;
+            }
+            // everything outside both patterns is zero on both sides
+            for (int i = 0; i < rows; i++) {
+                for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+                    if (!Environment.doubleLooselyEquals(values[k], matrix.get(i, columnIndices[k]))) {
+                        return false;
+                    }
+                }
+                for (int k = matrix.rowPointers[i]; k < matrix.rowPointers[i + 1]; k++) {
+                    if (!Environment.doubleLooselyEquals(matrix.values[k], get(i, matrix.columnIndices[k]))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    // collects (row, column, value) triplets in any order, duplicates are summed and zeros dropped by build()
+    public static class Builder {
+        private final int rows;
+        private final int columns;
+        private int size = 0;
+        private int[] rowIndices = new int[16];
+        private int[] columnIndices = new int[16];
+        private double[] values = new double[16];
+
+        private Builder(int rows, int columns) {
+            this.rows = rows;
+            this.columns = columns;
+        }
+
+        public Builder add(int i, int j, double value) {
+            if (i < 0 || i >= rows || j < 0 || j >= columns) {
+                throw new IndexOutOfBoundsException("(" + i + ", " + j + ") is outside of (" + rows + ", " + columns + ")");
+            }
+            if (value == 0.0) {
+                return this;
+            }
+            if (size == values.length) {
+                rowIndices = Arrays.copyOf(rowIndices, size * 2);
+                columnIndices = Arrays.copyOf(columnIndices, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            rowIndices[size] = i;
+            columnIndices[size] = j;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        public SparseMatrix build() {
+            // bucket by row, then sort each row by column and merge duplicates
+            int[] rowPointers = new int[rows + 1];
+            for (int k = 0; k < size; k++) {
+                rowPointers[rowIndices[k] + 1]++;
+            }
+            for (int i = 0; i < rows; i++) {
+                rowPointers[i + 1] += rowPointers[i];
+            }
+            int[] next = Arrays.copyOf(rowPointers, rows);
+            long[] entries = new long[size]; // column in the high bits, position in the low bits, so sorting keeps insertion order
+            int[] order = new int[size];
+            for (int k = 0; k < size; k++) {
+                order[next[rowIndices[k]]++] = k;
+            }
+            int[] newColumnIndices = new int[size];
+            double[] newValues = new double[size];
+            int written = 0;
+            int[] newRowPointers = new int[rows + 1];
+            for (int i = 0; i < rows; i++) {
+                int start = rowPointers[i], end = rowPointers[i + 1];
+                for (int k = start; k < end; k++) {
+                    entries[k] = ((long) columnIndices[order[k]] << 32) | order[k];
+                }
+                Arrays.sort(entries, start, end);
+                for (int k = start; k < end; k++) {
+                    int column = (int) (entries[k] >>> 32);
+                    double value = values[(int) entries[k]];
+                    if (written > newRowPointers[i] && newColumnIndices[written - 1] == column) {
+                        newValues[written - 1] += value;
+                    } else {
+                        newColumnIndices[written] = column;
+                        newValues[written] = value;
+                        written++;
+                    }
+                }
+                // duplicates may have cancelled out
+                int kept = newRowPointers[i];
+                for (int k = newRowPointers[i]; k < written; k++) {
+                    if (newValues[k] != 0.0) {
+                        newColumnIndices[kept] = newColumnIndices[k];
+                        newValues[kept] = newValues[k];
+                        kept++;
+                    }
+                }
+                written = kept;
+                newRowPointers[i + 1] = written;
+            }
+            return new SparseMatrix(rows, columns, newRowPointers, Arrays.copyOf(newColumnIndices, written), Arrays.copyOf(newValues, written));
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// opt-in Strassen-Winograd multiplication for large square AccurateMatrix products: 7 half size products and 15 additions per
+// level instead of 8 products, recursing until the blocks are at most cutoff() wide and Gemm takes over. n is padded with zeros
+// to base * 2^levels with the smallest base <= cutoff, which wastes less than padding to a power of two. With Parallelism
+// enabled the 7 products of the top FORK_LEVELS levels run as fork-join tasks, each with its own 13 half size blocks. Below that
+// (and everywhere without Parallelism) the recursion is sequential and scheduled so that the answer's quadrants hold the
+// partial sums, needing only 3 scratch blocks per level that all sibling products share, about 4 h^2 in all instead of 13 h^2
+// per node.
+// The error is bounded normwise rather than elementwise, so small elements of the answer can lose relative accuracy; errorBound()
+// is the worst case and relativeError() / residual() measure a given workload before opting in
+@SuppressWarnings({"unused", "WeakerAccess"})
+public final class Strassen {
+    private static final int FORK_LEVELS = 1; // 7 tasks, a second level would be 49 and hold 7 times the top level's blocks
+    private static volatile int cutoff = 512;
+
+    private Strassen() {
+    }
+
+    public static void setCutoff(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Cutoff must be positive");
+        }
+        cutoff = size;
+    }
+
+    public static int cutoff() {
+        return cutoff;
+    }
+
+    // a . b for square a and b of the same size, anything else goes to dot()
+    @Nonnull
+    public static AccurateMatrix multiply(@Nonnull AccurateMatrix a, @Nonnull AccurateMatrix b) {
+        int n = a.rows;
+        if (a.columns != n || b.rows != n || b.columns != n) {
+            if (a.columns != b.rows) {
+                throw new MismatchDimensionException(a, b);
+            }
+            return (AccurateMatrix) a.dot(b);
+        }
+        int base = n;
+        int levels = 0;
+        int threshold = cutoff;
+        while (base > threshold) {
+            base = (base + 1) / 2;
+            levels++;
+        }
+        if (levels == 0) {
+            return (AccurateMatrix) a.dot(b);
+        }
+        int padded = base << levels;
+        AccurateMatrix left = pad(a, padded);
+        AccurateMatrix right = pad(b, padded);
+        AccurateMatrix answer = new AccurateMatrix(new double[padded * padded], 0, padded, padded, padded, 1);
+        ForkJoinPool pool = Parallelism.pool();
+        if (pool == null) {
+            sequential(left, right, answer, levels, scratch(padded, levels));
+        } else {
+            pool.invoke(new Product(left, right, answer, levels, 0));
+        }
+        return padded == n ? answer : new AccurateMatrix(n, n, answer::get);
+    }
+
+    @Nonnull
+    private static AccurateMatrix pad(@Nonnull AccurateMatrix matrix, int size) {
+        if (matrix.rows == size && matrix.columnStride == 1) {
+            return matrix;
+        }
+        double[] values = new double[size * size];
+        for (int i = 0; i < matrix.rows; i++) {
+            for (int j = 0; j < matrix.columns; j++) {
+                values[i * size + j] = matrix.get(i, j);
+            }
+        }
+        return new AccurateMatrix(values, 0, size, size, size, 1);
+    }
+
+    // c = a . b, all three h x h with h = base * 2^levels and c zeroed beforehand. depth counts the forked levels above
+    private static class Product extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final AccurateMatrix a;
+        private final AccurateMatrix b;
+        private final AccurateMatrix c;
+        private final int levels;
+        private final int depth;
+
+        Product(@Nonnull AccurateMatrix a, @Nonnull AccurateMatrix b, @Nonnull AccurateMatrix c, int levels, int depth) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.levels = levels;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (levels == 0) {
+                Gemm.multiply(a, b, c);
+                return;
+            }
+            if (depth >= FORK_LEVELS || !inForkJoinPool()) {
+                sequential(a, b, c, levels, scratch(a.rows, levels));
+                return;
+            }
+            int h = a.rows / 2;
+            AccurateMatrix a11 = a.subMatrix(0, 0, h, h), a12 = a.subMatrix(0, h, h, h);
+            AccurateMatrix a21 = a.subMatrix(h, 0, h, h), a22 = a.subMatrix(h, h, h, h);
+            AccurateMatrix b11 = b.subMatrix(0, 0, h, h), b12 = b.subMatrix(0, h, h, h);
+            AccurateMatrix b21 = b.subMatrix(h, 0, h, h), b22 = b.subMatrix(h, h, h, h);
+            AccurateMatrix c11 = c.subMatrix(0, 0, h, h), c12 = c.subMatrix(0, h, h, h);
+            AccurateMatrix c21 = c.subMatrix(h, 0, h, h), c22 = c.subMatrix(h, h, h, h);
+            AccurateMatrix s1 = block(h), s2 = block(h), s3 = block(h), s4 = block(h);
+            AccurateMatrix t1 = block(h), t2 = block(h), t3 = block(h), t4 = block(h);
+            combine(a21, a22, 1, s1);
+            combine(s1, a11, -1, s2);
+            combine(a11, a21, -1, s3);
+            combine(a12, s2, -1, s4);
+            combine(b12, b11, -1, t1);
+            combine(b22, t1, -1, t2);
+            combine(b22, b12, -1, t3);
+            combine(t2, b21, -1, t4);
+            // m1 and m5 land straight in c11 and c22, the other 5 need their own blocks
+            AccurateMatrix m2 = block(h), m3 = block(h), m4 = block(h), m6 = block(h), m7 = block(h);
+            int next = depth + 1;
+            invokeAll(new Product(a11, b11, c11, levels - 1, next), new Product(a12, b21, m2, levels - 1, next),
+                    new Product(s4, b22, m3, levels - 1, next), new Product(a22, t4, m4, levels - 1, next),
+                    new Product(s1, t1, c22, levels - 1, next), new Product(s2, t2, m6, levels - 1, next),
+                    new Product(s3, t3, m7, levels - 1, next));
+            // u2 = m1 + m6, u3 = u2 + m7, u4 = u2 + m5
+            // c11 = m1 + m2, c12 = u4 + m3, c21 = u3 - m4, c22 = u3 + m5
+            AccurateMatrix u2 = m6; // m6 is not needed on its own again
+            combine(c11, m6, 1, u2);
+            combine(c11, m2, 1, c11);
+            combine(u2, m7, 1, m7); // u3
+            combine(u2, c22, 1, c12); // u4
+            combine(c12, m3, 1, c12);
+            combine(m7, m4, -1, c21);
+            combine(m7, c22, 1, c22);
+        }
+    }
+
+    // c = a . b (whatever c held is overwritten) with the same 7 products and 15 additions as Product, in an order where the
+    // quadrants of c keep m1, m5, m6, m7 and then the u's, and x, y, z = scratch[levels] take the operand sums and the products
+    // that still have to be added in. The products below reuse scratch[levels - 1]
+    private static void sequential(@Nonnull AccurateMatrix a, @Nonnull AccurateMatrix b, @Nonnull AccurateMatrix c, int levels,
+                                   @Nonnull AccurateMatrix[][] scratch) {
+        if (levels == 0) {
+            clear(c);
+            Gemm.multiply(a, b, c);
+            return;
+        }
+        int h = a.rows / 2;
+        AccurateMatrix a11 = a.subMatrix(0, 0, h, h), a12 = a.subMatrix(0, h, h, h);
+        AccurateMatrix a21 = a.subMatrix(h, 0, h, h), a22 = a.subMatrix(h, h, h, h);
+        AccurateMatrix b11 = b.subMatrix(0, 0, h, h), b12 = b.subMatrix(0, h, h, h);
+        AccurateMatrix b21 = b.subMatrix(h, 0, h, h), b22 = b.subMatrix(h, h, h, h);
+        AccurateMatrix c11 = c.subMatrix(0, 0, h, h), c12 = c.subMatrix(0, h, h, h);
+        AccurateMatrix c21 = c.subMatrix(h, 0, h, h), c22 = c.subMatrix(h, h, h, h);
+        AccurateMatrix x = scratch[levels][0], y = scratch[levels][1], z = scratch[levels][2];
+        combine(a11, a21, -1, x); // s3
+        combine(b22, b12, -1, y); // t3
+        sequential(x, y, c21, levels - 1, scratch); // m7
+        combine(a21, a22, 1, x); // s1
+        combine(b12, b11, -1, y); // t1
+        sequential(x, y, c22, levels - 1, scratch); // m5
+        combine(x, a11, -1, x); // s2
+        combine(b22, y, -1, y); // t2
+        sequential(x, y, c12, levels - 1, scratch); // m6
+        sequential(a11, b11, c11, levels - 1, scratch); // m1
+        combine(c12, c11, 1, c12); // u2 = m1 + m6
+        combine(c21, c12, 1, c21); // u3 = u2 + m7
+        combine(c12, c22, 1, c12); // u4 = u2 + m5
+        combine(c22, c21, 1, c22); // c22 = u3 + m5
+        combine(a12, x, -1, x); // s4
+        sequential(x, b22, z, levels - 1, scratch); // m3
+        combine(c12, z, 1, c12); // c12 = u4 + m3
+        combine(y, b21, -1, y); // t4
+        sequential(a22, y, z, levels - 1, scratch); // m4
+        combine(c21, z, -1, c21); // c21 = u3 - m4
+        sequential(a12, b21, z, levels - 1, scratch); // m2
+        combine(c11, z, 1, c11); // c11 = m1 + m2
+    }
+
+    // x, y, z for every level of a sequential product of size x size, scratch[l] being half the size of the matrices l levels
+    // above the Gemm leaves
+    @Nonnull
+    private static AccurateMatrix[][] scratch(int size, int levels) {
+        AccurateMatrix[][] scratch = new AccurateMatrix[levels + 1][];
+        for (int level = levels; level >= 1; level--, size /= 2) {
+            scratch[level] = new AccurateMatrix[]{block(size / 2), block(size / 2), block(size / 2)};
+        }
+        return scratch;
+    }
+
+    private static void clear(@Nonnull AccurateMatrix c) {
+        for (int i = 0; i < c.rows; i++) {
+            int row = c.offset + i * c.rowStride;
+            Arrays.fill(c.values, row, row + c.columns, 0.0);
+        }
+    }
+
+    @Nonnull
+    private static AccurateMatrix block(int h) {
+        return new AccurateMatrix(new double[h * h], 0, h, h, h, 1);
+    }
+
+    // out = x + sign * y on row-major views, out may be x or y
+    private static void combine(@Nonnull AccurateMatrix x, @Nonnull AccurateMatrix y, double sign, @Nonnull AccurateMatrix out) {
+        for (int i = 0; i < out.rows; i++) {
+            int xRow = x.offset + i * x.rowStride;
+            int yRow = y.offset + i * y.rowStride;
+            int outRow = out.offset + i * out.rowStride;
+            for (int j = 0; j < out.columns; j++) {
+                out.values[outRow + j] = x.values[xRow + j] + sign * y.values[yRow + j];
+            }
+        }
+    }
+
+    // Higham's normwise bound for Winograd's variant, max|error| <= errorBound(n) * max|a| * max|b| * unit roundoff
+    public static double errorBound(int n) {
+        int base = n;
+        int levels = 0;
+        while (base > cutoff) {
+            base = (base + 1) / 2;
+            levels++;
+        }
+        return Math.pow(18, levels) * ((double) base * base + 6.0 * base) - 6.0 * (base << levels);
+    }
+
+    // max|strassen - classic| / (n max|a| max|b|), costs both products, meant for deciding whether a workload can opt in
+    public static double relativeError(@Nonnull AccurateMatrix a, @Nonnull AccurateMatrix b) {
+        Matrix classic = a.dot(b);
+        AccurateMatrix fast = multiply(a, b);
+        double error = 0.0;
+        for (int i = 0; i < classic.rows; i++) {
+            for (int j = 0; j < classic.columns; j++) {
+                error = Math.max(error, Math.abs(classic.get(i, j) - fast.get(i, j)));
+            }
+        }
+        double scale = a.columns * maxAbs(a) * maxAbs(b);
+        return scale == 0.0 ? error : error / scale;
+    }
+
+    // a cheap check of c = a . b in O(n^2) against random vectors x: max|c x - a (b x)| / (n max|a| max|b| max|x|), as long as
+    // it's around machine precision times errorBound() the product can be trusted
+    public static double residual(@Nonnull AccurateMatrix a, @Nonnull AccurateMatrix b, @Nonnull AccurateMatrix c) {
+        Random random = new Random(c.rows * 31L + c.columns);
+        AccurateMatrix x = new AccurateMatrix(b.columns, 1, (i, j) -> random.nextDouble() * 2 - 1);
+        Matrix cx = c.dot(x);
+        Matrix abx = a.dot(b.dot(x));
+        double error = 0.0;
+        for (int i = 0; i < cx.rows; i++) {
+            error = Math.max(error, Math.abs(cx.get(i, 0) - abx.get(i, 0)));
+        }
+        double scale = a.columns * maxAbs(a) * maxAbs(b) * maxAbs(x);
+        return scale == 0.0 ? error : error / scale;
+    }
+
+    private static double maxAbs(@Nonnull AccurateMatrix matrix) {
+        double answer = 0.0;
+        for (int i = 0; i < matrix.rows; i++) {
+            for (int j = 0; j < matrix.columns; j++) {
+                answer = Math.max(answer, Math.abs(matrix.get(i, j)));
+            }
+        }
+        return answer;
+    }
+}
@@ -0,0 +1,39 @@
+package org.kelvinho.matrix;
+
+import javax.annotation.Nonnull;
+
+// cache-oblivious order for physical transposes: the longer side is halved until a block is at most LEAF x LEAF, so at every
+// level of the hierarchy some block fits, its source rows and target rows both stay resident while it's copied, and no cache
+// size has to be tuned for. Row bands are split between threads first and recursed within
+@SuppressWarnings({"unused", "WeakerAccess"})
+final class Transpose {
+    static final int LEAF = 16;
+
+    // copies rows [rowFrom, rowTo) x columns [columnFrom, columnTo) of the source to their transposed places
+    interface Block {
+        void copy(int rowFrom, int rowTo, int columnFrom, int columnTo);
+    }
+
+    private Transpose() {
+    }
+
+    static void blocks(int rows, int columns, @Nonnull Block block) {
+        Parallelism.forRows(rows, columns, (from, to) -> recurse(from, to, 0, columns, block));
+    }
+
+    private static void recurse(int rowFrom, int rowTo, int columnFrom, int columnTo, @Nonnull Block block) {
+        int height = rowTo - rowFrom;
+        int width = columnTo - columnFrom;
+        if (height <= LEAF && width <= LEAF) {
+            block.copy(rowFrom, rowTo, columnFrom, columnTo);
+        } else if (height >= width) {
+            int middle = rowFrom + height / 2;
+            recurse(rowFrom, middle, columnFrom, columnTo, block);
+            recurse(middle, rowTo, columnFrom, columnTo, block);
+        } else {
+            int middle = columnFrom + width / 2;
+            recurse(rowFrom, rowTo, columnFrom, middle, block);
+            recurse(rowFrom, rowTo, middle, columnTo, block);
+        }
+    }
+}
@@ -3,8 +3,10 @@ package org.kelvinho.matrix;
 import org.junit.Test;
 
 import javax.annotation.Nonnull;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class AccurateMatrixTest {
     private double[][] matrix1Values = new double[][]{
@@ -52,6 +54,26 @@ public class AccurateMatrixTest {
         assertEquals(matrix3.numberOfColumns(), 2);
     }
 
+    @Test
+    public void dotMatchesNaiveProduct() {
+        Random random = new Random(42);
+        int[][] shapes = new int[][]{{1, 1, 1}, {3, 5, 7}, {97, 301, 259}, {130, 4, 9}};
+        for (int[] shape : shapes) {
+            AccurateMatrix a = new AccurateMatrix(shape[0], shape[1], (i, j) -> random.nextDouble() - 0.5);
+            AccurateMatrix b = new AccurateMatrix(shape[1], shape[2], (i, j) -> random.nextDouble() - 0.5);
+            Matrix product = a.dot(b);
+            for (int i = 0; i < shape[0]; i++) {
+                for (int j = 0; j < shape[2]; j++) {
+                    double expected = 0.0;
+                    for (int k = 0; k < shape[1]; k++) {
+                        expected += a.get(i, k) * b.get(k, j);
+                    }
+                    assertEquals(expected, product.get(i, j), 1e-9);
+                }
+            }
+        }
+    }
+
     @Test
     public void transpose() {
         double[][] transposeOfMatrix1Values = new double[][]{
@@ -64,6 +86,26 @@ public class AccurateMatrixTest {
         assertEquals(matrix1.transpose(), transposeOfMatrix1);
     }
 
+    @Test
+    public void views() {
+        AccurateMatrix source = new AccurateMatrix(matrix1Values);
+        AccurateMatrix block = source.subMatrix(1, 1, 2, 3);
+        assertEquals(block, new AccurateMatrix(new double[][]{
+                new double[]{6, 7, 8},
+                new double[]{10, 11, 12}
+        }));
+        assertEquals(source.row(2), new AccurateMatrix(new double[][]{new double[]{9, 10, 11, 12}}));
+        assertEquals(source.column(3).transpose(), new AccurateMatrix(new double[][]{new double[]{4, 8, 12}}));
+        assertEquals(block.transpose().subMatrix(2, 0, 1, 2), new AccurateMatrix(new double[][]{new double[]{8, 12}}));
+        // views share storage with the matrix they came from
+        block.mutableSet(0, 0, 100);
+        assertEquals(source.get(1, 1), 100, 0.0);
+        assertEquals(source.transpose().get(1, 1), 100, 0.0);
+        // and products read them in place
+        AccurateMatrix copiedTranspose = new AccurateMatrix(4, 3, (i, j) -> matrix1.get(j, i));
+        assertEquals(matrix1.transpose().dot(matrix1), copiedTranspose.dot(matrix1));
+    }
+
     @Test
     public void qualityOfLifeMethods() {
         println("matrix: ");
@@ -85,6 +127,27 @@ public class AccurateMatrixTest {
         matrix1.sigmoid().print();
     }
 
+    @Test
+    public void destinationAndInPlace() {
+        AccurateMatrix out = new AccurateMatrix(3, 4);
+        assertEquals(matrix1.add(matrix1, out), matrix1.mul(2));
+        assertEquals(out, matrix1.mul(2));
+        assertEquals(out.sum(), 156, 0.0);
+        matrix1.sigmoid(out);
+        assertEquals(out, matrix1.sigmoid());
+        assertEquals(out.sum(), matrix1.sigmoid().sum(), 0.0);
+        AccurateMatrix copy = new AccurateMatrix(matrix1Values);
+        copy.minusInPlace(matrix1).addInPlace(matrix1).mulInPlace(3);
+        assertEquals(copy, matrix1.mul(3));
+        copy.divideInPlace(matrix1);
+        assertEquals(copy, new AccurateMatrix(3, 4, 3));
+    }
+
+    @Test(expected = MismatchDimensionException.class)
+    public void destinationMustMatch() {
+        matrix1.add(matrix1, new AccurateMatrix(4, 3));
+    }
+
     /*
     @Test
     public void addRowToRow() {
@@ -186,4 +249,278 @@ public class AccurateMatrixTest {
                 new double[]{1, 0, 1, 0}
         }));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void singularInverse() {
+        assertEquals(matrix1.subMatrix(0, 0, 3, 3).inverse(), null);
+        assertEquals(matrix3.inverse(), null);
+    }
+
+    @Test
+    public void solveAndDeterminant() {
+        Random random = new Random(5);
+        AccurateMatrix a = new AccurateMatrix(150, 150, (i, j) -> random.nextDouble() - 0.5 + (i == j ? 4 : 0));
+        AccurateMatrix b = new AccurateMatrix(150, 3, (i, j) -> random.nextDouble());
+        Matrix residual = a.dot(a.solve(b)).minus(b);
+        for (int i = 0; i < 150; i++) {
+            for (int j = 0; j < 3; j++) {
+                assertEquals(0.0, residual.get(i, j), 1e-10);
+            }
+        }
+        assertEquals(a.dot(a.nonNullInverse()), new AccurateMatrix(150, 150, (i, j) -> i == j ? 1 : 0));
+        assertEquals(new AccurateMatrix(new double[][]{
+                new double[]{0, 2, 1},
+                new double[]{1, 1, 0},
+                new double[]{3, 0, 2}
+        }).determinant(), -7, 1e-12);
+    }
+
+    @Test
+    public void derivedValuesFollowMutation() {
+        AccurateMatrix a = new AccurateMatrix(new double[][]{{1, 2}, {2, 4}});
+        assertEquals(a.rank(), 1);
+        assertEquals(a.inverse(), null);
+        assertEquals(a.sum(), 9, 0.0);
+        a.mutableSet(1, 1, 5);
+        assertEquals(a.rank(), 2);
+        assertEquals(a.inverse(), new AccurateMatrix(new double[][]{{5, -2}, {-2, 1}}));
+        // a write through a view reaches the source's caches
+        a.row(0).mutableSet(0, 0, 2);
+        assertEquals(a.sum(), 11, 0.0);
+        assertEquals(a.transpose().sum(), 11, 0.0);
+    }
+
+    @Test
+    public void derivedValuesAreComputedOnce() throws InterruptedException {
+        Random random = new Random(7);
+        AccurateMatrix a = new AccurateMatrix(60, 60, (i, j) -> random.nextDouble());
+        Object[] inverses = new Object[8];
+        Thread[] threads = new Thread[inverses.length];
+        for (int t = 0; t < threads.length; t++) {
+            int index = t;
+            threads[t] = new Thread(() -> inverses[index] = a.inverse());
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Object inverse : inverses) {
+            assertTrue(inverse == inverses[0]);
+        }
+    }
+
+    @Test
+    public void derivedValuesRacingAWriteAreNotKept() {
+        AccurateMatrix a = new AccurateMatrix(3, 3, 1.0);
+        DerivedCache.Key<Double> key = new DerivedCache.Key<>("corner");
+        // the first computation of the key, with a writer changing the matrix while it runs
+        double raced = a.derived(key, () -> {
+            double before = a.get(0, 0);
+            Thread writer = new Thread(() -> a.mutableSet(0, 0, 5.0));
+            writer.start();
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return before;
+        });
+        assertEquals(raced, 1.0, 0.0);
+        assertEquals(a.derived(key, () -> a.get(0, 0)), 5.0, 0.0);
+        assertEquals(a.sum(), 13.0, 0.0);
+    }
+
+    @Test
+    public void axisReductions() {
+        assertEquals(matrix1.rowSums(), new AccurateMatrix(new double[][]{{10}, {26}, {42}}));
+        assertEquals(matrix1.columnSums(), new AccurateMatrix(new double[][]{{15, 18, 21, 24}}));
+        assertEquals(matrix1.rowMeans(), new AccurateMatrix(new double[][]{{2.5}, {6.5}, {10.5}}));
+        assertEquals(matrix1.columnMeans(), new AccurateMatrix(new double[][]{{5, 6, 7, 8}}));
+        assertEquals(matrix1.rowNorms().get(0, 0), Math.sqrt(30), 1e-12);
+        assertEquals(matrix1.columnNorms().get(0, 3), Math.sqrt(16 + 64 + 144), 1e-12);
+        AccurateMatrix mixed = new AccurateMatrix(new double[][]{{3, Double.NaN, 9}, {7, Double.NaN, 1}});
+        assertEquals(mixed.rowMaxima(), new AccurateMatrix(new double[][]{{9}, {7}}));
+        assertEquals(mixed.rowArgMax()[0], 2);
+        assertEquals(mixed.rowArgMax()[1], 0);
+        assertEquals(mixed.columnArgMax()[0], 1);
+        assertEquals(mixed.columnArgMax()[1], -1);
+        assertTrue(Double.isNaN(mixed.columnMaxima().get(0, 1)));
+        // transposed views and the other types go through the same row reads
+        Random random = new Random(5);
+        AccurateMatrix a = new AccurateMatrix(37, 300, (i, j) -> random.nextDouble() - 0.5);
+        for (Matrix m : new Matrix[]{a.transpose(), a.toNormal(), a.lazy().mul(2.0)}) {
+            Matrix rows = m.rowSums(), columns = m.columnSums();
+            Matrix maxima = m.columnMaxima();
+            int[] argMax = m.columnArgMax();
+            for (int i = 0; i < m.numberOfRows(); i++) {
+                double sum = 0.0;
+                for (int j = 0; j < m.numberOfColumns(); j++) {
+                    sum += m.get(i, j);
+                }
+                assertEquals(sum, rows.get(i, 0), 1e-5); // float answers for the NormalMatrix
+            }
+            for (int j = 0; j < m.numberOfColumns(); j++) {
+                double sum = 0.0, max = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < m.numberOfRows(); i++) {
+                    sum += m.get(i, j);
+                    max = Math.max(max, m.get(i, j));
+                }
+                assertEquals(sum, columns.get(0, j), 1e-5);
+                assertEquals(max, maxima.get(0, j), 0.0);
+                assertEquals(max, m.get(argMax[j], j), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void broadcasting() {
+        AccurateMatrix row = new AccurateMatrix(new double[][]{{1, 0, -1, 2}});
+        AccurateMatrix column = new AccurateMatrix(new double[][]{{1}, {2}, {3}});
+        assertEquals(matrix1.broadcastAdd(row), new AccurateMatrix(new double[][]{{2, 2, 2, 6}, {6, 6, 6, 10}, {10, 10, 10, 14}}));
+        assertEquals(matrix1.broadcastMul(column), new AccurateMatrix(new double[][]{{1, 2, 3, 4}, {10, 12, 14, 16}, {27, 30, 33, 36}}));
+        assertEquals(matrix1.broadcast(column, Math::max), new AccurateMatrix(new double[][]{{1, 2, 3, 4}, {5, 6, 7, 8}, {9, 10, 11, 12}}));
+        // normalising the columns in place, against the reductions
+        Matrix a = (Matrix) matrix1.clone();
+        a.broadcastMinusInPlace(a.columnMeans()).broadcastDivideInPlace(a.columnNorms());
+        assertEquals(a.columnSums(), new AccurateMatrix(1, 4));
+        assertEquals(a.columnNorms(), new AccurateMatrix(1, 4, 1.0));
+        NormalMatrix normal = matrix1.toNormal();
+        assertEquals(((NormalMatrix) normal.broadcastAdd(row)).toAccurate(), matrix1.broadcastAdd(row));
+        boolean thrown = false;
+        try {
+            matrix1.broadcastAdd(new AccurateMatrix(1, 3));
+        } catch (MismatchDimensionException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    private static void assertProduct(@Nonnull Matrix a, @Nonnull Matrix b, @Nonnull Matrix product, double tolerance) {
+        assertEquals(a.numberOfRows(), product.numberOfRows());
+        assertEquals(b.numberOfColumns(), product.numberOfColumns());
+        for (int i = 0; i < a.numberOfRows(); i++) {
+            for (int j = 0; j < b.numberOfColumns(); j++) {
+                double expected = 0.0;
+                for (int k = 0; k < a.numberOfColumns(); k++) {
+                    expected += a.get(i, k) * b.get(k, j);
+                }
+                assertEquals(expected, product.get(i, j), tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void transposedDots() {
+        Random random = new Random(17);
+        AccurateMatrix a = new AccurateMatrix(70, 45, (i, j) -> random.nextDouble() - 0.5);
+        AccurateMatrix b = new AccurateMatrix(70, 30, (i, j) -> random.nextDouble() - 0.5);
+        AccurateMatrix c = new AccurateMatrix(30, 45, (i, j) -> random.nextDouble() - 0.5);
+        AccurateMatrix d = new AccurateMatrix(30, 70, (i, j) -> random.nextDouble() - 0.5);
+        AccurateMatrix x = new AccurateMatrix(70, 1, (i, j) -> random.nextDouble() - 0.5);
+        Matrix at = a.transposeCopy(), bt = b.transposeCopy(), ct = c.transposeCopy();
+        assertProduct(at, b, a.transposeDot(b), 1e-12);
+        assertProduct(a, ct, a.dotTranspose(c), 1e-12);
+        assertProduct(at, d.transposeCopy(), a.dot(d, true, true), 1e-12);
+        assertProduct(at, x, a.transposeDot(x), 1e-12);
+        // the generic, float and sparse paths agree
+        assertProduct(at, b, SparseMatrix.of(a).transposeDot(b), 1e-12);
+        assertProduct(at, b, a.lazy().transposeDot(b.lazy()), 1e-12);
+        assertProduct(a, ct, a.toNormal().dotTranspose(c.toNormal()), 1e-5);
+        assertProduct(bt, a, b.toNormal().transposeDot(a), 1e-5);
+        try (Arena arena = new Arena()) {
+            Matrix offHeap = arena.copy(a);
+            assertProduct(at, b, offHeap.transposeDot(b), 1e-12);
+            assertProduct(a, ct, offHeap.dotTranspose(arena.copy(c)), 1e-12);
+            assertEquals(offHeap.transposeCopy().get(44, 69), a.get(69, 44), 0.0);
+        }
+        boolean thrown = false;
+        try {
+            a.transposeDot(c);
+        } catch (MismatchDimensionException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    @Test
+    public void transposeCopy() {
+        Random random = new Random(19);
+        AccurateMatrix a = new AccurateMatrix(133, 71, (i, j) -> random.nextDouble());
+        for (Matrix source : new Matrix[]{a, a.subMatrix(3, 5, 100, 60).transpose(), a.toNormal(), SparseMatrix.of(a)}) {
+            Matrix copy = source.transposeCopy();
+            assertEquals(source.numberOfColumns(), copy.numberOfRows());
+            for (int i = 0; i < source.numberOfRows(); i++) {
+                for (int j = 0; j < source.numberOfColumns(); j++) {
+                    assertEquals(source.get(i, j), copy.get(j, i), 0.0);
+                }
+            }
+        }
+        // a copy, not a view
+        AccurateMatrix copy = a.transposeCopy();
+        a.mutableSet(0, 1, -1);
+        assertEquals(-1, a.transpose().get(1, 0), 0.0);
+        assertTrue(copy.get(1, 0) != -1);
+    }
+
+    @Test
+    public void fusedGemm() {
+        Random random = new Random(23);
+        // m and k cross block boundaries and neither m nor n fills whole register tiles
+        AccurateMatrix x = new AccurateMatrix(130, 300, (i, j) -> random.nextDouble() - 0.5);
+        AccurateMatrix w = new AccurateMatrix(300, 18, (i, j) -> random.nextDouble() - 0.5);
+        AccurateMatrix bias = new AccurateMatrix(1, 18, (i, j) -> random.nextDouble());
+        AccurateMatrix rowBias = new AccurateMatrix(130, 1, (i, j) -> random.nextDouble());
+        AccurateMatrix c = new AccurateMatrix(130, 18, (i, j) -> random.nextDouble());
+        Matrix layer = x.dot(w).broadcastAdd(bias).sigmoid();
+        Matrix expected = x.dot(w).mul(0.5).add(c.mul(2.0)).broadcastAdd(rowBias).tanh();
+        Epilogue dense = new Epilogue().bias(bias).sigmoid();
+        Epilogue everything = new Epilogue().scale(0.5).accumulate(2.0).bias(rowBias).tanh();
+        assertEquals(layer, x.gemm(w, dense));
+        assertEquals(expected, x.gemm(w, everything, (Matrix) c.clone()));
+        assertEquals(layer, SparseMatrix.of(x).gemm(w, dense));
+        assertEquals(layer, x.lazy().gemm(w, dense));
+        Matrix floats = x.toNormal().gemm(w.toNormal(), dense);
+        assertTrue(floats instanceof NormalMatrix);
+        for (int i = 0; i < 130; i++) {
+            for (int j = 0; j < 18; j++) {
+                assertEquals(layer.get(i, j), floats.get(i, j), 1e-5);
+            }
+        }
+        // beta = 0 overwrites, NaNs included
+        AccurateMatrix garbage = new AccurateMatrix(130, 18, Double.NaN);
+        assertEquals(x.dot(w), x.gemm(w, new Epilogue(), garbage));
+        // no inner dimension leaves just the epilogue
+        assertEquals(new AccurateMatrix(2, 3, 1.0), new AccurateMatrix(2, 0).gemm(new AccurateMatrix(0, 3), new Epilogue().bias(new AccurateMatrix(1, 3, 1.0))));
+        boolean thrown = false;
+        try {
+            x.gemm(w, new Epilogue().bias(new AccurateMatrix(1, 5)));
+        } catch (MismatchDimensionException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    @Test
+    public void aliasedGemm() {
+        Random random = new Random(29);
+        // k crosses a block boundary, so the operands are packed again after out has already been written
+        AccurateMatrix a = new AccurateMatrix(300, 300, (i, j) -> random.nextDouble() - 0.5);
+        AccurateMatrix b = new AccurateMatrix(300, 300, (i, j) -> random.nextDouble() - 0.5);
+        Matrix squared = a.dot(a);
+        Matrix accumulated = a.dot(b).add(a);
+        AccurateMatrix copy = (AccurateMatrix) a.clone();
+        assertEquals(squared, copy.gemm(copy, new Epilogue(), copy));
+        copy = (AccurateMatrix) a.clone();
+        assertEquals(accumulated, copy.gemm(b, new Epilogue().accumulate(1.0), copy));
+        // out is one half of the operand's array, written through a view
+        AccurateMatrix wide = new AccurateMatrix(300, 600, (i, j) -> j < 300 ? a.get(i, j) : 0.0);
+        AccurateMatrix left = wide.subMatrix(0, 0, 300, 300);
+        left.gemm(b, new Epilogue(), wide.subMatrix(0, 300, 300, 300));
+        assertEquals(a.dot(b), wide.subMatrix(0, 300, 300, 300));
+        wide.subMatrix(0, 300, 300, 300).gemm(b.transpose(), new Epilogue(), left);
+        assertEquals(a.dot(b).dot(b.transpose()), left);
+        NormalMatrix floats = a.toNormal();
+        Matrix floatSquared = floats.dot(floats);
+        assertEquals(floatSquared, floats.gemm(floats, new Epilogue(), floats));
+    }
+}
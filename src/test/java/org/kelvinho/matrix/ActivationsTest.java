@@ -0,0 +1,111 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ActivationsTest {
+    private final Random random = new Random(41);
+
+    private static double relativeError(double expected, double actual) {
+        return expected == actual ? 0.0 : Math.abs(actual - expected) / Math.abs(expected);
+    }
+
+    @Test
+    public void expAgainstMath() {
+        double accurate = 0.0, fast = 0.0;
+        for (int n = 0; n < 100000; n++) {
+            double x = (random.nextDouble() - 0.5) * 1400; // the whole normal range
+            accurate = Math.max(accurate, relativeError(Math.exp(x), Activations.exp(x, Activations.Accuracy.ACCURATE)));
+            fast = Math.max(fast, relativeError(Math.exp(x), Activations.exp(x, Activations.Accuracy.FAST)));
+        }
+        assertTrue("accurate " + accurate, accurate < 1e-15);
+        assertTrue("fast " + fast, fast < 2e-7);
+    }
+
+    @Test
+    public void expEdges() {
+        for (Activations.Accuracy accuracy : Activations.Accuracy.values()) {
+            assertEquals(1.0, Activations.exp(0.0, accuracy), 0.0);
+            assertEquals(Double.POSITIVE_INFINITY, Activations.exp(710.0, accuracy), 0.0);
+            assertEquals(Double.POSITIVE_INFINITY, Activations.exp(Double.POSITIVE_INFINITY, accuracy), 0.0);
+            assertEquals(0.0, Activations.exp(-746.0, accuracy), 0.0);
+            assertEquals(0.0, Activations.exp(Double.NEGATIVE_INFINITY, accuracy), 0.0);
+            assertTrue(Double.isNaN(Activations.exp(Double.NaN, accuracy)));
+            assertEquals(Math.exp(709.5), Activations.exp(709.5, accuracy), Math.exp(709.5) * 2e-7);
+            assertEquals(Math.exp(-700), Activations.exp(-700, accuracy), Math.exp(-700) * 2e-7);
+        }
+    }
+
+    @Test
+    public void sigmoidAndTanhAgainstMath() {
+        double sigmoid = 0.0, tanh = 0.0;
+        for (int n = 0; n < 100000; n++) {
+            double x = (random.nextDouble() - 0.5) * 80 * Math.pow(10, -random.nextInt(8));
+            sigmoid = Math.max(sigmoid, relativeError(1 / (1 + Math.exp(-x)), Activations.sigmoid(x, Activations.Accuracy.ACCURATE)));
+            tanh = Math.max(tanh, relativeError(Math.tanh(x), Activations.tanh(x, Activations.Accuracy.ACCURATE)));
+        }
+        assertTrue("sigmoid " + sigmoid, sigmoid < 1e-14);
+        assertTrue("tanh " + tanh, tanh < 1e-14);
+        assertEquals(0.0, Activations.sigmoid(-800), 0.0);
+        assertEquals(1.0, Activations.sigmoid(800), 0.0);
+        assertEquals(-1.0, Activations.tanh(-400), 0.0);
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(Activations.tanh(-0.0)));
+    }
+
+    @Test
+    public void matrices() {
+        AccurateMatrix a = new AccurateMatrix(7, 33, (i, j) -> (random.nextDouble() - 0.5) * 20);
+        NormalMatrix b = a.toNormal();
+        for (Matrix m : new Matrix[]{a, b, a.transpose().transpose().lazy()}) {
+            Matrix out = m.sigmoid(), derivative = out.sigmoidDerivative();
+            Matrix fusedOut = new AccurateMatrix(7, 33), fusedDerivative = new AccurateMatrix(7, 33);
+            m.sigmoid(fusedOut, fusedDerivative);
+            Matrix exp = m.exp(), tanh = m.tanh(), softmax = m.softmax(), logSumExp = m.logSumExp();
+            for (int i = 0; i < 7; i++) {
+                double sum = 0.0, reference = 0.0;
+                for (int j = 0; j < 33; j++) {
+                    double x = m.get(i, j), s = 1 / (1 + Math.exp(-x));
+                    assertEquals(s, fusedOut.get(i, j), 1e-7);
+                    assertEquals(s * (1 - s), fusedDerivative.get(i, j), 1e-7);
+                    assertEquals(out.get(i, j), fusedOut.get(i, j), 1e-7);
+                    assertEquals(derivative.get(i, j), fusedDerivative.get(i, j), 1e-7);
+                    assertEquals(Math.exp(x), exp.get(i, j), Math.exp(x) * 1e-6);
+                    assertEquals(Math.tanh(x), tanh.get(i, j), 1e-6);
+                    sum += softmax.get(i, j);
+                    reference += Math.exp(x);
+                }
+                assertEquals(1.0, sum, 1e-6);
+                assertEquals(Math.log(reference), logSumExp.get(i, 0), 1e-6);
+                assertEquals(Math.exp(m.get(i, 0)) / reference, softmax.get(i, 0), 1e-6);
+            }
+        }
+        // neither overflows where the naive formulas would
+        AccurateMatrix large = new AccurateMatrix(new double[][]{new double[]{1000, 1000, 1000 + Math.log(2)}});
+        assertEquals(1000 + Math.log(4), large.logSumExp().get(0, 0), 1e-12);
+        assertEquals(0.5, large.softmax().get(0, 2), 1e-12);
+    }
+
+    @Test
+    public void accuracyIsSelectable() {
+        AccurateMatrix a = new AccurateMatrix(3, 300, (i, j) -> (random.nextDouble() - 0.5) * 20);
+        Activations.Accuracy before = Activations.accuracy();
+        try {
+            Activations.setAccuracy(Activations.Accuracy.EXACT);
+            Matrix exact = a.sigmoid();
+            Activations.setAccuracy(Activations.Accuracy.FAST);
+            Matrix fast = a.sigmoid();
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < 300; j++) {
+                    assertEquals(1 / (1 + Math.exp(-a.get(i, j))), exact.get(i, j), 1e-15);
+                    assertEquals(exact.get(i, j), fast.get(i, j), 2e-7);
+                }
+            }
+        } finally {
+            Activations.setAccuracy(before);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BufferPoolTest {
+    @Test
+    public void scopeRecyclesTemplates() {
+        AccurateMatrix a = new AccurateMatrix(32, 32, (i, j) -> i + j);
+        Matrix kept = null;
+        BufferPool.resetStatistics();
+        for (int iteration = 0; iteration < 5; iteration++) {
+            try (BufferPool.Scope scope = BufferPool.scope()) {
+                Matrix temporary = a.mul(2);
+                kept = scope.keep(temporary.add(a));
+            }
+        }
+        assertEquals(kept, a.mul(3));
+        // every iteration after the first reuses the temporary, only the kept answers miss
+        assertEquals(BufferPool.misses(), 6);
+        assertEquals(BufferPool.hits(), 4);
+        BufferPool.clear();
+        assertEquals(BufferPool.retainedBytes(), 0);
+    }
+
+    @Test
+    public void releaseZeroFills() {
+        BufferPool.enable();
+        try {
+            BufferPool.resetStatistics();
+            Matrix first = new NormalMatrix(20, 20, 1.0).mul(3);
+            assertTrue(BufferPool.release(first));
+            assertEquals(BufferPool.retainedBytes(), 20 * 20 * Float.BYTES);
+            assertFalse(BufferPool.release(new AccurateMatrix(20, 20, 1.0).transpose()));
+            Matrix second = new NormalMatrix(20, 20).template(20, 20);
+            assertEquals(second.sum(), 0, 0.0);
+            assertEquals(BufferPool.hits(), 1);
+        } finally {
+            BufferPool.disable();
+        }
+        assertEquals(BufferPool.retainedBytes(), 0);
+    }
+
+    @Test
+    public void cachedValuesOutliveScopes() {
+        AccurateMatrix a = new AccurateMatrix(20, 20, (i, j) -> i == j ? 2.0 : (i * 7 + j * 3) % 5);
+        // nothing is kept, the cached answer has to stay out of the scope on its own
+        BufferPool.Scope first = BufferPool.scope();
+        AccurateMatrix echelon = a.reducedRowEchelonForm();
+        first.close();
+        BufferPool.Scope second = BufferPool.scope();
+        a.add(a).add(a);
+        a.mul(7.0).mul(2.0);
+        second.close();
+        assertEquals(echelon.get(0, 0), 1.0, 0.0);
+        assertEquals(a.reducedRowEchelonForm(), new AccurateMatrix(20, 20, (i, j) -> i == j ? 1.0 : 0.0));
+        BufferPool.clear();
+    }
+}
@@ -0,0 +1,55 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DecompositionTest {
+    private final Random random = new Random(17);
+
+    @Test
+    public void cholesky() {
+        AccurateMatrix m = new AccurateMatrix(140, 90, (i, j) -> random.nextDouble() - 0.5);
+        AccurateMatrix spd = (AccurateMatrix) m.transpose().dot(m).add(new AccurateMatrix(90, 90, (i, j) -> i == j ? 1 : 0));
+        AccurateMatrix b = new AccurateMatrix(90, 2, (i, j) -> random.nextDouble());
+        assertTrue(spd.decompose() instanceof CholeskyDecomposition);
+        CholeskyDecomposition cholesky = (CholeskyDecomposition) spd.decompose();
+        assertEquals(cholesky.lower().dot(cholesky.lower().transpose()), spd);
+        assertEquals(spd.dot(spd.solve(b)), b);
+        assertEquals(cholesky.determinant(), spd.lu().determinant(), Math.abs(spd.lu().determinant()) * 1e-9);
+        assertFalse(new CholeskyDecomposition(spd.negate()).isPositiveDefinite());
+        // several block rows below each panel, so the trailing updates skip blocks above the diagonal
+        AccurateMatrix wide = new AccurateMatrix(320, 300, (i, j) -> random.nextDouble() - 0.5);
+        AccurateMatrix large = (AccurateMatrix) wide.transpose().dot(wide).add(new AccurateMatrix(300, 300, (i, j) -> i == j ? 1 : 0));
+        AccurateMatrix lower = new CholeskyDecomposition(large).lower();
+        assertEquals(lower.dot(lower.transpose()), large);
+    }
+
+    @Test
+    public void fallsBackToLU() {
+        AccurateMatrix indefinite = new AccurateMatrix(new double[][]{
+                new double[]{1, 2},
+                new double[]{2, 1}
+        });
+        assertTrue(indefinite.decompose() instanceof LUDecomposition);
+        assertEquals(indefinite.solve(new AccurateMatrix(new double[][]{new double[]{3}, new double[]{3}})),
+                new AccurateMatrix(new double[][]{new double[]{1}, new double[]{1}}));
+    }
+
+    @Test
+    public void leastSquares() {
+        AccurateMatrix a = new AccurateMatrix(300, 70, (i, j) -> random.nextDouble() - 0.5);
+        AccurateMatrix b = new AccurateMatrix(300, 3, (i, j) -> random.nextDouble());
+        assertTrue(a.decompose() instanceof QRDecomposition);
+        Matrix x = a.solve(b);
+        // the residual of a least squares solution is orthogonal to the columns of a, same as solving the normal equations
+        AccurateMatrix normal = (AccurateMatrix) a.transpose().dot(a);
+        assertEquals(x, normal.solve(a.transpose().dot(b)));
+        Matrix orthogonality = a.transpose().dot(a.dot(x).minus(b));
+        assertEquals(orthogonality, new AccurateMatrix(70, 3));
+    }
+}
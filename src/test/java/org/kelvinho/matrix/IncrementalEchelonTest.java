@@ -0,0 +1,53 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalEchelonTest {
+    private final Random random = new Random(61);
+
+    @Test
+    public void matchesFullEchelonForm() {
+        AccurateMatrix matrix = new AccurateMatrix(new double[][]{{1, 2, 0, 3}, {2, 4, 1, 1}, {3, 6, 1, 4}, {0, 0, 2, -10}});
+        IncrementalEchelon echelon = new IncrementalEchelon(4);
+        int[] ranks = {1, 2, 2, 2};
+        for (int i = 0; i < 4; i++) {
+            echelon.append(matrix.row(i));
+            assertEquals(echelon.rank(), ranks[i]);
+        }
+        assertEquals(echelon.rank(), matrix.rank());
+        assertArrayEquals(echelon.pivotColumns(), new int[]{0, 2});
+        assertEquals(echelon.basis(), matrix.reducedRowEchelonForm().subMatrix(0, 0, 2, 4));
+        AccurateMatrix nullSpace = echelon.nullSpace();
+        assertEquals(nullSpace.numberOfColumns(), 2);
+        assertEquals(matrix.dot(nullSpace), new AccurateMatrix(4, 2));
+    }
+
+    @Test
+    public void randomRowsWithDependencies() {
+        int columns = 12;
+        AccurateMatrix generators = new AccurateMatrix(7, columns, (i, j) -> random.nextGaussian());
+        IncrementalEchelon echelon = new IncrementalEchelon(columns);
+        for (int i = 0; i < 20; i++) {
+            AccurateMatrix mix = new AccurateMatrix(1, 7, (x, y) -> random.nextGaussian());
+            AccurateMatrix row = (AccurateMatrix) mix.dot(generators);
+            boolean independent = echelon.isIndependent(row.values);
+            assertEquals(echelon.append(row.values), independent);
+            assertEquals(echelon.rank(), Math.min(i + 1, 7));
+        }
+        assertEquals(echelon.numberOfRows(), 20);
+        double[] generator = new double[columns];
+        for (int j = 0; j < columns; j++) {
+            generator[j] = generators.get(3, j);
+        }
+        assertFalse(echelon.isIndependent(generator));
+        assertEquals(generators.dot(echelon.nullSpace()), new AccurateMatrix(7, columns - 7));
+        assertTrue(echelon.isIndependent(new AccurateMatrix(1, columns, (x, y) -> random.nextGaussian()).values));
+    }
+}
@@ -0,0 +1,89 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+// whichever backend got loaded has to agree with the scalar loops, including the tails that don't fill a vector
+public class KernelsTest {
+    private final Kernels kernels = Kernels.INSTANCE;
+    private final Kernels scalar = new ScalarKernels();
+    private final Random random = new Random(31);
+
+    @Test
+    public void doubles() {
+        for (int length : new int[]{0, 1, 3, 8, 37, 1000}) {
+            double[] a = new double[length + 2], b = new double[length + 1], c = new double[length];
+            for (int i = 0; i < length; i++) {
+                a[i + 2] = random.nextDouble() - 0.5;
+                b[i + 1] = random.nextDouble() + 0.5;
+                c[i] = random.nextDouble();
+            }
+            for (Kernels.Operation operation : Kernels.Operation.values()) {
+                double[] expected = new double[length], actual = new double[length];
+                scalar.apply(operation, a, 2, b, 1, expected, 0, length);
+                kernels.apply(operation, a, 2, b, 1, actual, 0, length);
+                assertArrayEquals(expected, actual, 1e-15);
+            }
+            double[] expected = new double[length], actual = new double[length];
+            scalar.fma(a, 2, b, 1, c, 0, expected, 0, length);
+            kernels.fma(a, 2, b, 1, c, 0, actual, 0, length);
+            assertArrayEquals(expected, actual, 1e-15);
+            for (Kernels.Activation activation : Kernels.Activation.values()) {
+                for (Activations.Accuracy accuracy : Activations.Accuracy.values()) {
+                    scalar.activate(activation, accuracy, a, 2, expected, 0, length);
+                    kernels.activate(activation, accuracy, a, 2, actual, 0, length);
+                    assertArrayEquals(expected, actual, 1e-15);
+                }
+            }
+            double[] derivative = new double[length];
+            kernels.sigmoid(Activations.accuracy(), a, 2, actual, 0, derivative, 0, length);
+            scalar.activate(Kernels.Activation.SIGMOID, Activations.accuracy(), a, 2, expected, 0, length);
+            assertArrayEquals(expected, actual, 1e-15);
+            for (int i = 0; i < length; i++) {
+                assertEquals(expected[i] * (1 - expected[i]), derivative[i], 1e-15);
+            }
+            assertEquals(scalar.sum(a, 2, length), kernels.sum(a, 2, length), 1e-12);
+            assertEquals(scalar.dot(a, 2, b, 1, length), kernels.dot(a, 2, b, 1, length), 1e-12);
+        }
+    }
+
+    @Test
+    public void floats() {
+        for (int length : new int[]{0, 1, 5, 16, 45, 3000}) {
+            float[] a = new float[length + 1], b = new float[length];
+            for (int i = 0; i < length; i++) {
+                a[i + 1] = random.nextFloat() - 0.5f;
+                b[i] = random.nextFloat() + 0.5f;
+            }
+            for (Kernels.Operation operation : Kernels.Operation.values()) {
+                float[] expected = new float[length], actual = new float[length];
+                scalar.apply(operation, a, 1, b, 0, expected, 0, length);
+                kernels.apply(operation, a, 1, b, 0, actual, 0, length);
+                assertArrayEquals(expected, actual, 1e-6f);
+            }
+            float[] expected = new float[length], actual = new float[length];
+            for (Kernels.Activation activation : Kernels.Activation.values()) {
+                for (Activations.Accuracy accuracy : Activations.Accuracy.values()) {
+                    scalar.activate(activation, accuracy, a, 1, expected, 0, length);
+                    kernels.activate(activation, accuracy, a, 1, actual, 0, length);
+                    assertArrayEquals(expected, actual, 1e-6f);
+                }
+            }
+            assertEquals(scalar.sum(a, 1, length), kernels.sum(a, 1, length), 1e-3);
+            assertEquals(scalar.dot(a, 1, b, 0, length), kernels.dot(a, 1, b, 0, length), 1e-3);
+        }
+    }
+
+    @Test
+    public void denseMatricesUseThem() {
+        AccurateMatrix a = new AccurateMatrix(9, 13, (i, j) -> random.nextDouble());
+        AccurateMatrix b = new AccurateMatrix(9, 13, (i, j) -> random.nextDouble());
+        assertEquals(a.fma(b, a), a.mul(b).add(a));
+        assertEquals(a.dot(b.row(0).transpose()), a.dot(new AccurateMatrix(13, 1, (i, j) -> b.get(0, i))));
+        assertEquals(a.sigmoid().sum(), a.lazy().sigmoid().sum(), 1e-12);
+    }
+}
@@ -0,0 +1,82 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LazyMatrixTest {
+    private final Random random = new Random(11);
+    private final AccurateMatrix a = new AccurateMatrix(37, 600, (i, j) -> random.nextDouble() - 0.5);
+    private final AccurateMatrix b = new AccurateMatrix(37, 600, (i, j) -> random.nextDouble() - 0.5);
+    private final AccurateMatrix c = new AccurateMatrix(37, 600, (i, j) -> random.nextDouble() - 0.5);
+
+    @Test
+    public void matchesEagerEvaluation() {
+        Matrix eager = a.mul(b).add(c).sigmoid();
+        Matrix lazy = a.lazy().mul(b).add(c).sigmoid();
+        assertTrue(lazy instanceof LazyMatrix);
+        assertEquals(eager.get(5, 321), lazy.get(5, 321), 0.0);
+        assertEquals(eager.sum(), lazy.sum(), 1e-9);
+        Matrix evaluated = ((LazyMatrix) lazy).evaluate();
+        assertTrue(evaluated instanceof AccurateMatrix);
+        assertEquals(eager, evaluated);
+    }
+
+    @Test
+    public void nestedOperands() {
+        // the right operand is an expression of its own, so evaluation needs more than one scratch buffer
+        Matrix eager = a.minus(b.mul(c.oneMinus()).divide(a.abs().add(c.sq()))).mul(0.5);
+        Matrix lazy = a.lazy().minus(b.lazy().mul(c.lazy().oneMinus()).divide(a.lazy().abs().add(c.sq()))).mul(0.5);
+        assertEquals(eager, ((LazyMatrix) lazy).evaluate());
+        AccurateMatrix out = new AccurateMatrix(37, 600);
+        lazy.negate(out);
+        assertEquals(eager.negate(), out);
+    }
+
+    @Test
+    public void dot() {
+        Matrix weights = new AccurateMatrix(600, 5, (i, j) -> random.nextDouble());
+        assertEquals(a.add(b).dot(weights), a.lazy().add(b).dot(weights));
+        assertEquals(weights.transpose().dot(a.add(b).transpose()), weights.transpose().dot(a.lazy().add(b).transpose()));
+    }
+
+    @Test
+    public void transposeFollowsLeaves() {
+        AccurateMatrix m = new AccurateMatrix(3, 2, 1.0);
+        Matrix lazy = m.lazy().mul(2.0);
+        assertEquals(lazy.transpose().get(0, 1), 2.0, 0.0);
+        m.mutableSet(1, 0, 10);
+        assertEquals(lazy.get(1, 0), 20.0, 0.0);
+        assertEquals(lazy.transpose().get(0, 1), 20.0, 0.0);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void immutable() {
+        a.lazy().addInPlace(b);
+    }
+
+    @Test
+    public void evaluatesIntoSparse() {
+        // rows are evaluated in parallel, a sparse out must not see concurrent inserts
+        SparseMatrix out = SparseMatrix.of(new AccurateMatrix(37, 600));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        long threshold = Parallelism.threshold();
+        try {
+            Parallelism.enable(pool);
+            Parallelism.setThreshold(64);
+            Matrix result = a.lazy().mul(2.0).operate(b, (x, y) -> x > 0 ? x + y : 0.0, out);
+            assertTrue(result == out);
+            assertEquals(a.mul(2.0).operate(b, (x, y) -> x > 0 ? x + y : 0.0), out.toDense());
+            a.lazy().sq().operate(Math::sqrt, out);
+            assertEquals(a.abs(), out.toDense());
+        } finally {
+            Parallelism.disable();
+            Parallelism.setThreshold(threshold);
+            pool.shutdown();
+        }
+    }
+}
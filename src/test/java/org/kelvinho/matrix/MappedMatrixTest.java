@@ -0,0 +1,77 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedMatrixTest {
+    private final Random random = new Random(41);
+
+    private MappedMatrix copy(Matrix matrix) throws IOException {
+        MappedMatrix mapped = MappedMatrix.temporary(matrix.numberOfRows(), matrix.numberOfColumns());
+        for (int i = 0; i < matrix.numberOfRows(); i++) {
+            for (int j = 0; j < matrix.numberOfColumns(); j++) {
+                mapped.mutableSet(i, j, matrix.get(i, j));
+            }
+        }
+        return mapped;
+    }
+
+    @Test
+    public void persists() throws IOException {
+        Path path = Files.createTempFile("mapped", ".bin");
+        try {
+            try (MappedMatrix matrix = MappedMatrix.create(path, 3, 4)) {
+                matrix.mutableSet(2, 3, 5);
+                matrix.mutableSet(0, 1, -1);
+            }
+            try (MappedMatrix matrix = MappedMatrix.open(path, 3, 4, false)) {
+                assertEquals(matrix.get(2, 3), 5, 0.0);
+                assertEquals(matrix.get(0, 1), -1, 0.0);
+                assertEquals(matrix.sum(), 4, 0.0);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void outOfCoreProducts() throws IOException {
+        // larger than one tile in every direction, so partial tiles are exercised too
+        AccurateMatrix a = new AccurateMatrix(600, 700, (i, j) -> random.nextDouble() - 0.5);
+        AccurateMatrix b = new AccurateMatrix(700, 530, (i, j) -> random.nextDouble() - 0.5);
+        try (MappedMatrix mappedA = copy(a); MappedMatrix mappedB = copy(b)) {
+            AccurateMatrix expected = (AccurateMatrix) a.dot(b);
+            try (MappedMatrix product = (MappedMatrix) mappedA.dot(mappedB)) {
+                assertEquals(product, copy(expected));
+            }
+            try (MappedMatrix product = (MappedMatrix) mappedA.dot(b)) {
+                assertEquals(product, copy(expected));
+            }
+            try (MappedMatrix transposed = (MappedMatrix) mappedA.transpose()) {
+                assertEquals(transposed, copy(a.transpose()));
+            }
+        }
+    }
+
+    @Test
+    public void smallResultsStayOnHeap() throws IOException {
+        AccurateMatrix a = new AccurateMatrix(40, 30, (i, j) -> random.nextDouble());
+        try (MappedMatrix mapped = copy(a)) {
+            Matrix sums = mapped.rowSums();
+            assertTrue(sums instanceof AccurateMatrix);
+            assertEquals(sums, a.rowSums());
+            Matrix transposed = mapped.transposeCopy();
+            assertTrue(transposed instanceof AccurateMatrix);
+            assertEquals(transposed, a.transpose());
+            assertEquals(mapped.dot(a.transpose()), a.dot(a.transpose()));
+            assertTrue(mapped.clone() instanceof AccurateMatrix);
+        }
+    }
+}
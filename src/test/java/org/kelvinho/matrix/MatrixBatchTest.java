@@ -0,0 +1,75 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class MatrixBatchTest {
+    private final Random random = new Random(53);
+
+    private List<AccurateMatrix> randomMatrices(int count, int rows, int columns) {
+        List<AccurateMatrix> matrices = new ArrayList<>();
+        for (int k = 0; k < count; k++) {
+            matrices.add(new AccurateMatrix(rows, columns, (i, j) -> random.nextGaussian()));
+        }
+        return matrices;
+    }
+
+    @Test
+    public void matchesMatrixOperations() {
+        for (int size : new int[]{3, 16, 70}) {
+            List<AccurateMatrix> left = randomMatrices(9, size, size);
+            List<AccurateMatrix> right = randomMatrices(9, size, size);
+            MatrixBatch a = MatrixBatch.of(left);
+            MatrixBatch b = MatrixBatch.of(right);
+            MatrixBatch product = a.dot(b);
+            MatrixBatch inverse = a.inverse();
+            MatrixBatch sum = a.add(b);
+            MatrixBatch sigmoid = a.sigmoid();
+            double[] sums = a.sums();
+            double[] determinants = a.determinant();
+            Matrix total = new AccurateMatrix(size, size);
+            for (int k = 0; k < 9; k++) {
+                assertEquals(product.get(k), left.get(k).dot(right.get(k)));
+                assertEquals(inverse.get(k), left.get(k).inverse());
+                assertEquals(sum.get(k), left.get(k).add(right.get(k)));
+                assertEquals(sigmoid.get(k), left.get(k).sigmoid());
+                assertEquals(sums[k], left.get(k).sum(), 1e-9);
+                assertEquals(determinants[k], left.get(k).determinant(), 1e-9 * Math.abs(determinants[k]));
+                total = total.add(left.get(k));
+            }
+            assertEquals(a.sumOverBatch(), total);
+            assertEquals(a.transpose().get(4), left.get(4).transpose());
+        }
+    }
+
+    @Test
+    public void sharedRightHandSide() {
+        List<AccurateMatrix> left = randomMatrices(5, 4, 6);
+        AccurateMatrix right = new AccurateMatrix(6, 3, (i, j) -> random.nextGaussian());
+        MatrixBatch product = MatrixBatch.of(left).dot(right);
+        for (int k = 0; k < 5; k++) {
+            assertEquals(product.get(k), left.get(k).dot(right));
+        }
+    }
+
+    @Test
+    public void equalBatchesHashAlike() {
+        List<AccurateMatrix> matrices = randomMatrices(3, 4, 4);
+        MatrixBatch a = MatrixBatch.of(matrices);
+        MatrixBatch b = a.add(MatrixBatch.of(matrices).mul(1e-14));
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+    }
+
+    @Test(expected = MatrixNotInvertibleException.class)
+    public void singularMember() {
+        List<AccurateMatrix> matrices = randomMatrices(3, 2, 2);
+        matrices.set(1, new AccurateMatrix(new double[][]{{1, 2}, {2, 4}}));
+        MatrixBatch.of(matrices).inverse();
+    }
+}
@@ -0,0 +1,90 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MatrixIOTest {
+    private final Random random = new Random(43);
+
+    private Matrix roundTrip(Matrix matrix) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MatrixIO.write(matrix, Channels.newChannel(bytes));
+        assertEquals(bytes.size(), MatrixIO.HEADER_BYTES + matrix.numberOfRows() * matrix.numberOfColumns() * ElementType.of(matrix).bytes);
+        return MatrixIO.read(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        AccurateMatrix accurate = new AccurateMatrix(37, 3000, (i, j) -> random.nextGaussian());
+        Matrix read = roundTrip(accurate);
+        assertTrue(read instanceof AccurateMatrix);
+        assertEquals(read, accurate);
+        assertEquals(roundTrip(accurate.transpose()), accurate.transpose());
+        NormalMatrix normal = new NormalMatrix(5, 7, (i, j) -> random.nextGaussian());
+        read = roundTrip(normal);
+        assertTrue(read instanceof NormalMatrix);
+        assertEquals(read, normal);
+    }
+
+    @Test
+    public void mapsWithoutCopying() throws IOException {
+        Path path = Files.createTempFile("matrix", ".kmtx");
+        try {
+            AccurateMatrix matrix = new AccurateMatrix(20, 30, (i, j) -> i * 30 + j);
+            MatrixIO.write(matrix, path);
+            try (MappedMatrix mapped = MatrixIO.map(path, true)) {
+                for (int i = 0; i < 20; i++) {
+                    for (int j = 0; j < 30; j++) {
+                        assertEquals(mapped.get(i, j), matrix.get(i, j), 0.0);
+                    }
+                }
+                mapped.mutableSet(19, 29, -1);
+            }
+            assertEquals(MatrixIO.read(path).get(19, 29), -1, 0.0);
+            NormalMatrix normal = new NormalMatrix(4, 6, (i, j) -> i - j);
+            MatrixIO.write(normal, path);
+            try (MappedMatrix mapped = MatrixIO.map(path, false)) {
+                assertEquals(mapped.elementType(), ElementType.FLOAT);
+                assertEquals(mapped.sum(), normal.sum(), 0.0);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void streamsRowsOfUnknownCount() throws IOException {
+        Path path = Files.createTempFile("matrix", ".kmtx");
+        try {
+            try (MatrixWriter writer = MatrixIO.writer(path, 10000, ElementType.DOUBLE)) {
+                double[] row = new double[10000];
+                for (int i = 0; i < 3; i++) {
+                    row[9999] = i;
+                    writer.writeRow(row);
+                }
+            }
+            Matrix read = MatrixIO.read(path);
+            assertEquals(read.numberOfRows(), 3);
+            assertEquals(read.get(2, 9999), 2, 0.0);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rowCountIsChecked() throws IOException {
+        MatrixWriter writer = MatrixIO.writer(Channels.newChannel(new ByteArrayOutputStream()), 2, 1, ElementType.DOUBLE);
+        writer.writeRow(new double[]{1});
+        writer.close();
+    }
+}
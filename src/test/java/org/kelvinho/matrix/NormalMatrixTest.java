@@ -0,0 +1,99 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NormalMatrixTest {
+    private NormalMatrix matrix1 = new NormalMatrix(new float[][]{
+            new float[]{1, 2, 3, 4},
+            new float[]{5, 6, 7, 8},
+            new float[]{9, 10, 11, 12}
+    });
+
+    @Test
+    public void get() {
+        assertEquals(matrix1.get(1, 2), 7.0, 0.0);
+        assertEquals(matrix1.set(1, 2, 3).get(1, 2), 3.0, 0.0);
+        assertEquals(matrix1.get(1, 2), 7.0, 0.0);
+    }
+
+    @Test
+    public void dot() {
+        Random random = new Random(7);
+        NormalMatrix a = new NormalMatrix(45, 300, (i, j) -> random.nextDouble() - 0.5);
+        NormalMatrix b = new NormalMatrix(300, 21, (i, j) -> random.nextDouble() - 0.5);
+        Matrix product = a.dot(b);
+        for (int i = 0; i < a.numberOfRows(); i++) {
+            for (int j = 0; j < b.numberOfColumns(); j++) {
+                double expected = 0.0;
+                for (int k = 0; k < a.numberOfColumns(); k++) {
+                    expected += a.get(i, k) * b.get(k, j);
+                }
+                assertEquals(expected, product.get(i, j), 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void conversions() {
+        Random random = new Random(11);
+        AccurateMatrix accurate = new AccurateMatrix(17, 9, (i, j) -> random.nextDouble());
+        NormalMatrix normal = accurate.toNormal();
+        for (int i = 0; i < accurate.numberOfRows(); i++) {
+            for (int j = 0; j < accurate.numberOfColumns(); j++) {
+                assertEquals((float) accurate.get(i, j), normal.get(i, j), 0.0);
+            }
+        }
+        Matrix transposed = normal.transpose().toAccurate();
+        for (int i = 0; i < accurate.numberOfRows(); i++) {
+            for (int j = 0; j < accurate.numberOfColumns(); j++) {
+                assertEquals(normal.get(i, j), transposed.get(j, i), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void mixedDot() {
+        Random random = new Random(13);
+        NormalMatrix a = new NormalMatrix(30, 40, (i, j) -> random.nextDouble() - 0.5);
+        AccurateMatrix b = new AccurateMatrix(40, 20, (i, j) -> random.nextDouble() - 0.5);
+        Matrix expected = a.toAccurate().dot(b);
+        Matrix left = a.dot(b);
+        Matrix right = b.transpose().dot(a.transpose());
+        assertTrue(left instanceof NormalMatrix);
+        assertTrue(right instanceof AccurateMatrix);
+        for (int i = 0; i < expected.numberOfRows(); i++) {
+            for (int j = 0; j < expected.numberOfColumns(); j++) {
+                assertEquals(expected.get(i, j), left.get(i, j), 1e-5);
+                assertEquals(expected.get(i, j), right.get(j, i), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void sumAccumulatesInDouble() {
+        // a float accumulator drifts by whole percents over a million of these
+        NormalMatrix tenths = new NormalMatrix(1000, 1000, 0.1);
+        double expected = 1000.0 * 1000.0 * (double) 0.1f;
+        assertEquals(expected, tenths.sum(), 1e-6);
+        assertEquals(expected, tenths.transpose().sum(), 1e-6);
+    }
+
+    @Test
+    public void matrixVectorAccumulatesInDouble() {
+        // 1e8 swallows every +1 in float, in double the 4095 ones survive until the answer is rounded back to float
+        NormalMatrix a = new NormalMatrix(3, 4096, (i, j) -> j == 0 ? 1e8 : 1.0);
+        NormalMatrix vector = new NormalMatrix(4096, 1, 1.0);
+        NormalMatrix pair = new NormalMatrix(4096, 2, 1.0);
+        Matrix product = a.dot(vector);
+        Matrix general = a.dot(pair);
+        for (int i = 0; i < 3; i++) {
+            assertEquals((float) (1e8 + 4095), product.get(i, 0), 0.0);
+            assertEquals(general.get(i, 0), product.get(i, 0), 0.0);
+        }
+    }
+}
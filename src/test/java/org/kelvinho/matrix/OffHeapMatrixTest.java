@@ -0,0 +1,56 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapMatrixTest {
+    private final Random random = new Random(47);
+
+    @Test
+    public void matchesHeap() {
+        try (Arena arena = new Arena()) {
+            AccurateMatrix a = new AccurateMatrix(70, 600, (i, j) -> random.nextGaussian());
+            AccurateMatrix b = new AccurateMatrix(600, 30, (i, j) -> random.nextGaussian());
+            OffHeapMatrix offHeapA = arena.copy(a);
+            OffHeapMatrix offHeapB = arena.copy(b);
+            Matrix product = offHeapA.dot(offHeapB);
+            assertTrue(product instanceof OffHeapMatrix);
+            assertEquals(((OffHeapMatrix) product).toDense(), a.dot(b));
+            assertEquals(((OffHeapMatrix) offHeapA.transpose()).toDense(), a.transpose());
+            assertEquals(offHeapA.sum(), a.sum(), 1e-9);
+            NormalMatrix normal = new NormalMatrix(4, 5, (i, j) -> i * j);
+            assertEquals(arena.copy(normal).toDense(), normal);
+        }
+    }
+
+    @Test
+    public void recyclesMemory() {
+        try (Arena arena = new Arena()) {
+            OffHeapMatrix matrix = arena.allocate(100, 100);
+            matrix.mutableSet(3, 4, 7);
+            matrix.close();
+            long reserved = arena.reservedBytes();
+            assertEquals(arena.pooledBytes(), reserved);
+            OffHeapMatrix reused = arena.allocate(100, 100);
+            assertEquals(reused.get(3, 4), 0, 0.0);
+            assertEquals(arena.reservedBytes(), reserved);
+            assertEquals(arena.pooledBytes(), 0);
+            arena.trim();
+            assertEquals(arena.reservedBytes(), reserved);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closedArenaClosesMatrices() {
+        Arena arena = new Arena();
+        OffHeapMatrix matrix = arena.allocate(2, 2);
+        matrix.mutableSet(0, 0, 1);
+        arena.close();
+        assertEquals(arena.reservedBytes(), 0);
+        matrix.get(0, 0);
+    }
+}
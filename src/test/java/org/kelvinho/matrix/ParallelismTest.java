@@ -0,0 +1,37 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelismTest {
+    private final Random random = new Random(3);
+    private final AccurateMatrix a = new AccurateMatrix(123, 77, (i, j) -> random.nextDouble() - 0.5);
+    private final AccurateMatrix b = new AccurateMatrix(77, 51, (i, j) -> random.nextDouble() - 0.5);
+
+    @Test
+    public void matchesSerial() {
+        Matrix serialDot = a.dot(b);
+        Matrix serialSigmoid = a.sigmoid();
+        Matrix serialTranspose = a.transpose();
+        double serialSum = new AccurateMatrix(2000, 300, (i, j) -> Math.sin(i * 31 + j)).sum();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        long threshold = Parallelism.threshold();
+        try {
+            Parallelism.enable(pool);
+            Parallelism.setThreshold(64);
+            assertEquals(serialDot, a.dot(b));
+            assertEquals(serialSigmoid, a.sigmoid());
+            assertEquals(serialTranspose, new AccurateMatrix(123, 77, (i, j) -> a.get(i, j)).transpose());
+            // the reduction tree is fixed, so the parallel sum is bit-identical
+            assertEquals(serialSum, new AccurateMatrix(2000, 300, (i, j) -> Math.sin(i * 31 + j)).sum(), 0.0);
+        } finally {
+            Parallelism.disable();
+            Parallelism.setThreshold(threshold);
+            pool.shutdown();
+        }
+    }
+}
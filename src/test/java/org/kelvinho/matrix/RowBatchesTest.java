@@ -0,0 +1,112 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RowBatchesTest {
+    private final Random random = new Random(47);
+
+    private RowBatches fromBytes(Matrix matrix, int batchRows) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        MatrixIO.write(matrix, Channels.newChannel(bytes));
+        return MatrixIO.batches(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())), batchRows);
+    }
+
+    @Test
+    public void builds() {
+        AccurateMatrix matrix = new AccurateMatrix(50, 7, (i, j) -> random.nextGaussian());
+        AccurateMatrix.Builder builder = AccurateMatrix.builder(7, 0);
+        for (int i = 0; i < 20; i++) {
+            double[] row = new double[7];
+            matrix.readRow(i, 0, row, 0, 7);
+            builder.addRow(row);
+        }
+        builder.addRows(matrix.subMatrix(20, 0, 10, 7)).addRows(SparseMatrix.of(matrix.subMatrix(30, 0, 20, 7)));
+        assertEquals(builder.numberOfRows(), 50);
+        assertEquals(builder.build(), matrix);
+        AccurateMatrix exact = AccurateMatrix.builder(7, 3).addRows(matrix.subMatrix(0, 0, 3, 7)).build();
+        assertEquals(exact, matrix.subMatrix(0, 0, 3, 7));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void buildsOnce() {
+        AccurateMatrix.Builder builder = AccurateMatrix.builder(2).addRow(new double[]{1, 2});
+        builder.build();
+        builder.addRow(new double[]{3, 4});
+    }
+
+    @Test
+    public void batches() throws IOException {
+        AccurateMatrix matrix = new AccurateMatrix(103, 9, (i, j) -> random.nextGaussian());
+        RowBatches batches = RowBatches.of(matrix, 25);
+        int row = 0;
+        while (batches.hasNext()) {
+            Matrix batch = batches.next();
+            assertEquals(batch.numberOfRows(), row + 25 <= 103 ? 25 : 3);
+            assertEquals(batch, matrix.subMatrix(row, 0, batch.numberOfRows(), 9));
+            row += batch.numberOfRows();
+        }
+        assertEquals(row, 103);
+        assertEquals(fromBytes(matrix, 10).collect(), matrix);
+        assertEquals(RowBatches.of(IntStream.range(0, 103).mapToObj(i -> {
+            double[] values = new double[9];
+            matrix.readRow(i, 0, values, 0, 9);
+            return values;
+        }).spliterator(), 9, 16).collect(), matrix);
+        NormalMatrix normal = matrix.toNormal();
+        RowBatches floats = fromBytes(normal, 64);
+        assertTrue(floats.next() instanceof NormalMatrix);
+        assertEquals(AccurateMatrix.builder(9).addRows(RowBatches.of(matrix.lazy(), 40)).build(), matrix);
+    }
+
+    @Test
+    public void streamsProducts() throws IOException {
+        AccurateMatrix input = new AccurateMatrix(130, 40, (i, j) -> random.nextGaussian());
+        AccurateMatrix weights = new AccurateMatrix(40, 12, (i, j) -> random.nextGaussian());
+        AccurateMatrix bias = new AccurateMatrix(1, 12, (i, j) -> random.nextGaussian());
+        Epilogue layer = new Epilogue().bias(bias).sigmoid();
+        Matrix expected = input.gemm(weights, layer);
+        assertEquals(fromBytes(input, 32).gemm(weights, layer).collect(), expected);
+        assertEquals(RowBatches.of(input, 7).dot(weights).collect(), input.dot(weights));
+        assertEquals(RowBatches.of(SparseMatrix.of(input), 50).dot(SparseMatrix.of(weights)).collect(), input.dot(weights));
+        Matrix floats = fromBytes(input.toNormal(), 32).gemm(weights, layer).collect();
+        for (int i = 0; i < 130; i++) {
+            for (int j = 0; j < 12; j++) {
+                assertEquals(floats.get(i, j), expected.get(i, j), 1e-5);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (MatrixWriter writer = MatrixIO.writer(Channels.newChannel(bytes), 130, 12, ElementType.DOUBLE);
+             RowBatches products = RowBatches.of(input, 16).gemm(weights, layer)) {
+            products.writeTo(writer);
+        }
+        Matrix written = MatrixIO.read(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(written, expected);
+        RowBatches reused = RowBatches.of(input, 64).dot(weights);
+        Matrix first = reused.next();
+        Matrix second = reused.next();
+        assertSame(((AccurateMatrix) first).values, ((AccurateMatrix) second).values);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void streamedProductsDontAccumulate() {
+        AccurateMatrix input = new AccurateMatrix(10, 4, 1.0);
+        RowBatches.of(input, 5).gemm(new AccurateMatrix(4, 3, 1.0), new Epilogue().accumulate(1.0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void streamedProductsNeedRowBiases() {
+        AccurateMatrix input = new AccurateMatrix(10, 4, 1.0);
+        RowBatches.of(input, 5).gemm(new AccurateMatrix(4, 3, 1.0), new Epilogue().bias(new AccurateMatrix(5, 1, 1.0)));
+    }
+}
@@ -0,0 +1,109 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SparseMatrixTest {
+    private final Random random = new Random(23);
+
+    private SparseMatrix randomSparse(int rows, int columns, int nonZeros) {
+        SparseMatrix.Builder builder = SparseMatrix.builder(rows, columns);
+        for (int k = 0; k < nonZeros; k++) {
+            builder.add(random.nextInt(rows), random.nextInt(columns), random.nextDouble() - 0.5);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void builder() {
+        SparseMatrix matrix = SparseMatrix.builder(3, 4)
+                .add(2, 3, 1)
+                .add(0, 1, 2)
+                .add(2, 0, 3)
+                .add(0, 1, 4)
+                .add(1, 2, 5)
+                .add(1, 2, -5)
+                .build();
+        assertEquals(matrix.nonZeros(), 3);
+        assertEquals(matrix.toDense(), new AccurateMatrix(new double[][]{
+                new double[]{0, 6, 0, 0},
+                new double[]{0, 0, 0, 0},
+                new double[]{3, 0, 0, 1}
+        }));
+        matrix.mutableSet(1, 1, 7);
+        assertEquals(matrix.get(1, 1), 7, 0.0);
+        assertEquals(matrix.sum(), 17, 0.0);
+        assertEquals(matrix.transpose().toDense(), matrix.toDense().transpose());
+    }
+
+    @Test
+    public void products() {
+        SparseMatrix a = randomSparse(60, 80, 200);
+        SparseMatrix b = randomSparse(80, 50, 150);
+        AccurateMatrix dense = new AccurateMatrix(80, 7, (i, j) -> random.nextDouble());
+        Matrix sparseProduct = a.dot(b);
+        assertTrue(sparseProduct instanceof SparseMatrix);
+        assertEquals(((SparseMatrix) sparseProduct).toDense(), a.toDense().dot(b.toDense()));
+        assertEquals(a.dot(dense), a.toDense().dot(dense));
+        assertEquals(dense.transpose().dot(b), dense.transpose().dot(b.toDense()));
+        NormalMatrix floats = dense.transpose().toNormal();
+        Matrix floatProduct = floats.dot(b);
+        Matrix expected = floats.toAccurate().dot(b.toDense());
+        assertTrue(floatProduct instanceof NormalMatrix);
+        for (int i = 0; i < 7; i++) {
+            for (int j = 0; j < 50; j++) {
+                assertEquals((float) expected.get(i, j), floatProduct.get(i, j), 1e-6);
+            }
+        }
+        // almost full operands fill the product in, which comes back dense
+        SparseMatrix full = randomSparse(20, 20, 400);
+        Matrix fullProduct = full.dot(full);
+        assertTrue(fullProduct instanceof AccurateMatrix);
+        assertEquals(fullProduct, full.toDense().dot(full.toDense()));
+    }
+
+    @Test
+    public void elementWise() {
+        SparseMatrix a = randomSparse(30, 40, 100);
+        SparseMatrix b = randomSparse(30, 40, 100);
+        Matrix sum = a.add(b);
+        assertTrue(sum instanceof SparseMatrix);
+        assertEquals(((SparseMatrix) sum).toDense(), a.toDense().add(b.toDense()));
+        Matrix doubled = a.mul(2);
+        assertTrue(doubled instanceof SparseMatrix);
+        assertEquals(((SparseMatrix) doubled).toDense(), a.toDense().mul(2));
+        // 1 - 0 isn't 0, so this one can't stay sparse
+        assertEquals(a.oneMinus(), a.toDense().oneMinus());
+    }
+
+    @Test
+    public void elementWiseIntoSparse() {
+        SparseMatrix a = randomSparse(30, 40, 100);
+        SparseMatrix b = randomSparse(30, 40, 100);
+        AccurateMatrix dense = a.toDense();
+        SparseMatrix target = SparseMatrix.of(a);
+        target.addInPlace(b).mulInPlace(3.0);
+        assertEquals(target.toDense(), dense.add(b.toDense()).mul(3.0));
+        assertTrue(target.nonZeros() <= a.nonZeros() + b.nonZeros());
+        SparseMatrix out = new SparseMatrix(30, 40);
+        a.minus(b, out);
+        assertEquals(out.toDense(), dense.minus(b.toDense()));
+        a.fma(b, a, out);
+        assertEquals(out.toDense(), dense.mul(b.toDense()).add(dense));
+        a.broadcastMul(new AccurateMatrix(1, 40, 2.0), out);
+        assertEquals(out.toDense(), dense.mul(2.0));
+        // 1 - 0 fills every element, the pattern is replaced as a whole
+        out.oneMinusInPlace();
+        assertEquals(out.toDense(), dense.mul(2.0).oneMinus());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void denseFallbackTooLarge() {
+        // 5e9 elements, a dense result has to fail clearly instead of overflowing the array length
+        SparseMatrix.builder(100000, 50000).add(3, 4, 1.0).build().clone();
+    }
+}
@@ -0,0 +1,55 @@
+package org.kelvinho.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StrassenTest {
+    private final Random random = new Random(59);
+
+    @Test
+    public void matchesClassicWithinBound() {
+        int cutoff = Strassen.cutoff();
+        Strassen.setCutoff(16);
+        try {
+            for (int n : new int[]{10, 64, 100}) {
+                AccurateMatrix a = new AccurateMatrix(n, n, (i, j) -> random.nextGaussian());
+                AccurateMatrix b = new AccurateMatrix(n, n, (i, j) -> random.nextGaussian());
+                AccurateMatrix c = Strassen.multiply(a, b);
+                assertEquals(c, a.dot(b));
+                double error = Strassen.relativeError(a, b);
+                assertTrue(error <= Strassen.errorBound(n) * Math.ulp(1.0) / n);
+                assertTrue(Strassen.residual(a, b, c) < 1e-12);
+            }
+        } finally {
+            Strassen.setCutoff(cutoff);
+        }
+    }
+
+    @Test
+    public void parallel() {
+        int cutoff = Strassen.cutoff();
+        Strassen.setCutoff(8);
+        Parallelism.enable();
+        try {
+            AccurateMatrix a = new AccurateMatrix(70, 70, (i, j) -> random.nextGaussian());
+            AccurateMatrix b = new AccurateMatrix(70, 70, (i, j) -> random.nextGaussian());
+            assertEquals(Strassen.multiply(a, b.transpose()), a.dot(b.transpose()));
+        } finally {
+            Parallelism.disable();
+            Strassen.setCutoff(cutoff);
+        }
+    }
+
+    @Test
+    public void residualCatchesWrongProducts() {
+        AccurateMatrix a = new AccurateMatrix(20, 20, (i, j) -> random.nextGaussian());
+        AccurateMatrix b = new AccurateMatrix(20, 20, (i, j) -> random.nextGaussian());
+        AccurateMatrix c = (AccurateMatrix) a.dot(b);
+        c.mutableSet(3, 4, c.get(3, 4) + 1);
+        assertTrue(Strassen.residual(a, b, c) > 1e-6);
+    }
+}
@@ -0,0 +1,374 @@
+package org.kelvinho.matrix;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import javax.annotation.Nonnull;
+
+// jdk.incubator.vector backend, loaded reflectively by Kernels. Uses the widest species the hardware prefers: 4 doubles / 8 floats
+// on AVX2, 8 / 16 on AVX-512. Float reductions widen each half of the lanes to double and accumulate there, like the scalar kernels
+@SuppressWarnings({"unused", "WeakerAccess"})
+final class VectorKernels extends Kernels {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final double LOG2_E = 1.4426950408889634;
+    private static final double LN2_HI = 6.93147180369123816490e-01;
+    private static final double LN2_LO = 1.90821492927058770002e-10;
+    private static final double ROUNDING = 0x1.8p52;
+    private static final double MIN = -746.0;
+    private static final double MAX = 710.0;
+    private static final double[] ACCURATE = {1.0, 1.0 / 2, 1.0 / 6, 1.0 / 24, 1.0 / 120, 1.0 / 720, 1.0 / 5040, 1.0 / 40320,
+            1.0 / 362880, 1.0 / 3628800, 1.0 / 39916800, 1.0 / 479001600};
+    private static final double[] FAST = {1.0, 1.0 / 2, 1.0 / 6, 1.0 / 24, 1.0 / 120, 1.0 / 720};
+    private static final float LOG2_E_FLOAT = 1.44269504f;
+    private static final float LN2_HI_FLOAT = 0.693145752f; // trailing zeros, so k * LN2_HI_FLOAT is exact
+    private static final float LN2_LO_FLOAT = 1.42860677e-6f;
+    private static final float ROUNDING_FLOAT = 0x1.8p23f;
+    private static final float MIN_FLOAT = -104.0f;
+    private static final float MAX_FLOAT = 89.0f;
+
+    @Override
+    String name() {
+        return "vector (" + DOUBLES.length() + " doubles, " + FLOATS.length() + " floats)";
+    }
+
+    @Override
+    void apply(@Nonnull Operation operation, @Nonnull double[] a, int aOffset, @Nonnull double[] b, int bOffset,
+               @Nonnull double[] out, int outOffset, int length) {
+        VectorOperators.Binary operator = operator(operation);
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(length); i < bound; i += DOUBLES.length()) {
+            DoubleVector x = DoubleVector.fromArray(DOUBLES, a, aOffset + i);
+            DoubleVector y = DoubleVector.fromArray(DOUBLES, b, bOffset + i);
+            x.lanewise(operator, y).intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            double x = a[aOffset + i], y = b[bOffset + i];
+            out[outOffset + i] = operation == Operation.ADD ? x + y : operation == Operation.SUBTRACT ? x - y : operation == Operation.MULTIPLY ? x * y : x / y;
+        }
+    }
+
+    @Override
+    void apply(@Nonnull Operation operation, @Nonnull float[] a, int aOffset, @Nonnull float[] b, int bOffset,
+               @Nonnull float[] out, int outOffset, int length) {
+        VectorOperators.Binary operator = operator(operation);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector x = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            FloatVector y = FloatVector.fromArray(FLOATS, b, bOffset + i);
+            x.lanewise(operator, y).intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            float x = a[aOffset + i], y = b[bOffset + i];
+            out[outOffset + i] = operation == Operation.ADD ? x + y : operation == Operation.SUBTRACT ? x - y : operation == Operation.MULTIPLY ? x * y : x / y;
+        }
+    }
+
+    @Nonnull
+    private static VectorOperators.Binary operator(@Nonnull Operation operation) {
+        switch (operation) {
+            case ADD:
+                return VectorOperators.ADD;
+            case SUBTRACT:
+                return VectorOperators.SUB;
+            case MULTIPLY:
+                return VectorOperators.MUL;
+            default:
+                return VectorOperators.DIV;
+        }
+    }
+
+    @Override
+    void fma(@Nonnull double[] a, int aOffset, @Nonnull double[] b, int bOffset, @Nonnull double[] c, int cOffset,
+             @Nonnull double[] out, int outOffset, int length) {
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(length); i < bound; i += DOUBLES.length()) {
+            DoubleVector x = DoubleVector.fromArray(DOUBLES, a, aOffset + i);
+            DoubleVector y = DoubleVector.fromArray(DOUBLES, b, bOffset + i);
+            DoubleVector z = DoubleVector.fromArray(DOUBLES, c, cOffset + i);
+            x.fma(y, z).intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            out[outOffset + i] = Math.fma(a[aOffset + i], b[bOffset + i], c[cOffset + i]);
+        }
+    }
+
+    @Override
+    void fma(@Nonnull float[] a, int aOffset, @Nonnull float[] b, int bOffset, @Nonnull float[] c, int cOffset,
+             @Nonnull float[] out, int outOffset, int length) {
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector x = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            FloatVector y = FloatVector.fromArray(FLOATS, b, bOffset + i);
+            FloatVector z = FloatVector.fromArray(FLOATS, c, cOffset + i);
+            x.fma(y, z).intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            out[outOffset + i] = Math.fma(a[aOffset + i], b[bOffset + i], c[cOffset + i]);
+        }
+    }
+
+    @Override
+    void activate(@Nonnull Activation activation, @Nonnull Activations.Accuracy accuracy, @Nonnull double[] a, int aOffset,
+                  @Nonnull double[] out, int outOffset, int length) {
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(length); i < bound; i += DOUBLES.length()) {
+            DoubleVector x = DoubleVector.fromArray(DOUBLES, a, aOffset + i);
+            DoubleVector y = activation == Activation.EXP ? exp(x, accuracy) : activation == Activation.SIGMOID ? sigmoid(x, accuracy) : tanh(x, accuracy);
+            y.intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            double x = a[aOffset + i];
+            out[outOffset + i] = activation == Activation.EXP ? Activations.exp(x, accuracy)
+                    : activation == Activation.SIGMOID ? Activations.sigmoid(x, accuracy) : Activations.tanh(x, accuracy);
+        }
+    }
+
+    @Override
+    void activate(@Nonnull Activation activation, @Nonnull Activations.Accuracy accuracy, @Nonnull float[] a, int aOffset,
+                  @Nonnull float[] out, int outOffset, int length) {
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector x = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            FloatVector y = activation == Activation.EXP ? exp(x, accuracy) : activation == Activation.SIGMOID ? sigmoid(x, accuracy) : tanh(x, accuracy);
+            y.intoArray(out, outOffset + i);
+        }
+        for (; i < length; i++) {
+            double x = a[aOffset + i];
+            out[outOffset + i] = (float) (activation == Activation.EXP ? Activations.exp(x, accuracy)
+                    : activation == Activation.SIGMOID ? Activations.sigmoid(x, accuracy) : Activations.tanh(x, accuracy));
+        }
+    }
+
+    @Override
+    void sigmoid(@Nonnull Activations.Accuracy accuracy, @Nonnull double[] a, int aOffset, @Nonnull double[] out, int outOffset,
+                 @Nonnull double[] derivative, int derivativeOffset, int length) {
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(length); i < bound; i += DOUBLES.length()) {
+            DoubleVector s = sigmoid(DoubleVector.fromArray(DOUBLES, a, aOffset + i), accuracy);
+            s.intoArray(out, outOffset + i);
+            s.mul(s.neg().add(1.0)).intoArray(derivative, derivativeOffset + i);
+        }
+        for (; i < length; i++) {
+            double s = Activations.sigmoid(a[aOffset + i], accuracy);
+            out[outOffset + i] = s;
+            derivative[derivativeOffset + i] = s * (1 - s);
+        }
+    }
+
+    @Override
+    void sigmoid(@Nonnull Activations.Accuracy accuracy, @Nonnull float[] a, int aOffset, @Nonnull float[] out, int outOffset,
+                 @Nonnull float[] derivative, int derivativeOffset, int length) {
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector s = sigmoid(FloatVector.fromArray(FLOATS, a, aOffset + i), accuracy);
+            s.intoArray(out, outOffset + i);
+            s.mul(s.neg().add(1.0f)).intoArray(derivative, derivativeOffset + i);
+        }
+        for (; i < length; i++) {
+            double s = Activations.sigmoid(a[aOffset + i], accuracy);
+            out[outOffset + i] = (float) s;
+            derivative[derivativeOffset + i] = (float) (s * (1 - s));
+        }
+    }
+
+    // Activations.exp lane by lane: adding ROUNDING rounds x / ln2 to an integer k that lands in the low mantissa bits, so
+    // subtracting ROUNDING's bits gives k as a long without a float to integer conversion. EXACT uses the Vector API's own
+    @Nonnull
+    private static DoubleVector exp(@Nonnull DoubleVector x, @Nonnull Activations.Accuracy accuracy) {
+        if (accuracy == Activations.Accuracy.EXACT) {
+            return x.lanewise(VectorOperators.EXP);
+        }
+        x = x.max(MIN).min(MAX);
+        DoubleVector shifted = x.mul(LOG2_E).add(ROUNDING);
+        DoubleVector k = shifted.sub(ROUNDING);
+        DoubleVector r = x.sub(k.mul(LN2_HI)).sub(k.mul(LN2_LO));
+        LongVector n = shifted.reinterpretAsLongs().sub(Double.doubleToRawLongBits(ROUNDING));
+        return scale(polynomial(r, accuracy).add(1.0), n);
+    }
+
+    // for x <= 0 only, like Activations.expm1
+    @Nonnull
+    private static DoubleVector expm1(@Nonnull DoubleVector x, @Nonnull Activations.Accuracy accuracy) {
+        if (accuracy == Activations.Accuracy.EXACT) {
+            return x.lanewise(VectorOperators.EXPM1);
+        }
+        x = x.max(MIN);
+        DoubleVector shifted = x.mul(LOG2_E).add(ROUNDING);
+        DoubleVector k = shifted.sub(ROUNDING);
+        DoubleVector r = x.sub(k.mul(LN2_HI)).sub(k.mul(LN2_LO));
+        LongVector n = shifted.reinterpretAsLongs().sub(Double.doubleToRawLongBits(ROUNDING));
+        DoubleVector power = scale(DoubleVector.broadcast(DOUBLES, 1.0), n);
+        return power.fma(polynomial(r, accuracy), power.sub(1.0));
+    }
+
+    @Nonnull
+    private static DoubleVector sigmoid(@Nonnull DoubleVector x, @Nonnull Activations.Accuracy accuracy) {
+        DoubleVector e = exp(x.abs().neg(), accuracy);
+        DoubleVector s = DoubleVector.broadcast(DOUBLES, 1.0).div(e.add(1.0));
+        return s.blend(e.mul(s), x.compare(VectorOperators.LT, 0.0));
+    }
+
+    @Nonnull
+    private static DoubleVector tanh(@Nonnull DoubleVector x, @Nonnull Activations.Accuracy accuracy) {
+        if (accuracy == Activations.Accuracy.EXACT) {
+            return x.lanewise(VectorOperators.TANH);
+        }
+        DoubleVector m = expm1(x.abs().mul(-2.0), accuracy);
+        LongVector magnitude = m.neg().div(m.add(2.0)).abs().reinterpretAsLongs();
+        return magnitude.or(x.reinterpretAsLongs().and(Long.MIN_VALUE)).reinterpretAsDoubles();
+    }
+
+    // exp(r) - 1, same coefficients as Activations
+    @Nonnull
+    private static DoubleVector polynomial(@Nonnull DoubleVector r, @Nonnull Activations.Accuracy accuracy) {
+        double[] coefficients = accuracy == Activations.Accuracy.FAST ? FAST : ACCURATE;
+        DoubleVector p = DoubleVector.broadcast(DOUBLES, coefficients[coefficients.length - 1]);
+        for (int c = coefficients.length - 2; c >= 0; c--) {
+            p = p.fma(r, DoubleVector.broadcast(DOUBLES, coefficients[c]));
+        }
+        return p.mul(r);
+    }
+
+    // value * 2^n in two steps, as in Activations
+    @Nonnull
+    private static DoubleVector scale(@Nonnull DoubleVector value, @Nonnull LongVector n) {
+        LongVector half = n.lanewise(VectorOperators.ASHR, 1);
+        return value.mul(half.add(1023).lanewise(VectorOperators.LSHL, 52).reinterpretAsDoubles())
+                .mul(n.sub(half).add(1023).lanewise(VectorOperators.LSHL, 52).reinterpretAsDoubles());
+    }
+
+    // floats get one polynomial for both ACCURATE and FAST, evaluated in float it is within a couple of float ulps
+    @Nonnull
+    private static FloatVector exp(@Nonnull FloatVector x, @Nonnull Activations.Accuracy accuracy) {
+        if (accuracy == Activations.Accuracy.EXACT) {
+            return x.lanewise(VectorOperators.EXP);
+        }
+        x = x.max(MIN_FLOAT).min(MAX_FLOAT);
+        FloatVector shifted = x.mul(LOG2_E_FLOAT).add(ROUNDING_FLOAT);
+        FloatVector k = shifted.sub(ROUNDING_FLOAT);
+        FloatVector r = x.sub(k.mul(LN2_HI_FLOAT)).sub(k.mul(LN2_LO_FLOAT));
+        IntVector n = shifted.reinterpretAsInts().sub(Float.floatToRawIntBits(ROUNDING_FLOAT));
+        return scale(polynomial(r).add(1.0f), n);
+    }
+
+    @Nonnull
+    private static FloatVector expm1(@Nonnull FloatVector x, @Nonnull Activations.Accuracy accuracy) {
+        if (accuracy == Activations.Accuracy.EXACT) {
+            return x.lanewise(VectorOperators.EXPM1);
+        }
+        x = x.max(MIN_FLOAT);
+        FloatVector shifted = x.mul(LOG2_E_FLOAT).add(ROUNDING_FLOAT);
+        FloatVector k = shifted.sub(ROUNDING_FLOAT);
+        FloatVector r = x.sub(k.mul(LN2_HI_FLOAT)).sub(k.mul(LN2_LO_FLOAT));
+        IntVector n = shifted.reinterpretAsInts().sub(Float.floatToRawIntBits(ROUNDING_FLOAT));
+        FloatVector power = scale(FloatVector.broadcast(FLOATS, 1.0f), n);
+        return power.fma(polynomial(r), power.sub(1.0f));
+    }
+
+    @Nonnull
+    private static FloatVector sigmoid(@Nonnull FloatVector x, @Nonnull Activations.Accuracy accuracy) {
+        FloatVector e = exp(x.abs().neg(), accuracy);
+        FloatVector s = FloatVector.broadcast(FLOATS, 1.0f).div(e.add(1.0f));
+        return s.blend(e.mul(s), x.compare(VectorOperators.LT, 0.0f));
+    }
+
+    @Nonnull
+    private static FloatVector tanh(@Nonnull FloatVector x, @Nonnull Activations.Accuracy accuracy) {
+        if (accuracy == Activations.Accuracy.EXACT) {
+            return x.lanewise(VectorOperators.TANH);
+        }
+        FloatVector m = expm1(x.abs().mul(-2.0f), accuracy);
+        IntVector magnitude = m.neg().div(m.add(2.0f)).abs().reinterpretAsInts();
+        return magnitude.or(x.reinterpretAsInts().and(Integer.MIN_VALUE)).reinterpretAsFloats();
+    }
+
+    // exp(r) - 1 to degree 7, the first dropped term is below 5e-9
+    @Nonnull
+    private static FloatVector polynomial(@Nonnull FloatVector r) {
+        FloatVector p = FloatVector.broadcast(FLOATS, 1.0f / 5040);
+        p = p.fma(r, FloatVector.broadcast(FLOATS, 1.0f / 720));
+        p = p.fma(r, FloatVector.broadcast(FLOATS, 1.0f / 120));
+        p = p.fma(r, FloatVector.broadcast(FLOATS, 1.0f / 24));
+        p = p.fma(r, FloatVector.broadcast(FLOATS, 1.0f / 6));
+        p = p.fma(r, FloatVector.broadcast(FLOATS, 1.0f / 2));
+        p = p.fma(r, FloatVector.broadcast(FLOATS, 1.0f));
+        return p.mul(r);
+    }
+
+    @Nonnull
+    private static FloatVector scale(@Nonnull FloatVector value, @Nonnull IntVector n) {
+        IntVector half = n.lanewise(VectorOperators.ASHR, 1);
+        return value.mul(half.add(127).lanewise(VectorOperators.LSHL, 23).reinterpretAsFloats())
+                .mul(n.sub(half).add(127).lanewise(VectorOperators.LSHL, 23).reinterpretAsFloats());
+    }
+
+    @Override
+    double sum(@Nonnull double[] a, int offset, int length) {
+        DoubleVector accumulator = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(length); i < bound; i += DOUBLES.length()) {
+            accumulator = accumulator.add(DoubleVector.fromArray(DOUBLES, a, offset + i));
+        }
+        double sum = accumulator.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[offset + i];
+        }
+        return sum;
+    }
+
+    // each vector of floats is widened into two of doubles before it's added (both shapes have the same bit size), so nothing
+    // is ever accumulated in float and the result matches the scalar double accumulation
+    @Override
+    double sum(@Nonnull float[] a, int offset, int length) {
+        DoubleVector low = DoubleVector.zero(DOUBLES);
+        DoubleVector high = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector value = FloatVector.fromArray(FLOATS, a, offset + i);
+            low = low.add((DoubleVector) value.convertShape(VectorOperators.F2D, DOUBLES, 0));
+            high = high.add((DoubleVector) value.convertShape(VectorOperators.F2D, DOUBLES, 1));
+        }
+        double sum = low.add(high).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[offset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    double dot(@Nonnull double[] a, int aOffset, @Nonnull double[] b, int bOffset, int length) {
+        DoubleVector accumulator = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (int bound = DOUBLES.loopBound(length); i < bound; i += DOUBLES.length()) {
+            accumulator = DoubleVector.fromArray(DOUBLES, a, aOffset + i).fma(DoubleVector.fromArray(DOUBLES, b, bOffset + i), accumulator);
+        }
+        double sum = accumulator.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    double dot(@Nonnull float[] a, int aOffset, @Nonnull float[] b, int bOffset, int length) {
+        DoubleVector low = DoubleVector.zero(DOUBLES);
+        DoubleVector high = DoubleVector.zero(DOUBLES);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector x = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            FloatVector y = FloatVector.fromArray(FLOATS, b, bOffset + i);
+            low = ((DoubleVector) x.convertShape(VectorOperators.F2D, DOUBLES, 0)).fma((DoubleVector) y.convertShape(VectorOperators.F2D, DOUBLES, 0), low);
+            high = ((DoubleVector) x.convertShape(VectorOperators.F2D, DOUBLES, 1)).fma((DoubleVector) y.convertShape(VectorOperators.F2D, DOUBLES, 1), high);
+        }
+        double sum = low.add(high).reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += (double) a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+}